@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package android.util;
+
+/**
+ * Stand-in for android.util.Base64 on a plain JVM (benchmarks only), with java.util.Base64.
+ * Only the flags used by the plugin are supported (DEFAULT and NO_WRAP).
+ */
+public final class Base64
+{
+    public static final int DEFAULT = 0;
+    public static final int NO_WRAP = 2;
+
+    private Base64() { }
+
+    public static byte[] encode(byte[] input, int flags) {
+        return encoder(flags).encode(input);
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        return encoder(flags).encodeToString(input);
+    }
+
+    public static byte[] decode(String str, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(str);
+    }
+
+    public static byte[] decode(byte[] input, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(input);
+    }
+
+    private static java.util.Base64.Encoder encoder(int flags) {
+        // (DEFAULT: lines of 76 characters, like Android)
+        return (flags & NO_WRAP) != 0 ? java.util.Base64.getEncoder() :
+            java.util.Base64.getMimeEncoder(76, new byte[] { '\n' });
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package android.util;
+
+/**
+ * Stand-in for android.util.Log on a plain JVM (benchmarks only): warnings and errors
+ * go to stderr, the other messages are dropped (so they are not part of the measurements).
+ */
+public final class Log
+{
+    private Log() { }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return w(tag, msg, null);
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return w(tag, "", tr);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        System.err.println("W/" + tag + ": " + msg + (tr != null ? " " + tr : ""));
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return e(tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        System.err.println("E/" + tag + ": " + msg + (tr != null ? " " + tr : ""));
+        return 0;
+    }
+} /* vim: set expandtab : */
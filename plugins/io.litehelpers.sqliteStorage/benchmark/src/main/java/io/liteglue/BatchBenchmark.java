@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * executeSqlBatch end to end: SQLitePlugin.execute() with the JSON arguments (as sent by
+ * Javascript), the queue and the db thread, the statement, the batch result, and the
+ * PluginResult serialization, until the result is given to the callback.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-Dsqlite4java.library.path=target/lib" })
+@State(Scope.Thread)
+public class BatchBenchmark
+{
+    private static final String DBNAME = "batch.db";
+
+    @Param({ "10", "1000", "10000" })
+    int rows;
+
+    // resultEncoding open option ("rows": the default)
+    @Param({ "rows", "columnar", "binary" })
+    String resultEncoding;
+
+    private BenchmarkPlugin plugin;
+    private final CapturingCallbackContext cbc = new CapturingCallbackContext();
+
+    // (JSON text, parsed for each request like the arguments from Javascript)
+    private String selectArgs;
+    private String insertArgs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plugin = new BenchmarkPlugin();
+        RecipeData.create(plugin.getDatabasePath(DBNAME), rows);
+
+        JSONObject options = new JSONObject();
+        if (!"rows".equals(resultEncoding))
+            options.put("resultEncoding", resultEncoding);
+        plugin.open(DBNAME, options);
+
+        selectArgs = batchArgs(new String[] { RecipeData.SELECT }, new JSONArray[] { new JSONArray().put(rows) });
+
+        // (replaces the same 50 rows each time)
+        String[] inserts = new String[50];
+        JSONArray[] params = new JSONArray[inserts.length];
+        for (int i = 0; i < inserts.length; ++i) {
+            inserts[i] = RecipeData.INSERT;
+            params[i] = RecipeData.row(i + 1);
+        }
+        insertArgs = batchArgs(inserts, params);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        plugin.close(DBNAME);
+        plugin.deleteAll();
+    }
+
+    /**
+     * SELECT of all rows.
+     */
+    @Benchmark
+    public int select() throws Exception {
+        return run(selectArgs);
+    }
+
+    /**
+     * 50 INSERT OR REPLACE statements with recipe parameters (one batch).
+     */
+    @Benchmark
+    public int insert() throws Exception {
+        return run(insertArgs);
+    }
+
+    private int run(String args) throws Exception {
+        plugin.execute("backgroundExecuteSqlBatch", new JSONArray(args), cbc.reset());
+        PluginResult result = cbc.await();
+        return result.getMessage().length();
+    }
+
+    /**
+     * @return the arguments of backgroundExecuteSqlBatch, as sent by SQLitePlugin.js
+     */
+    static String batchArgs(String[] queries, JSONArray[] params) throws Exception {
+        JSONArray executes = new JSONArray();
+        for (int i = 0; i < queries.length; ++i) {
+            executes.put(new JSONObject()
+                .put("qid", Integer.toString(i))
+                .put("sql", queries[i])
+                .put("params", params[i]));
+        }
+
+        JSONObject allargs = new JSONObject()
+            .put("dbargs", new JSONObject().put("dbname", DBNAME))
+            .put("executes", executes);
+
+        return new JSONArray().put(allargs).toString();
+    }
+} /* vim: set expandtab : */
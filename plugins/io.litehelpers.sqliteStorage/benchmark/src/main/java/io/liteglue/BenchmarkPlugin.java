@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The plugin on a plain JVM (benchmarks only), with its databases in a temporary directory
+ * instead of the app database directory.
+ */
+class BenchmarkPlugin extends SQLitePlugin
+{
+    final File dir;
+
+    BenchmarkPlugin() throws Exception {
+        this.dir = Files.createTempDirectory("sqlite-benchmark").toFile();
+    }
+
+    @Override
+    File getDatabasePath(String dbname) {
+        return new File(dir, dbname);
+    }
+
+    /**
+     * Open a database (and wait for it), with the open options.
+     */
+    void open(String dbname, JSONObject options) throws Exception {
+        options.put("name", dbname);
+        CapturingCallbackContext cbc = new CapturingCallbackContext();
+        execute("open", new JSONArray().put(options), cbc);
+        cbc.await();
+    }
+
+    /**
+     * Close a database (and wait for it).
+     */
+    void close(String dbname) throws Exception {
+        CapturingCallbackContext cbc = new CapturingCallbackContext();
+        execute("close", new JSONArray().put(new JSONObject().put("path", dbname)), cbc);
+        cbc.await();
+    }
+
+    /**
+     * Delete the temporary directory (the databases must be closed).
+     */
+    void deleteAll() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        dir.delete();
+    }
+} /* vim: set expandtab : */
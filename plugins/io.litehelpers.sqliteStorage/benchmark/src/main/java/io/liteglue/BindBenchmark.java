@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parameter binding of the sqlite4java engine (bindArgsToStatementNDK), with the
+ * parameters of one recipe (integers and text, short and long), and of a BLOB.
+ *
+ * NOTE: bindArgsToStatement of the android.database engine cannot run on a plain JVM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-Dsqlite4java.library.path=target/lib" })
+@State(Scope.Thread)
+public class BindBenchmark
+{
+    private BenchmarkPlugin plugin;
+    private SQLitePlugin.SQLiteDatabaseNDK db;
+    private SQLiteStatement insert;
+    private SQLiteStatement insertBlob;
+
+    private JSONArray recipe;
+    private JSONArray blob;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plugin = new BenchmarkPlugin();
+        RecipeData.create(plugin.getDatabasePath("bind.db"), 0);
+
+        db = plugin.new SQLiteDatabaseNDK(SQLiteStatementCache.DEFAULT_SIZE);
+        db.open(plugin.getDatabasePath("bind.db"));
+        db.mydb.exec("CREATE TABLE imagem (id integer primary key, data blob)");
+
+        insert = db.mydb.prepare(RecipeData.INSERT);
+        insertBlob = db.mydb.prepare("INSERT INTO imagem (id, data) VALUES (?,?)");
+
+        recipe = RecipeData.row(1);
+
+        // (a 16 KB image, as sent by SQLitePlugin.js)
+        byte[] data = new byte[16 * 1024];
+        new java.util.Random(1).nextBytes(data);
+        blob = new JSONArray().put(1).put(new org.json.JSONObject().put("blob", android.util.Base64.encodeToString(data, 0)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        insert.dispose();
+        insertBlob.dispose();
+        db.closeDatabaseNow();
+        plugin.deleteAll();
+    }
+
+    @Benchmark
+    public void bindRecipe() throws Exception {
+        db.bindArgsToStatementNDK(insert, recipe);
+        insert.clearBindings();
+    }
+
+    @Benchmark
+    public void bindBlob() throws Exception {
+        db.bindArgsToStatementNDK(insertBlob, blob);
+        insertBlob.clearBindings();
+    }
+} /* vim: set expandtab : */
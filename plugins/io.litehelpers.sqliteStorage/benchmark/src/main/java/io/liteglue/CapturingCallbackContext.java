@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+/**
+ * Fake callback (benchmarks only): keeps the last result, and lets the caller wait
+ * for the final one (a result without keepCallback) of an asynchronous request.
+ */
+class CapturingCallbackContext extends CallbackContext
+{
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private volatile CountDownLatch done = new CountDownLatch(1);
+    private volatile PluginResult result = null;
+
+    CapturingCallbackContext() {
+        super("benchmark", null);
+    }
+
+    /**
+     * To be called before the next request.
+     */
+    CapturingCallbackContext reset() {
+        done = new CountDownLatch(1);
+        result = null;
+        return this;
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        result = pluginResult;
+        if (!pluginResult.getKeepCallback())
+            done.countDown();
+    }
+
+    /**
+     * Wait for the final result.
+     *
+     * @throws IllegalStateException if it is an error
+     */
+    PluginResult await() throws InterruptedException {
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            throw new IllegalStateException("no result after " + TIMEOUT_SECONDS + " s");
+        return check(result);
+    }
+
+    /**
+     * @return the last result (of a synchronous request)
+     * @throws IllegalStateException if it is an error
+     */
+    PluginResult getResult() {
+        return check(result);
+    }
+
+    private static PluginResult check(PluginResult r) {
+        if (r == null)
+            throw new IllegalStateException("no result");
+        if (r.getStatus() != PluginResult.Status.OK.ordinal())
+            throw new IllegalStateException("error result: " + r.getMessage());
+        return r;
+    }
+} /* vim: set expandtab : */
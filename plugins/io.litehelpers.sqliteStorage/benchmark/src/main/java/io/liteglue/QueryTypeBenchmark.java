@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Classification of each statement of a batch (SQLiteAndroidDatabase.getQueryType),
+ * over the statements of the recipes app (with leading white space, mixed case and
+ * unknown verbs).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class QueryTypeBenchmark
+{
+    static final String[] QUERIES = {
+        RecipeData.SELECT,
+        RecipeData.INSERT,
+        "UPDATE receita SET favorita = ? WHERE id = ?",
+        "  delete from receita where id = ?",
+        "\n\tSELECT id, nome FROM receita WHERE nome LIKE ? ORDER BY nome",
+        "BEGIN",
+        "COMMIT",
+        "PRAGMA user_version",
+        "CREATE INDEX IF NOT EXISTS receita_nome ON receita (nome)",
+        "WITH r AS (SELECT * FROM receita) SELECT count(*) FROM r",
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void getQueryType(Blackhole bh) {
+        for (String query : QUERIES)
+            bh.consume(SQLiteAndroidDatabase.getQueryType(query));
+    }
+} /* vim: set expandtab : */
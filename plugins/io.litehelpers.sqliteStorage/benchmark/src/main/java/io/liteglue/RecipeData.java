@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import java.io.File;
+import java.util.Random;
+
+import org.json.JSONArray;
+
+/**
+ * Recipe-shaped test data (like the receita table of the app), the same for each run:
+ * short names, a long recipe text (1-3 KB, with accents, quotes and new lines), lists
+ * of ingredients and quantities, and small integers.
+ */
+class RecipeData
+{
+    static final String CREATE_TABLE = "CREATE TABLE receita (id integer primary key, nome text, imagem text, " +
+        "receita text, ingredientes text, quantidades text, tempo text, temperatura text, serve text, " +
+        "categoria integer, like integer)";
+
+    static final String INSERT = "INSERT OR REPLACE INTO receita (id, nome, imagem, receita, ingredientes, " +
+        "quantidades, tempo, temperatura, serve, categoria, like) VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+
+    static final String SELECT = "SELECT * FROM receita LIMIT ?";
+
+    private static final long SEED = 20151016L;
+
+    private static final String[] WORDS = {
+        "batata", "frango", "cebola", "alho", "azeite", "sal", "pimenta", "queijo", "ovo", "farinha",
+        "açúcar", "manteiga", "leite", "limão", "salsa", "cenoura", "arroz", "feijão", "tomate", "orégano",
+        "pré-aquecida", "crocante", "dourar", "misture", "\"air fryer\"", "porções", "temperatura", "minutos"
+    };
+
+    private static final String[] UNITS = { "g", "ml", "colher", "xícara", "unidade", "pitada" };
+
+    /**
+     * Create a database file with rowCount recipes.
+     */
+    static void create(File file, int rowCount) throws Exception {
+        file.delete();
+
+        SQLiteConnection db = new SQLiteConnection(file);
+        db.open(true);
+        try {
+            db.exec(CREATE_TABLE);
+            db.exec("BEGIN");
+
+            SQLiteStatement st = db.prepare(INSERT);
+            Random random = new Random(SEED);
+            for (int i = 1; i <= rowCount; ++i) {
+                JSONArray row = row(random, i);
+                for (int j = 0; j < row.length(); ++j) {
+                    Object v = row.get(j);
+                    if (v instanceof Number)
+                        st.bind(j + 1, ((Number)v).longValue());
+                    else
+                        st.bind(j + 1, v.toString());
+                }
+                st.step();
+                st.reset(true);
+            }
+            st.dispose();
+
+            db.exec("COMMIT");
+        } finally {
+            db.dispose();
+        }
+    }
+
+    /**
+     * @return the parameters of one recipe (for INSERT), the same for the same id
+     */
+    static JSONArray row(int id) {
+        return row(new Random(SEED + id), id);
+    }
+
+    private static JSONArray row(Random random, int id) {
+        JSONArray row = new JSONArray();
+        row.put((long)id);
+        row.put(words(random, 2 + random.nextInt(3)));
+        row.put("https://example.com/imagens/receita-" + id + ".jpg");
+        row.put(text(random, 1000 + random.nextInt(2000)));
+
+        StringBuilder ingredientes = new StringBuilder();
+        StringBuilder quantidades = new StringBuilder();
+        int n = 4 + random.nextInt(8);
+        for (int i = 0; i < n; ++i) {
+            if (i > 0) {
+                ingredientes.append(',');
+                quantidades.append(',');
+            }
+            ingredientes.append(WORDS[random.nextInt(20)]);
+            quantidades.append(1 + random.nextInt(500)).append(' ').append(UNITS[random.nextInt(UNITS.length)]);
+        }
+        row.put(ingredientes.toString());
+        row.put(quantidades.toString());
+
+        row.put((5 + random.nextInt(40)) + " min");
+        row.put((140 + 10 * random.nextInt(8)) + "°C");
+        row.put((1 + random.nextInt(6)) + " porções");
+        row.put((long)(1 + random.nextInt(8)));
+        row.put((long)random.nextInt(2));
+        return row;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) s.append(' ');
+            s.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return s.toString();
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder s = new StringBuilder(length + 16);
+        while (s.length() < length) {
+            s.append(words(random, 6 + random.nextInt(10)));
+            s.append(random.nextInt(4) == 0 ? ".\n" : ". ");
+        }
+        return s.toString();
+    }
+} /* vim: set expandtab : */
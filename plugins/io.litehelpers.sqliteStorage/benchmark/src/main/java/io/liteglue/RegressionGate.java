@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares two JMH result files (java -jar target/benchmarks.jar -rf json -rff <file>):
+ *
+ *   java -cp target/benchmarks.jar io.liteglue.RegressionGate baseline.json results.json [maxRegressionPercent]
+ *
+ * and exits with status 1 if a benchmark (with the same parameters) of both files got
+ * slower by more than maxRegressionPercent (default: 10), beyond the score errors
+ * (99.9% confidence intervals). Benchmarks in one file only are listed but ignored.
+ *
+ * NOTE: only for the time modes (AverageTime, SampleTime, SingleShotTime): lower is better.
+ */
+public class RegressionGate
+{
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: RegressionGate <baseline.json> <results.json> [maxRegressionPercent]");
+            System.exit(2);
+        }
+
+        double maxRegression = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+
+        Map<String, JSONObject> baseline = read(new File(args[0]));
+        Map<String, JSONObject> results = read(new File(args[1]));
+
+        int regressions = 0;
+
+        for (Map.Entry<String, JSONObject> e : results.entrySet()) {
+            JSONObject before = baseline.get(e.getKey());
+            if (before == null) {
+                System.out.println("NEW        " + e.getKey());
+                continue;
+            }
+
+            JSONObject b = before.getJSONObject("primaryMetric");
+            JSONObject a = e.getValue().getJSONObject("primaryMetric");
+            double change = a.getDouble("score") / b.getDouble("score") - 1;
+
+            // (slower than the baseline by more than the limit, even at the best of both intervals)
+            double worst = (a.getDouble("score") - scoreError(a)) / (b.getDouble("score") + scoreError(b)) - 1;
+            boolean regressed = change > maxRegression && worst > 0;
+            if (regressed) ++regressions;
+
+            System.out.println(String.format("%-10s %s: %.3f -> %.3f %s (%+.1f%%)",
+                regressed ? "REGRESSED" : "ok", e.getKey(),
+                b.getDouble("score"), a.getDouble("score"), a.getString("scoreUnit"), change * 100));
+        }
+
+        for (String key : baseline.keySet())
+            if (!results.containsKey(key))
+                System.out.println("MISSING    " + key);
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + (maxRegression * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the score error, or 0 if unknown (NaN with a single iteration)
+     */
+    private static double scoreError(JSONObject metric) {
+        double error = metric.optDouble("scoreError", 0);
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    /**
+     * @return the benchmarks of a JMH result file, by name and parameters
+     */
+    private static Map<String, JSONObject> read(File file) throws Exception {
+        InputStream in = new FileInputStream(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) > 0)
+                out.write(buf, 0, len);
+        } finally {
+            in.close();
+        }
+
+        Map<String, JSONObject> benchmarks = new LinkedHashMap<String, JSONObject>();
+        JSONArray a = new JSONArray(out.toString("UTF-8"));
+
+        for (int i = 0; i < a.length(); ++i) {
+            JSONObject benchmark = a.getJSONObject(i);
+            StringBuilder key = new StringBuilder(benchmark.getString("benchmark"));
+
+            JSONObject params = benchmark.optJSONObject("params");
+            if (params != null) {
+                Iterator<String> names = params.keys();
+                TreeMap<String, String> sorted = new TreeMap<String, String>();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    sorted.put(name, params.getString(name));
+                }
+                for (Map.Entry<String, String> p : sorted.entrySet())
+                    key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+            }
+
+            benchmarks.put(key.toString(), benchmark);
+        }
+
+        return benchmarks;
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building and serializing a batch result (the JSON text sent to Javascript) from the
+ * rows of a SELECT of the recipes (read once): with a JSONObject for each row, as before
+ * SQLiteJsonWriter (tree), or with SQLiteJsonWriter (writer).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-Dsqlite4java.library.path=target/lib" })
+@State(Scope.Thread)
+public class ResultSerializationBenchmark
+{
+    @Param({ "10", "1000", "5000", "10000" })
+    int rows;
+
+    private String[] columns;
+    private Object[][] values;
+
+    private final SQLiteJsonWriter out = new SQLiteJsonWriter();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkPlugin plugin = new BenchmarkPlugin();
+        RecipeData.create(plugin.getDatabasePath("result.db"), rows);
+
+        SQLitePlugin.SQLiteDatabaseNDK db = plugin.new SQLiteDatabaseNDK(SQLiteStatementCache.DEFAULT_SIZE);
+        db.open(plugin.getDatabasePath("result.db"));
+
+        SQLiteStatement st = db.mydb.prepare(RecipeData.SELECT);
+        st.bind(1, rows);
+
+        ArrayList<Object[]> r = new ArrayList<Object[]>();
+        while (st.step()) {
+            if (columns == null) {
+                columns = new String[st.columnCount()];
+                for (int i = 0; i < columns.length; ++i)
+                    columns[i] = st.getColumnName(i);
+            }
+
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; ++i)
+                row[i] = st.columnNull(i) ? null : st.columnValue(i);
+            r.add(row);
+        }
+        values = r.toArray(new Object[r.size()][]);
+
+        st.dispose();
+        db.closeDatabaseNow();
+        plugin.deleteAll();
+    }
+
+    @Benchmark
+    public String tree() throws Exception {
+        JSONArray rowsResult = new JSONArray();
+        for (Object[] row : values) {
+            JSONObject r = new JSONObject();
+            for (int i = 0; i < columns.length; ++i)
+                r.put(columns[i], row[i] == null ? JSONObject.NULL : row[i]);
+            rowsResult.put(r);
+        }
+
+        JSONObject queryResult = new JSONObject();
+        queryResult.put("rows", rowsResult);
+        queryResult.put("rowsAffected", 0);
+
+        JSONObject r = new JSONObject();
+        r.put("qid", "0");
+        r.put("type", "success");
+        r.put("result", queryResult);
+
+        return new PluginResult(PluginResult.Status.OK, new JSONArray().put(r)).getMessage();
+    }
+
+    @Benchmark
+    public String writer() {
+        char[][] names = new char[columns.length][];
+        for (int i = 0; i < columns.length; ++i)
+            names[i] = SQLiteJsonWriter.encodeName(columns[i]);
+
+        out.reset().beginArray();
+        out.beginObject();
+        out.name("qid").value("0");
+        out.name("type").value("success");
+        out.name("result").beginObject();
+
+        out.name("rows").beginArray();
+        for (Object[] row : values) {
+            out.beginObject();
+            for (int i = 0; i < columns.length; ++i)
+                out.name(names[i]).value(row[i]);
+            out.endObject();
+        }
+        out.endArray();
+        out.name("rowsAffected").value(0);
+
+        out.endObject();
+        out.endObject();
+        out.endArray();
+
+        return new PluginResult(PluginResult.Status.OK, out.toMessage()).getMessage();
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The sqlite4java engine (SQLiteDatabaseNDK) in the benchmark thread, without the queue:
+ * row materialisation of a SELECT into the JSON result (executeSqlStatementNDK), and the
+ * whole batch with its PluginResult (executeSqlBatch).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-Dsqlite4java.library.path=target/lib" })
+@State(Scope.Thread)
+public class StatementBenchmark
+{
+    @Param({ "10", "1000", "10000" })
+    int rows;
+
+    @Param({ "false", "true" })
+    boolean columnar;
+
+    private BenchmarkPlugin plugin;
+    private SQLitePlugin.SQLiteDatabaseNDK db;
+    private final CapturingCallbackContext cbc = new CapturingCallbackContext();
+    private final SQLiteJsonWriter out = new SQLiteJsonWriter();
+
+    private JSONArray params;
+    private String[] queries;
+    private JSONArray[] batchParams;
+    private String[] queryIDs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plugin = new BenchmarkPlugin();
+        RecipeData.create(plugin.getDatabasePath("statement.db"), rows);
+
+        db = plugin.new SQLiteDatabaseNDK(SQLiteStatementCache.DEFAULT_SIZE);
+        db.open(plugin.getDatabasePath("statement.db"));
+        db.columnarResults = columnar;
+
+        params = new JSONArray().put(rows);
+        queries = new String[] { RecipeData.SELECT };
+        batchParams = new JSONArray[] { params };
+        queryIDs = new String[] { "0" };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.closeDatabaseNow();
+        plugin.deleteAll();
+    }
+
+    @Benchmark
+    public int executeSqlStatementNDK() throws Exception {
+        out.reset().beginObject();
+        db.executeSqlStatementNDK(RecipeData.SELECT, params, out);
+        out.endObject();
+        return out.size();
+    }
+
+    @Benchmark
+    public int executeSqlBatch() {
+        db.executeSqlBatch(queries, batchParams, queryIDs, cbc.reset());
+        return cbc.getResult().getMessage().length();
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package org.apache.cordova;
+
+import android.app.Activity;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Stand-in for the Cordova interface on a plain JVM (benchmarks only).
+ */
+public interface CordovaInterface
+{
+    Activity getActivity();
+
+    ExecutorService getThreadPool();
+}
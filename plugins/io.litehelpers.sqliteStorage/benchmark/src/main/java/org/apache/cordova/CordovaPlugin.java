@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package org.apache.cordova;
+
+import android.net.Uri;
+
+import java.io.IOException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Stand-in for the Cordova plugin base class on a plain JVM (benchmarks only).
+ */
+public class CordovaPlugin
+{
+    public CordovaWebView webView;
+    public CordovaInterface cordova;
+
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        return false;
+    }
+
+    public void onDestroy() {
+    }
+
+    public Uri remapUri(Uri uri) {
+        return null;
+    }
+
+    public CordovaResourceApi.OpenForReadResult handleOpenForRead(Uri uri) throws IOException {
+        throw new IOException("not supported");
+    }
+
+    protected Uri toPluginUri(Uri origUri) {
+        throw new UnsupportedOperationException();
+    }
+
+    protected Uri fromPluginUri(Uri pluginUri) {
+        throw new UnsupportedOperationException();
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package org.apache.cordova;
+
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import java.io.InputStream;
+
+/**
+ * Stand-in for the Cordova resource API on a plain JVM (benchmarks only).
+ */
+public class CordovaResourceApi
+{
+    public static final String PLUGIN_URI_SCHEME = "cdvplugin";
+
+    public static final class OpenForReadResult {
+        public final Uri uri;
+        public final InputStream inputStream;
+        public final String mimeType;
+        public final long length;
+        public final AssetFileDescriptor assetFd;
+
+        public OpenForReadResult(Uri uri, InputStream inputStream, String mimeType, long length, AssetFileDescriptor assetFd) {
+            this.uri = uri;
+            this.inputStream = inputStream;
+            this.mimeType = mimeType;
+            this.length = length;
+            this.assetFd = assetFd;
+        }
+    }
+} /* vim: set expandtab : */
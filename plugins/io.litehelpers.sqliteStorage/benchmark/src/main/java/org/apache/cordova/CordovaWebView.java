@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package org.apache.cordova;
+
+/**
+ * Stand-in for the Cordova web view on a plain JVM (benchmarks only).
+ */
+public class CordovaWebView
+{
+    public CordovaResourceApi getResourceApi() {
+        return null;
+    }
+
+    public void sendPluginResult(PluginResult result, String callbackId) {
+    }
+} /* vim: set expandtab : */
@@ -52,6 +52,8 @@ try {
   cordova platform add $platform
   cordova plugin rm com.phonegap.plugins.sqlite
   cordova plugin add ../.plugin
+  # (to write the files of the importFile test)
+  cordova plugin add cordova-plugin-file
   cordova run $platform
 } finally {
   popd
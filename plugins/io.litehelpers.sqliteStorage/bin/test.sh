@@ -53,4 +53,6 @@ cp -r ../src ../plugin.xml ../www ../.plugin
 cordova platform add $platform
 cordova plugin rm com.brodysoft.sqlitePlugin
 cordova plugin add ../.plugin
+# (to write the files of the importFile test)
+cordova plugin add cordova-plugin-file
 cordova run $platform
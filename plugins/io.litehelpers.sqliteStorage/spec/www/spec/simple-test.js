@@ -251,4 +251,1454 @@ describe('simple tests', function() {
   };
 });
 
+describe('Android plugin features', function() {
+
+  var pluginScenarioList = [ 'Plugin-sqlite4java', 'Plugin-android.database' ];
+
+  for (var i=0; i<pluginScenarioList.length; ++i) {
+
+    describe(pluginScenarioList[i] + ': native feature test(s)', function() {
+      var suiteName = pluginScenarioList[i] + ': ';
+      var isOldImpl = (i === 1);
+
+      // NOTE: MUST be defined in function scope, NOT outer scope:
+      var openDatabase = function(options, success, error) {
+        if (isOldImpl) options.androidDatabaseImplementation = 2;
+        return window.sqlitePlugin.openDatabase(options, success, error);
+      }
+
+      // open a new (empty) database
+      var openNewDatabase = function(options, success, error) {
+        var reopen = function() { openDatabase(options, success, error); };
+        window.sqlitePlugin.deleteDatabase(options.name, reopen, reopen);
+      }
+
+      it(suiteName + 'migrations: trigger body with CASE ... END', function(done) {
+        if (!isAndroid) pending('migrations are only supported by the Android version');
+
+        var script = "CREATE TABLE item (id integer primary key, qty integer, size text);\n" +
+          "CREATE TRIGGER item_size AFTER INSERT ON item BEGIN\n" +
+          "  UPDATE item SET size = CASE WHEN new.qty > 10 THEN 'large' ELSE 'small' END WHERE id = new.id;\n" +
+          "END;\n" +
+          "CREATE TABLE item_log (id integer)";
+
+        openNewDatabase({name: 'migrations-trigger-test.db', migrations: [{version: 1, sql: script}]}, function(db) {
+          expect(db.openResult.migrations.fromVersion).toBe(0);
+          expect(db.openResult.migrations.applied).toEqual([1]);
+
+          db.transaction(function(tx) {
+            tx.executeSql("INSERT INTO item (qty) VALUES (?)", [5]);
+            tx.executeSql("INSERT INTO item (qty) VALUES (?)", [50]);
+            tx.executeSql("INSERT INTO item_log (id) VALUES (1)");
+
+            tx.executeSql("SELECT size FROM item ORDER BY id", [], function(tx, res) {
+              expect(res.rows.length).toBe(2);
+              expect(res.rows.item(0).size).toBe('small');
+              expect(res.rows.item(1).size).toBe('large');
+            });
+          }, function(e) {
+            ok(false, e.message);
+            db.close(done, done);
+          }, function() {
+            db.close(done, done);
+          });
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'migrations: apply only the new versions, none if one fails', function(done) {
+        if (!isAndroid) pending('migrations are only supported by the Android version');
+
+        var dbname = 'migrations-upgrade-test.db';
+        var v1 = {version: 1, sql: "CREATE TABLE item (id integer primary key, name text)"};
+        var v2 = {version: 2, sql: ["ALTER TABLE item ADD COLUMN qty integer", "INSERT INTO item (name, qty) VALUES ('first', 1)"]};
+        var v3bad = {version: 3, sql: "INSERT INTO item (name) VALUES ('bad'); INSERT INTO no_such_table (id) VALUES (1)"};
+
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          done();
+        };
+
+        openNewDatabase({name: dbname, migrations: [v1]}, function(db) {
+          expect(db.openResult.migrations.fromVersion).toBe(0);
+          expect(db.openResult.migrations.toVersion).toBe(1);
+          expect(db.openResult.migrations.applied).toEqual([1]);
+
+          db.close(function() {
+            openDatabase({name: dbname, migrations: [v1, v2]}, function(db) {
+              expect(db.openResult.migrations.fromVersion).toBe(1);
+              expect(db.openResult.migrations.toVersion).toBe(2);
+              expect(db.openResult.migrations.applied).toEqual([2]);
+
+              db.close(function() {
+                openDatabase({name: dbname, migrations: [v1, v2, v3bad]}, function(db) {
+                  ok(false, 'open should fail');
+                  db.close(done, done);
+                }, function(e) {
+                  expect(e).toBeDefined();
+
+                  // (the failed migration is rolled back, the schema is still at version 2)
+                  openDatabase({name: dbname, migrations: [v1, v2]}, function(db) {
+                    expect(db.openResult.migrations.fromVersion).toBe(2);
+                    expect(db.openResult.migrations.applied).toEqual([]);
+
+                    db.executeSql("SELECT name, qty FROM item", [], function(res) {
+                      expect(res.rows.length).toBe(1);
+                      expect(res.rows.item(0).name).toBe('first');
+                      expect(res.rows.item(0).qty).toBe(1);
+                      db.close(done, done);
+                    }, fail);
+                  }, fail);
+                });
+              }, fail);
+            }, fail);
+          }, fail);
+        }, fail);
+      }, MYTIMEOUT);
+
+      it(suiteName + 'sqlBatch: roll back all statements if one fails', function(done) {
+        openNewDatabase({name: 'sqlbatch-rollback-test.db'}, function(db) {
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key, name text unique)",
+            ["INSERT INTO item (name) VALUES (?)", ['first']]
+          ], function() {
+            db.sqlBatch([
+              ["INSERT INTO item (name) VALUES (?)", ['second']],
+              "UPDATE item SET name = 'changed' WHERE name = 'first'",
+              ["INSERT INTO item (name) VALUES (?)", ['second']]
+            ], function() {
+              ok(false, 'batch with a constraint violation should fail');
+              db.close(done, done);
+            }, function(e) {
+              expect(e.message).toBeDefined();
+              if (isAndroid) expect(e.index).toBe(2);
+
+              db.executeSql("SELECT name FROM item ORDER BY id", [], function(res) {
+                expect(res.rows.length).toBe(1);
+                expect(res.rows.item(0).name).toBe('first');
+                db.close(done, done);
+              }, function(e) {
+                ok(false, e.message);
+                db.close(done, done);
+              });
+            });
+          }, function(e) {
+            ok(false, e.message);
+            db.close(done, done);
+          });
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'executeBulk: report failed rows and insert the others', function(done) {
+        if (!isAndroid) pending('executeBulk is only supported by the Android version');
+
+        openNewDatabase({name: 'bulk-errors-test.db'}, function(db) {
+          expect(db.hasNativeFeature('executeBulk')).toBe(true);
+
+          db.executeSql("CREATE TABLE item (name text unique, qty integer not null)", [], function() {
+            db.executeBulk("INSERT INTO item (name, qty) VALUES (?,?)",
+              [["a", 1], ["a", 2], ["b", null], ["c", 3]], function(res) {
+                expect(res.rowCount).toBe(4);
+                expect(res.rowsAffected).toBe(2);
+                expect(res.errors.length).toBe(2);
+                expect(res.errors[0].index).toBe(1);
+                expect(res.errors[0].message).toBeDefined();
+                expect(res.errors[1].index).toBe(2);
+
+                db.executeSql("SELECT name FROM item ORDER BY name", [], function(res) {
+                  expect(res.rows.length).toBe(2);
+                  expect(res.rows.item(0).name).toBe('a');
+                  expect(res.rows.item(1).name).toBe('c');
+                  db.close(done, done);
+                });
+              }, function(e) {
+                ok(false, e.message);
+                db.close(done, done);
+              });
+          });
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'executeSqlPaged: stop before the first page', function(done) {
+        if (!isAndroid) pending('executeSqlPaged is only supported by the Android version');
+
+        openNewDatabase({name: 'paged-stop-test.db'}, function(db) {
+          db.transaction(function(tx) {
+            tx.executeSql("CREATE TABLE item (id integer primary key)");
+            for (var k=0; k<100; ++k)
+              tx.executeSql("INSERT INTO item VALUES (?)", [k]);
+          });
+
+          // (queued after the transaction, so it is stopped before it starts)
+          var pageCount = 0;
+          var paged = db.executeSqlPaged("SELECT * FROM item", [], 10, function(rows, page) {
+            ++pageCount;
+          }, function(res) {
+            expect(pageCount).toBe(0);
+            expect(res.stopped).toBe(true);
+            expect(res.pages).toBe(1);
+            expect(res.rowCount).toBe(10);
+            db.close(done, done);
+          }, function(e) {
+            ok(false, e.message);
+            db.close(done, done);
+          });
+          paged.stop();
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'executeSqlPaged: no more pages after the page callback returns false', function(done) {
+        if (!isAndroid) pending('executeSqlPaged is only supported by the Android version');
+
+        openNewDatabase({name: 'paged-return-false-test.db'}, function(db) {
+          db.transaction(function(tx) {
+            tx.executeSql("CREATE TABLE item (id integer primary key)");
+            for (var k=0; k<100; ++k)
+              tx.executeSql("INSERT INTO item VALUES (?)", [k]);
+          });
+
+          var pages = [];
+          db.executeSqlPaged("SELECT id FROM item ORDER BY id", [], 10, function(rows, page) {
+            pages.push(page);
+            expect(rows.length).toBe(10);
+            expect(rows[0].id).toBe(0);
+            return false;
+          }, function(res) {
+            expect(pages).toEqual([0]);
+            db.close(done, done);
+          }, function(e) {
+            ok(false, e.message);
+            db.close(done, done);
+          });
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'idleCloseMs: reopen the idle connection (and readers) for the next SELECT', function(done) {
+        if (!isAndroid) pending('idleCloseMs is only supported by the Android version');
+
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        var db = null;
+        openNewDatabase({name: 'idle-close-test.db', idleCloseMs: 100, readerPoolSize: 2}, function(mydb) {
+          db = mydb;
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key, name text)",
+            ["INSERT INTO item (name) VALUES (?)", ['first']]
+          ], function() {
+            setTimeout(function() {
+              db.getStats(function(stats) {
+                expect(stats.connectionOpen).toBe(false);
+                expect(stats.readerPoolSize).toBe(0);
+
+                // (a SELECT-only batch, for the readers if they were still started)
+                db.executeSql("SELECT name FROM item", [], function(res) {
+                  expect(res.rows.length).toBe(1);
+                  expect(res.rows.item(0).name).toBe('first');
+
+                  db.getStats(function(stats) {
+                    expect(stats.reopens).toBe(1);
+                    expect(stats.readerPoolSize).toBe(isOldImpl ? 0 : 2);
+                    db.close(done, done);
+                  }, fail);
+                }, fail);
+              }, fail);
+            }, 500);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'resultCacheSize: no stale result from a reader after a COMMIT', function(done) {
+        if (!isAndroid) pending('resultCacheSize is only supported by the Android version');
+        if (isOldImpl) pending('reader connections are only supported by the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        var count = function(res) {
+          return res.rows.item(0).n;
+        };
+
+        openNewDatabase({name: 'result-cache-commit-test.db', resultCacheSize: 100000, readerPoolSize: 1}, function(mydb) {
+          db = mydb;
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key)",
+            "INSERT INTO item VALUES (1)"
+          ], function() {
+            db.executeSql("BEGIN", [], function() {
+              db.executeSql("INSERT INTO item VALUES (2)", [], function() {
+                // (the committed rows, read by a reader while the write transaction is open)
+                db.readTransaction(function(tx) {
+                  tx.executeSql("SELECT count(*) AS n FROM item", [], function(tx, res) {
+                    expect(count(res)).toBe(1);
+                  });
+                }, fail, function() {
+                  db.executeSql("COMMIT", [], function() {
+                    db.executeSql("SELECT count(*) AS n FROM item", [], function(res) {
+                      expect(count(res)).toBe(2);
+
+                      db.getStats(function(stats) {
+                        expect(stats.resultCache.invalidations).toBeGreaterThan(0);
+                        db.close(done, done);
+                      }, fail);
+                    }, fail);
+                  }, fail);
+                });
+              }, fail);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'readerPoolSize: a read transaction sees the same data in all of its batches', function(done) {
+        if (!isAndroid) pending('readerPoolSize is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'reader-tx-test.db', readerPoolSize: 1}, function(mydb) {
+          db = mydb;
+          expect(db.hasNativeFeature('readerPool')).toBe(!isOldImpl);
+
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key)",
+            "INSERT INTO item VALUES (1)"
+          ], function() {
+            var counts = [];
+
+            // (one SELECT in each batch, with a write committed while they run)
+            var next = function(tx) {
+              tx.executeSql("SELECT count(*) AS n FROM item", [], function(tx, res) {
+                counts.push(res.rows.item(0).n);
+                if (counts.length === 1) db.executeSql("INSERT INTO item VALUES (2)", [], null, fail);
+                if (counts.length < 20) next(tx);
+              });
+            };
+
+            db.readTransaction(next, fail, function() {
+              expect(counts.length).toBe(20);
+              for (var k=0; k<counts.length; ++k)
+                expect(counts[k]).toBe(1);
+
+              // (queued after the INSERT)
+              db.executeSql("SELECT count(*) AS n FROM item", [], function(res) {
+                expect(res.rows.item(0).n).toBe(2);
+                db.close(done, done);
+              }, fail);
+            });
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'readerPoolSize: a read transaction sees the writes of the transactions queued before it', function(done) {
+        if (!isAndroid) pending('readerPoolSize is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'reader-tx-order-test.db', readerPoolSize: 1}, function(mydb) {
+          db = mydb;
+
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key)",
+            "INSERT INTO item VALUES (1)"
+          ], function() {
+            var order = [];
+
+            db.transaction(function(tx) {
+              tx.executeSql("INSERT INTO item VALUES (2)");
+              tx.executeSql("INSERT INTO item VALUES (3)");
+            }, fail, function() {
+              order.push('write');
+            });
+
+            db.readTransaction(function(tx) {
+              tx.executeSql("SELECT count(*) AS n FROM item", [], function(tx, res) {
+                order.push('read');
+                expect(res.rows.item(0).n).toBe(3);
+              });
+            }, fail, function() {
+              expect(order).toEqual(['write', 'read']);
+              db.close(done, done);
+            });
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'BLOB parameter from a typed array', function(done) {
+        if (!isAndroid) pending('BLOB parameters are only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'blob-param-test.db'}, function(mydb) {
+          db = mydb;
+          db.sqlBatch([
+            "CREATE TABLE item (data)",
+            ["INSERT INTO item VALUES (?)", [new Uint8Array([1, 2, 3, 255])]],
+            ["INSERT INTO item VALUES (?)", [{blob: "AQID/w=="}]]
+          ], function() {
+            db.executeSql("SELECT typeof(data) AS t, hex(data) AS h FROM item", [], function(res) {
+              expect(res.rows.length).toBe(2);
+              for (var k=0; k<2; ++k) {
+                expect(res.rows.item(k).t).toBe('blob');
+                expect(res.rows.item(k).h).toBe('010203FF');
+              }
+              db.close(done, done);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'blobOpen/blobWrite/blobRead: write and read a BLOB value in chunks', function(done) {
+        if (!isAndroid) pending('incremental BLOB I/O is only supported by the Android version');
+        if (isOldImpl) pending('incremental BLOB I/O is only supported by the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'blob-io-test.db'}, function(mydb) {
+          db = mydb;
+          expect(db.hasNativeFeature('blobOpen')).toBe(true);
+
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key, data)",
+            "INSERT INTO item VALUES (1, zeroblob(8))"
+          ], function() {
+            db.blobOpen({table: 'item', column: 'data', rowid: 1, writable: true}, function(blob) {
+              expect(blob.size).toBe(8);
+              db.blobWrite(blob.handle, 0, new Uint8Array([1, 2, 3, 4]), function() {
+                db.blobWrite(blob.handle, 4, new Uint8Array([5, 6, 7, 8]), function() {
+                  db.blobRead(blob.handle, 2, 4, function(data) {
+                    expect(data instanceof ArrayBuffer).toBe(true);
+                    expect(Array.prototype.slice.call(new Uint8Array(data))).toEqual([3, 4, 5, 6]);
+
+                    db.blobClose(blob.handle, function() {
+                      db.executeSql("SELECT hex(data) AS h FROM item", [], function(res) {
+                        expect(res.rows.item(0).h).toBe('0102030405060708');
+                        db.close(done, done);
+                      }, fail);
+                    }, fail);
+                  }, fail);
+                }, fail);
+              }, fail);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'blobWrite: not lost with the rollback of a transaction in progress', function(done) {
+        if (!isAndroid) pending('incremental BLOB I/O is only supported by the Android version');
+        if (isOldImpl) pending('incremental BLOB I/O is only supported by the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'blob-write-tx-test.db'}, function(mydb) {
+          db = mydb;
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key, data)",
+            "INSERT INTO item VALUES (1, zeroblob(2))"
+          ], function() {
+            db.blobOpen({table: 'item', column: 'data', rowid: 1, writable: true}, function(blob) {
+              var written = false;
+
+              db.transaction(function(tx) {
+                tx.executeSql("INSERT INTO item VALUES (2, NULL)", [], function() {
+                  // (sent while the transaction is in progress)
+                  db.blobWrite(blob.handle, 0, new Uint8Array([1, 2]), function() {
+                    written = true;
+                    db.blobClose(blob.handle, function() {
+                      db.executeSql("SELECT id, hex(data) AS h FROM item", [], function(res) {
+                        expect(res.rows.length).toBe(1);
+                        expect(res.rows.item(0).h).toBe('0102');
+                        db.close(done, done);
+                      }, fail);
+                    }, fail);
+                  }, fail);
+                  tx.executeSql("SELECT * FROM no_such_table");
+                });
+              }, function(e) {
+                // (rolled back before the write)
+                expect(written).toBe(false);
+              }, function() {
+                ok(false, 'transaction not expected to succeed');
+                db.close(done, done);
+              });
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'backup and restore', function(done) {
+        if (!isAndroid) pending('backup is only supported by the Android version');
+        if (isOldImpl) pending('backup is only supported by the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'backup-test.db'}, function(mydb) {
+          db = mydb;
+          expect(db.hasNativeFeature('backup')).toBe(true);
+
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key, name text)",
+            ["INSERT INTO item (name) VALUES (?)", ['first']]
+          ], function() {
+            var progress = 0;
+
+            db.backup({file: 'backup-test-copy.db', pagesPerStep: 1}, function(p) {
+              ++progress;
+              expect(p.remaining).toBeLessThan(p.pageCount);
+            }, function(res) {
+              expect(res.pageCount).toBeGreaterThan(1);
+              expect(res.steps).toBeGreaterThan(1);
+              expect(progress).toBe(res.steps - 1);
+
+              db.executeSql("DELETE FROM item", [], function() {
+                db.restore({file: 'backup-test-copy.db'}, null, function(res) {
+                  db.executeSql("SELECT name FROM item", [], function(res) {
+                    expect(res.rows.length).toBe(1);
+                    expect(res.rows.item(0).name).toBe('first');
+                    db.close(done, done);
+                  }, fail);
+                }, fail);
+              }, fail);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'backup: no uncommitted changes of a transaction in progress', function(done) {
+        if (!isAndroid) pending('backup is only supported by the Android version');
+        if (isOldImpl) pending('backup is only supported by the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'backup-tx-test.db'}, function(mydb) {
+          db = mydb;
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key)",
+            "INSERT INTO item VALUES (1)"
+          ], function() {
+            var backupDone = false;
+
+            db.transaction(function(tx) {
+              tx.executeSql("INSERT INTO item VALUES (2)", [], function() {
+                // (sent while the transaction is in progress)
+                db.backup({file: 'backup-tx-test-copy.db'}, null, function() {
+                  backupDone = true;
+                  db.restore({file: 'backup-tx-test-copy.db'}, null, function() {
+                    db.executeSql("SELECT count(*) AS n FROM item", [], function(res) {
+                      expect(res.rows.item(0).n).toBe(1);
+                      db.close(done, done);
+                    }, fail);
+                  }, fail);
+                }, fail);
+
+                tx.executeSql("SELECT 1", [], function() {
+                  tx.executeSql("SELECT * FROM no_such_table");
+                });
+              });
+            }, function(e) {
+              // (rolled back before the backup)
+              expect(backupDone).toBe(false);
+            }, function() {
+              ok(false, 'transaction not expected to succeed');
+              db.close(done, done);
+            });
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'open result (with the features) for a database already open in the native part', function(done) {
+        if (!isAndroid) pending('the open result is only sent by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'reopen-result-test.db'}, function(mydb) {
+          db = mydb;
+          expect(db.openResult.features.executeBulk).toBe(true);
+
+          // (as after a reload of the page, which keeps the database open in the native part)
+          cordova.exec(function(result) {
+            expect(result).toBeDefined();
+            expect(result.features).toEqual(db.openResult.features);
+            db.close(done, done);
+          }, function(e) {
+            ok(false, 'reopen error: ' + e);
+            db.close(done, done);
+          }, "SQLitePlugin", "open", [db.openargs]);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'resultEncoding: columnar results (with a dictionary-encoded column)', function(done) {
+        if (!isAndroid) pending('resultEncoding is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'columnar-test.db', resultEncoding: 'columnar'}, function(mydb) {
+          db = mydb;
+
+          var rows = [];
+          for (var k=0; k<50; ++k)
+            rows.push([k, (k % 3 === 0) ? 'ovo' : 'leite', (k % 5 === 0) ? null : k / 2]);
+
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key, name text, amount real)"
+          ], function() {
+            db.executeBulk("INSERT INTO item VALUES (?,?,?)", rows, function() {
+              db.executeSql("SELECT id, name, amount FROM item ORDER BY id", [], function(res) {
+                expect(res.rows.length).toBe(50);
+                for (var k=0; k<50; ++k) {
+                  var item = res.rows.item(k);
+                  expect(item.id).toBe(k);
+                  expect(item.name).toBe(rows[k][1]);
+                  expect(item.amount).toBe(rows[k][2]);
+                }
+
+                db.executeSql("SELECT id FROM item WHERE id < 0", [], function(res) {
+                  expect(res.rows.length).toBe(0);
+                  db.close(done, done);
+                }, fail);
+              }, fail);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'resultEncoding: binary results', function(done) {
+        if (!isAndroid) pending('resultEncoding is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'binary-result-test.db', resultEncoding: 'binary'}, function(mydb) {
+          db = mydb;
+          db.executeSql("CREATE TABLE item (id integer primary key, name text, amount real, big integer, data blob)", [], function() {
+            db.executeSql("INSERT INTO item VALUES (?,?,?,?,?)", [1, 'açúcar ☕', 1.5, 9007199254740991, new Uint8Array([1, 2, 3, 255])], function(res) {
+              expect(res.rowsAffected).toBe(1);
+              expect(res.insertId).toBe(1);
+
+              db.transaction(function(tx) {
+                tx.executeSql("INSERT INTO item (id, name) VALUES (2, NULL)");
+                tx.executeSql("SELECT id, name, amount, big, data FROM item ORDER BY id", [], function(tx, res) {
+                  expect(res.rows.length).toBe(2);
+
+                  var item = res.rows.item(0);
+                  expect(item.id).toBe(1);
+                  expect(item.name).toBe('açúcar ☕');
+                  expect(item.amount).toBe(1.5);
+                  expect(item.big).toBe(9007199254740991);
+                  if (isOldImpl) {
+                    // (JSON results, with the BLOB value as a base64 string)
+                    expect(typeof item.data).toBe('string');
+                  } else {
+                    expect(item.data instanceof ArrayBuffer).toBe(true);
+                    expect(Array.prototype.slice.call(new Uint8Array(item.data))).toEqual([1, 2, 3, 255]);
+                  }
+
+                  item = res.rows.item(1);
+                  expect(item.id).toBe(2);
+                  expect(item.name).toBe(null);
+                  expect(item.amount).toBe(null);
+                });
+                tx.executeSql("SELECT * FROM no_such_table", [], function() {
+                  ok(false, 'statement not expected to succeed');
+                }, function(tx, e) {
+                  expect(e.message).toBeDefined();
+                  // (handled: no rollback)
+                  return false;
+                });
+              }, fail, function() {
+                db.close(done, done);
+              });
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'priority lanes: a read transaction is started ahead of queued background work', function(done) {
+        if (!isAndroid) pending('priority lanes are only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'lanes-test.db'}, function(mydb) {
+          db = mydb;
+          var order = [];
+
+          // all three are queued before the first one is started:
+          db.transaction(function(tx) {
+            tx.executeSql("CREATE TABLE item (id integer primary key)");
+            tx.executeSql("INSERT INTO item VALUES (1)");
+          }, fail, function() {
+            order.push('write');
+          });
+
+          db.executeBulk("INSERT INTO item VALUES (?)", [[2], [3]], function(res) {
+            order.push('bulk');
+            expect(res.rowsAffected).toBe(2);
+            expect(order).toEqual(['write', 'read', 'bulk']);
+            db.close(done, done);
+          }, fail);
+
+          db.readTransaction(function(tx) {
+            tx.executeSql("SELECT count(*) AS n FROM item", [], function(tx, res) {
+              // the row of the earlier transaction, but not the rows of the background bulk:
+              expect(res.rows.item(0).n).toBe(1);
+            });
+          }, fail, function() {
+            order.push('read');
+          });
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'groupCommit: adjacent executeSql writes in one transaction, each with its own result', function(done) {
+        if (!isAndroid) pending('groupCommit is only supported by the Android version');
+        if (isOldImpl) pending('groupCommit is only supported by the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        // (the INSERT calls are queued behind the CREATE TABLE and sent together)
+        var insertAll = function(ids, cb) {
+          var results = [];
+          var waiting = ids.length;
+          ids.forEach(function(id, k) {
+            db.executeSql("INSERT INTO item VALUES (?)", [id], function(res) {
+              results[k] = res;
+              if (--waiting === 0) cb(results);
+            }, function(e) {
+              results[k] = e;
+              if (--waiting === 0) cb(results);
+            });
+          });
+        };
+
+        openNewDatabase({name: 'group-commit-test.db', groupCommit: true}, function(mydb) {
+          db = mydb;
+          db.executeSql("CREATE TABLE item (id integer primary key)", [], null, fail);
+          insertAll([1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20], function(results) {
+            for (var k=0; k<results.length; ++k)
+              expect(results[k].insertId).toBe(k + 1);
+
+            db.getStats(function(stats) {
+              expect(stats.groupCommitItems).toBeGreaterThan(1);
+
+              // (duplicate id: only this call fails, the group is run again one by one)
+              insertAll([21, 3, 22], function(results) {
+                expect(results[0].insertId).toBe(21);
+                expect(results[1].message).toMatch(/constraint/i);
+                expect(results[2].insertId).toBe(22);
+
+                db.executeSql("SELECT count(*) AS n FROM item", [], function(res) {
+                  expect(res.rows.item(0).n).toBe(22);
+                  db.close(done, done);
+                }, fail);
+              });
+            }, fail);
+          });
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'blobUrl: load a BLOB value with a blob URL', function(done) {
+        if (!isAndroid) pending('blob URLs are only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'blob-url-test.db', blobUrls: [{table: 'imagem', column: 'data'}]}, function(mydb) {
+          db = mydb;
+          expect(db.blobUrl('imagem', 'data', 42, {type: 'image/png', version: 3})).toBe(
+            'file:///sqlite-blob/blob-url-test.db/imagem/data/42?type=image%2Fpng&v=3');
+
+          db.sqlBatch([
+            "CREATE TABLE imagem (id integer primary key, data blob)",
+            ["INSERT INTO imagem VALUES (?,?)", [42, new Uint8Array([1, 2, 3, 255])]]
+          ], function() {
+            var xhr = new XMLHttpRequest();
+            xhr.open('GET', db.blobUrl('imagem', 'data', 42));
+            xhr.responseType = 'arraybuffer';
+            xhr.onload = function() {
+              expect(Array.prototype.slice.call(new Uint8Array(xhr.response))).toEqual([1, 2, 3, 255]);
+              db.close(done, done);
+            };
+            xhr.onerror = function() {
+              ok(false, 'blob URL not loaded');
+              db.close(done, done);
+            };
+            xhr.send();
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'timeoutMs: interrupt a statement that runs too long', function(done) {
+        if (!isAndroid) pending('timeoutMs is only supported by the Android version');
+        if (isOldImpl) pending('a running statement can only be interrupted with the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'timeout-test.db'}, function(mydb) {
+          db = mydb;
+          db.executeSql("WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x+1 FROM c) SELECT max(x) FROM c", [], function() {
+            ok(false, 'statement not expected to succeed');
+            db.close(done, done);
+          }, function(e) {
+            expect(e.interrupted).toBe(true);
+            expect(e.code).toBe(7);
+            expect(e.message).toBe('interrupted (timeout)');
+
+            // (the database keeps running the other requests)
+            db.executeSql("SELECT 1 AS one", [], function(res) {
+              expect(res.rows.item(0).one).toBe(1);
+              db.close(done, done);
+            }, fail);
+          }, {timeoutMs: 100});
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'cancel: interrupt a running statement by queryId', function(done) {
+        if (!isAndroid) pending('cancel is only supported by the Android version');
+        if (isOldImpl) pending('a running statement can only be interrupted with the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'cancel-test.db'}, function(mydb) {
+          db = mydb;
+          db.executeSql("WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x+1 FROM c) SELECT max(x) FROM c", [], function() {
+            ok(false, 'statement not expected to succeed');
+            db.close(done, done);
+          }, function(e) {
+            expect(e.interrupted).toBe(true);
+            expect(e.message).toBe('interrupted (cancelled)');
+
+            // (already done)
+            db.cancel('cancel-test-query', function(res) {
+              expect(res.cancelled).toBe(false);
+              db.close(done, done);
+            }, fail);
+          }, {queryId: 'cancel-test-query'});
+
+          setTimeout(function() {
+            db.cancel('cancel-test-query', function(res) {
+              expect(res.cancelled).toBe(true);
+            }, fail);
+          }, 200);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'resultCacheSize: no cached result for a SELECT without a table or with a non-deterministic function', function(done) {
+        if (!isAndroid) pending('resultCacheSize is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        var LAST_ID = "SELECT last_insert_rowid() AS id FROM item LIMIT 1";
+
+        openNewDatabase({name: 'result-cache-deterministic-test.db', resultCacheSize: 100000}, function(mydb) {
+          db = mydb;
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key)",
+            "CREATE TABLE other (id integer primary key)",
+            "INSERT INTO item VALUES (1)"
+          ], function() {
+            db.executeSql(LAST_ID, [], function(res) {
+              expect(res.rows.item(0).id).toBe(1);
+
+              // (a write to another table, which does not invalidate the results that read item)
+              db.executeSql("INSERT INTO other VALUES (5)", [], function() {
+                db.executeSql(LAST_ID, [], function(res) {
+                  expect(res.rows.item(0).id).toBe(5);
+
+                  db.executeSql("SELECT random() AS r, datetime('now') AS t, changes() AS c FROM item", [], function() {
+                    db.executeSql("SELECT 1 AS one", [], function() {
+                      db.getStats(function(stats) {
+                        expect(stats.resultCache.entries).toBe(0);
+
+                        // (a plain SELECT from a table is cached)
+                        db.executeSql("SELECT id FROM item", [], function() {
+                          db.executeSql("SELECT id FROM item", [], function(res) {
+                            expect(res.rows.item(0).id).toBe(1);
+
+                            db.getStats(function(stats) {
+                              expect(stats.resultCache.entries).toBe(1);
+                              expect(stats.resultCache.hits).toBe(1);
+                              db.close(done, done);
+                            }, fail);
+                          }, fail);
+                        }, fail);
+                      }, fail);
+                    }, fail);
+                  }, fail);
+                }, fail);
+              }, fail);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'queryTimeoutMs: a write in a transaction is not interrupted by the default timeout', function(done) {
+        if (!isAndroid) pending('queryTimeoutMs is only supported by the Android version');
+        if (isOldImpl) pending('running statements are only interrupted by the sqlite4java version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        var SLOW_INSERT = "INSERT INTO item SELECT x FROM (WITH RECURSIVE c(x) AS " +
+          "(SELECT 1 UNION ALL SELECT x+1 FROM c WHERE x < 1000000) SELECT x FROM c)";
+
+        openNewDatabase({name: 'timeout-tx-test.db', queryTimeoutMs: 20}, function(mydb) {
+          db = mydb;
+          db.executeSql("CREATE TABLE item (id integer)", [], function() {
+            // (outside of a transaction, the default timeout interrupts the write)
+            db.executeSql(SLOW_INSERT, [], function() {
+              ok(false, 'the INSERT was not interrupted');
+              db.close(done, done);
+            }, function(e) {
+              expect(e.code).toBe(7);
+
+              db.transaction(function(tx) {
+                tx.executeSql("INSERT INTO item VALUES (-1)");
+                tx.executeSql(SLOW_INSERT, [], function(tx, res) {
+                  expect(res.rowsAffected).toBe(1000000);
+                });
+              }, fail, function() {
+                // (all of the transaction was committed)
+                db.executeSql("SELECT count(*) AS n FROM item", [], function(res) {
+                  expect(res.rows.item(0).n).toBe(1000001);
+                  db.close(done, done);
+                }, fail);
+              });
+            });
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'performanceProfile: effective settings, also on the reader connections', function(done) {
+        if (!isAndroid) pending('performanceProfile is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        openNewDatabase({name: 'profile-test.db', readerPoolSize: 1,
+            performanceProfile: {preset: 'lowMemory', cache_size: -777}}, function(mydb) {
+          db = mydb;
+          var profile = db.openResult.performanceProfile;
+          expect(profile.cache_size).toBe('-777');
+          expect(profile.mmap_size).toBe('0');
+          expect(profile.temp_store).toBe('1');
+          // (readerPoolSize switches the journal to WAL after the profile, with sqlite4java only)
+          expect(profile.journal_mode).toBe(isOldImpl ? 'truncate' : 'wal');
+
+          if (isOldImpl) {
+            db.close(done, done);
+            return;
+          }
+
+          expect(db.hasNativeFeature('readerPool')).toBe(true);
+          // (run by the reader connection)
+          db.readTransaction(function(tx) {
+            tx.executeSql("PRAGMA cache_size", [], function(tx, res) {
+              expect(res.rows.item(0).cache_size).toBe(-777);
+            });
+            tx.executeSql("PRAGMA temp_store", [], function(tx, res) {
+              expect(res.rows.item(0).temp_store).toBe(1);
+            });
+          }, fail, function() {
+            db.close(done, done);
+          });
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'search: accents, prefixes, ranking and trigger sync', function(done) {
+        if (!isAndroid) pending('search is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        var ids = function(res) {
+          return res.results.map(function(r) { return r.id; });
+        };
+
+        openNewDatabase({name: 'search-test.db'}, function(mydb) {
+          db = mydb;
+          expect(db.hasNativeFeature('search')).toBe(true);
+
+          db.sqlBatch([
+            "CREATE TABLE receita (id integer primary key, nome text, ingredientes text)",
+            ["INSERT INTO receita VALUES (1, ?, ?)", ["Bolo de fubá", "ovos, Açúcar, leite"]],
+            ["INSERT INTO receita VALUES (2, ?, ?)", ["Doce de açúcar", "leite"]],
+            ["INSERT INTO receita VALUES (3, ?, ?)", ["Frango assado", "frango, sal"]]
+          ], function() {
+            db.createSearchIndex("receita", ["nome", "ingredientes"], {}, function(res) {
+              expect(res.index).toBe('receita_fts');
+
+              // (accents and case are ignored; a match in nome, the first column, ranks higher)
+              db.search("receita", "ACUCAR", {}, function(res) {
+                expect(res.total).toBe(2);
+                expect(ids(res)).toEqual([2, 1]);
+                expect(res.results[0].rank).toBeGreaterThan(res.results[1].rank);
+
+                // (every term is a prefix, and all terms must match)
+                db.search("receita", "fran ass", {}, function(res) {
+                  expect(ids(res)).toEqual([3]);
+
+                  db.search("receita", "frango leite", {}, function(res) {
+                    expect(res.total).toBe(0);
+
+                    // (the triggers keep the index in sync)
+                    db.sqlBatch([
+                      ["INSERT INTO receita VALUES (4, ?, ?)", ["Pudim", "leite condensado, açúcar"]],
+                      ["UPDATE receita SET nome = ?, ingredientes = ? WHERE id = 2", ["Doce de leite", "leite"]],
+                      "DELETE FROM receita WHERE id = 1"
+                    ], function() {
+                      db.search("receita", "açúcar", {}, function(res) {
+                        expect(ids(res)).toEqual([4]);
+
+                        db.search("receita", "leite", {limit: 1}, function(res) {
+                          expect(res.total).toBe(2);
+                          expect(ids(res)).toEqual([2]);
+                          db.close(done, done);
+                        }, fail);
+                      }, fail);
+                    }, fail);
+                  }, fail);
+                }, fail);
+              }, fail);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'importFile: NDJSON and array files, dotted field paths, progress and row errors', function(done) {
+        if (!isAndroid) pending('importFile is only supported by the Android version');
+        if (!window.resolveLocalFileSystemURL) pending('this test needs cordova-plugin-file, to write the files');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + (e.message || e.code));
+          db.close(done, done);
+        };
+
+        var writeFile = function(name, text, success) {
+          window.resolveLocalFileSystemURL(cordova.file.dataDirectory, function(dir) {
+            dir.getFile(name, {create: true}, function(entry) {
+              entry.createWriter(function(writer) {
+                writer.onwriteend = function() { success(entry.toURL()); };
+                writer.onerror = fail;
+                writer.write(new Blob([text], {type: 'text/plain'}));
+              }, fail);
+            }, fail);
+          }, fail);
+        };
+
+        var record = function(id, nome) {
+          return {id: id, nome: nome, categoria: [{categoria_id: id * 10}], extra: {ignored: true}};
+        };
+
+        var ndjson = [record(1, 'um'), record(2, null), record(3, 'três'), record(4, 'quatro'), record(5, 'cinco')]
+          .map(function(r) { return JSON.stringify(r); }).join('\n') + '\n';
+        var array = JSON.stringify([record(10, 'dez'), record(11, 'onze')]);
+
+        openNewDatabase({name: 'import-test.db'}, function(mydb) {
+          db = mydb;
+          db.executeSql("CREATE TABLE receita (id integer primary key, nome text not null, categoria integer)", [], function() {
+            writeFile('import-test.ndjson', ndjson, function(ndjsonUrl) {
+              writeFile('import-test.json', array, function(arrayUrl) {
+                var progress = [];
+
+                db.importFile({
+                  path: ndjsonUrl,
+                  table: 'receita',
+                  columns: {id: 'id', nome: 'nome', categoria: 'categoria.0.categoria_id'},
+                  chunkSize: 2
+                }, function(p) {
+                  progress.push(p.rows);
+                  expect(p.bytesRead).toBeGreaterThan(0);
+                  expect(p.totalBytes).toBe(ndjson.length + 1); // ('três' has one 2-byte character)
+                }, function(res) {
+                  // (one chunk of 2 rows per step, a progress message between the steps)
+                  expect(progress).toEqual([2, 4]);
+                  expect(res.rows).toBe(5);
+                  expect(res.rowsAffected).toBe(4);
+                  // (NOT NULL constraint of nome, for the second record)
+                  expect(res.errors.length).toBe(1);
+                  expect(res.errors[0].index).toBe(1);
+                  expect(res.errors[0].message).toMatch(/constraint|NULL/i);
+
+                  // (a JSON array, and an array of columns with the same field names)
+                  db.importFile({path: arrayUrl, table: 'receita', columns: ['id', 'nome']}, null, function(res) {
+                    expect(res.rows).toBe(2);
+                    expect(res.errors).toEqual([]);
+
+                    db.executeSql("SELECT id, nome, categoria FROM receita ORDER BY id", [], function(res) {
+                      expect(res.rows.length).toBe(6);
+                      expect(res.rows.item(0)).toEqual({id: 1, nome: 'um', categoria: 10});
+                      expect(res.rows.item(1)).toEqual({id: 3, nome: 'três', categoria: 30});
+                      expect(res.rows.item(4)).toEqual({id: 10, nome: 'dez', categoria: null});
+                      db.close(done, done);
+                    }, fail);
+                  }, fail);
+                }, fail);
+              });
+            });
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'JSON results: escaped strings, non-finite floats and the smallest integer', function(done) {
+        if (!isAndroid) pending('only tested with the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        // (control characters, quote, backslash, U+2028, U+2029 and a non-BMP character)
+        var text = 'a\u0001\t\n\r\u001f"\\\u2028\u2029\ud83d\ude00z';
+
+        openNewDatabase({name: 'json-writer-test.db'}, function(mydb) {
+          db = mydb;
+          db.executeSql("SELECT ? AS p, 'a' || char(1, 9, 10, 13, 31, 34, 92, 8232, 8233, 128512) || 'z' AS s, " +
+                        "1e999 AS inf, -1e999 AS ninf, 1e999 - 1e999 AS nan, -9223372036854775807 - 1 AS minint", [text], function(res) {
+            var row = res.rows.item(0);
+            expect(row.p).toBe(text);
+            expect(row.s).toBe(text);
+            expect(row.s.length).toBe(13);
+
+            // (not allowed in JSON: written as null)
+            expect(row.inf).toBe(null);
+            expect(row.ninf).toBe(null);
+            expect(row.nan).toBe(null);
+
+            expect(row.minint).toBe(-9223372036854775808);
+            db.close(done, done);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'slowQueryMs: getSlowQueries records the slow statements with their parameter types and plan', function(done) {
+        if (!isAndroid) pending('the slow query log is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        // (a few hundred ms, far above the threshold)
+        var slowQuery = "WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x+1 FROM c WHERE x < ?) " +
+                        "SELECT count(*) AS n FROM c WHERE ? IS NOT NULL";
+
+        openNewDatabase({name: 'slow-query-test.db', slowQueryMs: 50}, function(mydb) {
+          db = mydb;
+          db.executeSql("SELECT ? AS a", ["fast-secret"], function(res) {
+            db.executeSql(slowQuery, [3000000, "secret"], function(res) {
+              expect(res.rows.item(0).n).toBe(3000000);
+
+              // (the plan is added after the result is sent, before the next batch is run)
+              db.executeSql("SELECT 1", [], function() {
+                db.getSlowQueries({}, function(log) {
+                  expect(log.thresholdMs).toBe(50);
+                  expect(log.total).toBe(1);
+                  expect(log.entries.length).toBe(1);
+
+                  var e = log.entries[0];
+                  expect(e.sql).toBe(slowQuery);
+                  expect(e.params).toEqual(['integer', 'text(6)']);
+                  expect(e.execMs).not.toBeLessThan(50);
+                  expect(e.rows).toBe(1);
+                  expect(e.plan.length).not.toBeLessThan(1);
+                  expect(typeof e.fullScan).toBe('boolean');
+
+                  // (types only: no parameter values)
+                  expect(JSON.stringify(log).indexOf('secret')).toBe(-1);
+
+                  db.getSlowQueries({clear: true}, function(log) {
+                    expect(log.entries.length).toBe(1);
+
+                    db.getSlowQueries({}, function(log) {
+                      expect(log.total).toBe(1);
+                      expect(log.entries.length).toBe(0);
+                      db.close(done, done);
+                    }, fail);
+                  }, fail);
+                }, fail);
+              }, fail);
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'getStats: latency histograms and statement counts by type', function(done) {
+        if (!isAndroid) pending('getStats is only supported by the Android version');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        var checkHistogram = function(h) {
+          expect(h.counts.length).toBe(h.boundsUs.length + 1);
+          var sum = 0;
+          for (var k=0; k<h.counts.length; ++k) sum += h.counts[k];
+          expect(sum).toBe(h.count);
+          expect(h.maxMs).not.toBeGreaterThan(h.totalMs);
+        };
+
+        openNewDatabase({name: 'stats-test.db'}, function(mydb) {
+          db = mydb;
+          db.sqlBatch([
+            "CREATE TABLE item (id integer primary key, name)",
+            ["INSERT INTO item VALUES (?, ?)", [1, 'um']],
+            ["INSERT INTO item VALUES (?, ?)", [2, 'dois']]
+          ], function() {
+            db.executeSql("SELECT * FROM item", [], function(res) {
+              expect(res.rows.length).toBe(2);
+
+              db.executeSql("SELECT * FROM nosuchtable", [], function() {
+                ok(false, 'SELECT from a missing table succeeded');
+                db.close(done, done);
+              }, function(e) {
+                db.getStats(function(stats) {
+                  expect(stats.byType.insert.statements).toBe(2);
+                  expect(stats.byType.insert.rowsAffected).toBe(2);
+                  expect(stats.byType.insert.errors).toBe(0);
+
+                  expect(stats.byType.select.statements).toBe(2);
+                  expect(stats.byType.select.rows).toBe(2);
+                  expect(stats.byType.select.errors).toBe(1);
+                  expect(stats.byType.select.bytes).toBeGreaterThan(0);
+
+                  expect(stats.execTime.count).not.toBeLessThan(5);
+                  expect(stats.queueWait.count).not.toBeLessThan(3);
+                  expect(stats.serializationTime.count).not.toBeLessThan(2);
+                  checkHistogram(stats.execTime);
+                  checkHistogram(stats.queueWait);
+                  checkHistogram(stats.serializationTime);
+
+                  db.close(done, done);
+                }, fail);
+              });
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+      it(suiteName + 'statementCacheSize: repeated statements are cache hits, and a schema change clears the cache', function(done) {
+        if (!isAndroid) pending('the statement cache is only supported by the Android version');
+        if (isOldImpl) pending('the statement cache is only supported by the sqlite4java (NDK) implementation');
+
+        var db = null;
+        var fail = function(e) {
+          ok(false, 'unexpected error: ' + e.message);
+          db.close(done, done);
+        };
+
+        var select = function(n, cb) {
+          db.executeSql("SELECT count(*) AS n FROM item WHERE id > ?", [n], function() {
+            if (n > 1) select(n - 1, cb);
+            else cb();
+          }, fail);
+        };
+
+        openNewDatabase({name: 'statement-cache-test.db', statementCacheSize: 8}, function(mydb) {
+          db = mydb;
+          db.executeSql("CREATE TABLE item (id integer primary key)", [], function() {
+            db.getStats(function(stats0) {
+              expect(stats0.statementCache.maxSize).toBe(8);
+
+              select(3, function() {
+                db.getStats(function(stats1) {
+                  expect(stats1.statementCache.misses - stats0.statementCache.misses).toBe(1);
+                  expect(stats1.statementCache.hits - stats0.statementCache.hits).toBe(2);
+                  expect(stats1.statementCache.size).not.toBeLessThan(1);
+
+                  db.executeSql("CREATE INDEX item_id ON item (id)", [], function() {
+                    db.getStats(function(stats2) {
+                      expect(stats2.statementCache.size).toBe(0);
+
+                      // (prepared again)
+                      select(1, function() {
+                        db.getStats(function(stats3) {
+                          expect(stats3.statementCache.misses - stats2.statementCache.misses).toBe(1);
+                          expect(stats3.statementCache.hits - stats2.statementCache.hits).toBe(0);
+                          db.close(done, done);
+                        }, fail);
+                      });
+                    }, fail);
+                  }, fail);
+                }, fail);
+              });
+            }, fail);
+          }, fail);
+        }, function(e) {
+          ok(false, 'open error: ' + e.message);
+          done();
+        });
+      }, MYTIMEOUT);
+
+    });
+  };
+});
+
 /* vim: set expandtab : */
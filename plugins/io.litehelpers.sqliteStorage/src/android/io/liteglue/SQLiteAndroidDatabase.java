@@ -21,10 +21,14 @@ import android.util.Log;
 import java.io.File;
 import java.lang.IllegalArgumentException;
 import java.lang.Number;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -51,6 +55,46 @@ class SQLiteAndroidDatabase
 
     SQLiteDatabase mydb;
 
+    /**
+     * Send SELECT results in columnar format (see SQLiteColumnarResult).
+     */
+    boolean columnarResults = false;
+
+    /**
+     * Cache of SELECT results (optional, shared with the plugin execute thread).
+     */
+    SQLiteResultCache resultCache = null;
+
+    /**
+     * Runtime statistics (optional, shared with the plugin execute thread).
+     */
+    SQLiteStats stats = null;
+
+    /**
+     * Log of slow statements (optional, shared with the plugin execute thread).
+     */
+    SQLiteSlowQueryLog slowQueryLog = null;
+
+    /**
+     * Queue wait of the current batch (for the slow query log).
+     */
+    long queueWaitNanos = 0;
+
+    /**
+     * Slow statements of the last batch, waiting for explainSlowQueries().
+     */
+    final ArrayList<SQLiteSlowQueryLog.Pending> slowQueries = new ArrayList<SQLiteSlowQueryLog.Pending>();
+
+    /**
+     * Timeout or cancel of the current batch (set in the thread that runs it, if any).
+     */
+    SQLiteInterrupt interrupt = null;
+
+    /**
+     * Batch results (JSON text), reused for each batch.
+     */
+    final SQLiteJsonWriter jsonResults = new SQLiteJsonWriter();
+
     /**
      * NOTE: Using default constructor, no explicit constructor.
      */
@@ -75,6 +119,94 @@ class SQLiteAndroidDatabase
         }
     }
 
+    /**
+     * @return true if a transaction is open (in the current thread)
+     */
+    boolean inTransaction() {
+        return mydb != null && mydb.inTransaction();
+    }
+
+    /**
+     * Execute a PRAGMA statement (in the current thread).
+     *
+     * @param pragma   The PRAGMA statement
+     * @return the first column of the first result row, or null if none
+     */
+    String execPragma(String pragma) throws Exception {
+        Cursor cur = mydb.rawQuery(pragma, null);
+        try {
+            if (cur.moveToFirst() && !cur.isNull(0))
+                return cur.getString(0);
+            return null;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Execute a query (in the current thread) and get all of the result rows.
+     *
+     * @param query        The query string
+     * @param paramsAsJson JSON query parameters
+     * @return an array of rows, each an array of values (Long, Double, String, or null)
+     */
+    JSONArray queryRows(String query, JSONArray paramsAsJson) throws Exception {
+        if (mydb == null)
+            throw new IllegalStateException("database has been closed");
+
+        String[] params = new String[paramsAsJson.length()];
+
+        for (int j = 0; j < paramsAsJson.length(); j++) {
+            if (paramsAsJson.isNull(j))
+                params[j] = "";
+            else
+                params[j] = paramsAsJson.getString(j);
+        }
+
+        JSONArray rows = new JSONArray();
+        Cursor cur = mydb.rawQuery(query, params);
+        try {
+            int colCount = cur.getColumnCount();
+            while (cur.moveToNext()) {
+                JSONArray row = new JSONArray();
+                for (int i = 0; i < colCount; ++i) {
+                    Object value = getColumnValue(cur, i);
+                    row.put(value == null ? JSONObject.NULL : value);
+                }
+                rows.put(row);
+            }
+        } finally {
+            cur.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Atomic batch (set in the db thread): stop a batch at the first failed statement,
+     * and keep its index and error message (batchErrorIndex is -1 if none failed).
+     */
+    boolean stopOnError = false;
+    int batchErrorIndex = -1;
+    String batchErrorMessage = null;
+
+    /**
+     * Start a (possibly nested) transaction in the current thread.
+     */
+    void beginTransactionNow() throws Exception {
+        mydb.beginTransaction();
+    }
+
+    /**
+     * End the transaction started by beginTransactionNow().
+     *
+     * @param commit   Commit (true) or roll back (false) the changes
+     */
+    void endTransactionNow(boolean commit) throws Exception {
+        if (commit)
+            mydb.setTransactionSuccessful();
+        mydb.endTransaction();
+    }
+
     void bugWorkaround() throws Exception {
         this.closeDatabaseNow();
         this.open(dbFile);
@@ -102,7 +234,14 @@ class SQLiteAndroidDatabase
         String query = "";
         String query_id = "";
         int len = queryarr.length;
-        JSONArray batchResults = new JSONArray();
+        SQLiteJsonWriter out = jsonResults.reset();
+        out.beginArray();
+
+        QueryType resultType = QueryType.other;
+        long resultTypeRows = -1;
+
+        // NOTE: a running statement cannot be interrupted here, only the next ones are skipped.
+        if (interrupt != null) interrupt.start(null);
 
         for (int i = 0; i < len; i++) {
             int rowsAffectedCompat = 0;
@@ -111,14 +250,29 @@ class SQLiteAndroidDatabase
 
             JSONObject queryResult = null;
             String errorMessage = "unknown";
+            long rowCount = 0;
+            long cacheGeneration = -1;
+
+            long start = System.nanoTime();
+            QueryType queryType = getQueryType(queryarr[i]);
+
+            // (the rows, if any, are written before the other members of the query result)
+            int resultStart = out.size();
+            out.beginObject();
+            out.name("qid").value(query_id);
+            out.name("type").value("success");
+            out.name("result");
+            int queryResultStart = out.size();
+            out.beginObject();
 
             try {
+                if (interrupt != null && interrupt.isInterrupted())
+                    throw new IllegalStateException("interrupted");
+
                 boolean needRawQuery = true;
 
                 query = queryarr[i];
 
-                QueryType queryType = getQueryType(query);
-
                 if (queryType == QueryType.update || queryType == queryType.delete) {
                     if (android.os.Build.VERSION.SDK_INT >= 11) {
                         SQLiteStatement myStatement = mydb.compileStatement(query);
@@ -230,8 +384,12 @@ class SQLiteAndroidDatabase
 
                 // raw query for other statements:
                 if (needRawQuery) {
-                    queryResult = this.executeSqlStatementQuery(mydb, query, jsonparams[i], cbc);
+                    if (resultCache != null && queryType == QueryType.select)
+                        cacheGeneration = resultCache.getGeneration();
 
+                    rowCount = this.executeSqlStatementQuery(mydb, query, jsonparams[i], out);
+
+                    queryResult = new JSONObject();
                     if (needRowsAffectedCompat) {
                         queryResult.put("rowsAffected", rowsAffectedCompat);
                     }
@@ -242,34 +400,314 @@ class SQLiteAndroidDatabase
                 Log.v("executeSqlBatch", "SQLiteAndroidDatabase.executeSql[Batch](): Error=" + errorMessage);
             }
 
-            try {
-                if (queryResult != null) {
-                    JSONObject r = new JSONObject();
-                    r.put("qid", query_id);
+            boolean interrupted = queryResult == null && interrupt != null && interrupt.isInterrupted();
+            if (interrupted)
+                errorMessage = interrupt.getMessage();
 
-                    r.put("type", "success");
-                    r.put("result", queryResult);
+            long elapsed = System.nanoTime() - start;
 
-                    batchResults.put(r);
-                } else {
-                    JSONObject r = new JSONObject();
-                    r.put("qid", query_id);
-                    r.put("type", "error");
+            long rowsAffected = queryResult != null ? queryResult.optLong("rowsAffected", 0) : 0;
 
-                    JSONObject er = new JSONObject();
-                    er.put("message", errorMessage);
-                    r.put("result", er);
+            if (stats != null) {
+                stats.recordStatement(queryType, elapsed, queryResult == null, rowCount, rowsAffected);
 
-                    batchResults.put(r);
+                if (rowCount > resultTypeRows) {
+                    resultType = queryType;
+                    resultTypeRows = rowCount;
                 }
-            } catch (JSONException ex) {
-                ex.printStackTrace();
-                Log.v("executeSqlBatch", "SQLiteAndroidDatabase.executeSql[Batch](): Error=" + ex.getMessage());
-                // TODO what to do?
+            }
+
+            if (slowQueryLog != null && elapsed >= slowQueryLog.thresholdNanos)
+                slowQueryLog.add(queryarr[i], jsonparams[i], elapsed, queueWaitNanos, rowCount, rowsAffected,
+                    queryResult == null ? errorMessage : null, slowQueries);
+
+            if (queryResult != null) {
+                Iterator<?> keys = queryResult.keys();
+                while (keys.hasNext()) {
+                    String key = (String)keys.next();
+                    out.name(key).value(queryResult.opt(key));
+                }
+                out.endObject();
+
+                if (cacheGeneration >= 0)
+                    resultCache.put(query, jsonparams[i], out.substring(queryResultStart), cacheGeneration);
+
+                out.endObject();
+            } else {
+                // drop the partial result and report the error instead:
+                out.truncate(resultStart);
+                writeError(out, query_id, errorMessage, interrupted);
+            }
+
+            if (queryResult == null && stopOnError) {
+                batchErrorIndex = i;
+                batchErrorMessage = errorMessage;
+                break;
+            }
+        }
+
+        out.endArray();
+
+        if (interrupt != null) interrupt.finish();
+
+        sendBatchResults(cbc, out, resultType);
+    }
+
+    /**
+     * Add the query plans to the slow statements of the last batch
+     * (to be called after the batch result is sent).
+     */
+    void explainSlowQueries() {
+        if (slowQueryLog != null && !slowQueries.isEmpty())
+            slowQueryLog.explainPending(this, slowQueries);
+    }
+
+    /**
+     * Write the error result of a statement.
+     */
+    static void writeError(SQLiteJsonWriter out, String queryId, String errorMessage, boolean interrupted) {
+        out.beginObject();
+        out.name("qid").value(queryId);
+        out.name("type").value("error");
+        out.name("result").beginObject();
+        if (errorMessage != null)
+            out.name("message").value(errorMessage);
+        if (interrupted) {
+            out.name("code").value(SQLiteInterrupt.TIMEOUT_ERR);
+            out.name("interrupted").value(true);
+        }
+        out.endObject();
+        out.endObject();
+    }
+
+    /**
+     * Send the results of a batch (JSON text, sent as is), recording the serialization time and size.
+     *
+     * @param resultType   The statement type to count the bytes for
+     */
+    void sendBatchResults(CallbackContext cbc, SQLiteJsonWriter batchResults, QueryType resultType) {
+        if (stats == null) {
+            cbc.success(batchResults.toMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        PluginResult result = new PluginResult(PluginResult.Status.OK, batchResults.toMessage());
+        String message = result.getMessage();
+        stats.recordSerialization(resultType, System.nanoTime() - start, message != null ? message.length() : 0);
+
+        cbc.sendPluginResult(result);
+    }
+
+    /**
+     * Send binary batch results, recording the serialization time and size.
+     */
+    void sendBatchResults(CallbackContext cbc, byte[] batchResults, QueryType resultType) {
+        if (stats == null) {
+            cbc.success(batchResults);
+            return;
+        }
+
+        long start = System.nanoTime();
+        PluginResult result = new PluginResult(PluginResult.Status.OK, batchResults);
+        stats.recordSerialization(resultType, System.nanoTime() - start, batchResults.length);
+
+        cbc.sendPluginResult(result);
+    }
+
+    /**
+     * Executes a SELECT query and sends the rows via cbc in pages of pageSize rows,
+     * keeping the callback until a final "done" message (or an error) is sent.
+     *
+     * @param query        The query string
+     * @param paramsAsJson JSON query parameters
+     * @param pageSize     Maximum number of rows per page
+     * @param stopped      Set (from another thread) to stop after the current page
+     * @param cbc          Callback context from Cordova API
+     */
+    void executeSqlPaged(String query, JSONArray paramsAsJson, int pageSize,
+                         AtomicBoolean stopped, CallbackContext cbc) {
+        if (mydb == null) {
+            cbc.error("database has been closed");
+            return;
+        }
+
+        Cursor cur = null;
+        int pageCount = 0;
+        int rowCount = 0;
+
+        try {
+            String[] params = new String[paramsAsJson.length()];
+
+            for (int j = 0; j < paramsAsJson.length(); j++) {
+                if (paramsAsJson.isNull(j))
+                    params[j] = "";
+                else
+                    params[j] = paramsAsJson.getString(j);
+            }
+
+            cur = mydb.rawQuery(query, params);
+
+            if (cur != null && cur.moveToFirst()) {
+                int colCount = cur.getColumnCount();
+                JSONArray page = new JSONArray();
+
+                do {
+                    JSONObject row = new JSONObject();
+                    for (int i = 0; i < colCount; ++i)
+                        bindColumn(row, cur.getColumnName(i), cur, i);
+                    page.put(row);
+                    ++rowCount;
+
+                    if (page.length() >= pageSize) {
+                        sendPage(cbc, page, pageCount++);
+                        page = new JSONArray();
+                        if (stopped.get()) break;
+                    }
+                } while (cur.moveToNext());
+
+                if (page.length() > 0 && !stopped.get())
+                    sendPage(cbc, page, pageCount++);
+            }
+
+            sendPagedDone(cbc, pageCount, rowCount, stopped.get());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            Log.v("executeSqlPaged", "SQLiteAndroidDatabase.executeSqlPaged(): Error=" + ex.getMessage());
+            cbc.error(ex.getMessage());
+        } finally {
+            if (cur != null) {
+                cur.close();
             }
         }
+    }
 
-        cbc.success(batchResults);
+    /**
+     * Executes one statement for each row of parameters, in a single transaction,
+     * and sends the aggregate result via cbc:
+     *   { rowsAffected: n, rowCount: n, errors: [{index: i, message: "..."}, ...] }
+     *
+     * NOTE: a row that fails is reported in errors and does not stop the other rows.
+     *
+     * @param query      The query string
+     * @param paramRows  Array of JSON parameter arrays
+     * @param cbc        Callback context from Cordova API
+     */
+    void executeBulk(String query, JSONArray paramRows, CallbackContext cbc) {
+        JSONArray errors = new JSONArray();
+
+        try {
+            long rowsAffected = executeBulkRows(query, paramRows, 0, errors);
+            sendBulkResult(cbc, rowsAffected, paramRows.length(), errors);
+        } catch (Exception ex) {
+            Log.v("executeBulk", "SQLiteAndroidDatabase.executeBulk(): Error=" + ex.getMessage());
+            cbc.error(ex.getMessage());
+        }
+    }
+
+    /**
+     * Executes one statement for each row of parameters, in a single transaction
+     * (in the current thread).
+     *
+     * @param query      The query string
+     * @param paramRows  Array of JSON parameter arrays
+     * @param firstIndex Index of the first row (as reported in errors)
+     * @param errors     Receives {index, message} for each row that failed
+     * @return the total number of rows affected
+     * @throws Exception if the statement could not be prepared or the transaction failed
+     */
+    @SuppressLint("NewApi")
+    long executeBulkRows(String query, JSONArray paramRows, int firstIndex, JSONArray errors) throws Exception {
+        if (mydb == null)
+            throw new IllegalStateException("database has been closed");
+
+        boolean isInsert = getQueryType(query) == QueryType.insert;
+        long rowsAffected = 0;
+
+        SQLiteStatement myStatement = mydb.compileStatement(query);
+
+        try {
+            // NOTE: nested in the current transaction (if any) as needed by Android SQLiteDatabase:
+            mydb.beginTransaction();
+
+            try {
+                int len = paramRows.length();
+
+                for (int i = 0; i < len; ++i) {
+                    try {
+                        myStatement.clearBindings();
+                        bindArgsToStatement(myStatement, paramRows.getJSONArray(i));
+
+                        if (isInsert) {
+                            if (myStatement.executeInsert() != -1) ++rowsAffected;
+                        } else if (android.os.Build.VERSION.SDK_INT >= 11) {
+                            rowsAffected += myStatement.executeUpdateDelete();
+                        } else {
+                            myStatement.execute();
+                        }
+                    } catch (Exception ex) {
+                        Log.v("executeBulk", "SQLiteAndroidDatabase.executeBulkRows(): row " + (firstIndex + i) + " Error=" + ex.getMessage());
+                        putBulkError(errors, firstIndex + i, ex.getMessage());
+                    }
+                }
+
+                mydb.setTransactionSuccessful();
+            } finally {
+                mydb.endTransaction();
+            }
+        } finally {
+            myStatement.close();
+        }
+
+        return rowsAffected;
+    }
+
+    static void putBulkError(JSONArray errors, int index, String message) {
+        try {
+            JSONObject er = new JSONObject();
+            er.put("index", index);
+            er.put("message", message);
+            errors.put(er);
+        } catch (JSONException ignored) { }
+    }
+
+    /**
+     * Send the aggregate result of a bulk statement.
+     */
+    static void sendBulkResult(CallbackContext cbc, long rowsAffected, int rowCount, JSONArray errors) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("rowsAffected", rowsAffected);
+        r.put("rowCount", rowCount);
+        r.put("errors", errors);
+
+        cbc.success(r);
+    }
+
+    /**
+     * Send one page of rows, keeping the callback for the following pages.
+     */
+    static void sendPage(CallbackContext cbc, JSONArray rows, int pageNumber) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("type", "page");
+        r.put("page", pageNumber);
+        r.put("rows", rows);
+
+        PluginResult result = new PluginResult(PluginResult.Status.OK, r);
+        result.setKeepCallback(true);
+        cbc.sendPluginResult(result);
+    }
+
+    /**
+     * Send the final message of a paged query.
+     */
+    static void sendPagedDone(CallbackContext cbc, int pageCount, int rowCount, boolean stopped) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("type", "done");
+        r.put("pages", pageCount);
+        r.put("rowCount", rowCount);
+        r.put("stopped", stopped);
+
+        cbc.success(r);
     }
 
     private int countRowsAffectedCompat(QueryType queryType, String query, JSONArray[] jsonparams,
@@ -349,7 +787,10 @@ class SQLiteAndroidDatabase
 
     private void bindArgsToStatement(SQLiteStatement myStatement, JSONArray sqlArgs) throws JSONException {
         for (int i = 0; i < sqlArgs.length(); i++) {
-            if (sqlArgs.get(i) instanceof Float || sqlArgs.get(i) instanceof Double) {
+            byte[] blob = getBlobParam(sqlArgs.opt(i));
+            if (blob != null) {
+                myStatement.bindBlob(i + 1, blob);
+            } else if (sqlArgs.get(i) instanceof Float || sqlArgs.get(i) instanceof Double) {
                 myStatement.bindDouble(i + 1, sqlArgs.getDouble(i));
             } else if (sqlArgs.get(i) instanceof Number) {
                 myStatement.bindLong(i + 1, sqlArgs.getLong(i));
@@ -362,15 +803,15 @@ class SQLiteAndroidDatabase
     }
 
     /**
-     * Get rows results from query cursor.
+     * Execute a query and write its rows (if any) as members of the open query result object.
      *
-     * @param cur Cursor into query results
-     * @return results in string form
+     * @param out   The batch results
+     * @return the number of rows
      */
-    private JSONObject executeSqlStatementQuery(SQLiteDatabase mydb,
-                                                String query, JSONArray paramsAsJson,
-                                                CallbackContext cbc) throws Exception {
-        JSONObject rowsResult = new JSONObject();
+    private long executeSqlStatementQuery(SQLiteDatabase mydb,
+                                          String query, JSONArray paramsAsJson,
+                                          SQLiteJsonWriter out) throws Exception {
+        long rowCount = 0;
 
         Cursor cur = null;
         try {
@@ -394,77 +835,116 @@ class SQLiteAndroidDatabase
         }
 
         // If query result has rows
-        if (cur != null && cur.moveToFirst()) {
-            JSONArray rowsArrayResult = new JSONArray();
-            String key = "";
+        if (columnarResults && cur != null && cur.moveToFirst()) {
             int colCount = cur.getColumnCount();
+            SQLiteColumnarResult columnar = new SQLiteColumnarResult(cur.getColumnNames());
 
-            // Build up JSON result object for each row
             do {
-                JSONObject row = new JSONObject();
-                try {
-                    for (int i = 0; i < colCount; ++i) {
-                        key = cur.getColumnName(i);
+                for (int i = 0; i < colCount; ++i)
+                    columnar.put(i, getColumnValue(cur, i));
+                columnar.endRow();
+            } while (cur.moveToNext());
 
-                        if (android.os.Build.VERSION.SDK_INT >= 11) {
+            columnar.writeTo(out);
+            rowCount = columnar.getRowCount();
+        } else if (cur != null && cur.moveToFirst()) {
+            int colCount = cur.getColumnCount();
 
-                            // Use try & catch just in case android.os.Build.VERSION.SDK_INT >= 11 is lying:
-                            try {
-                                bindPostHoneycomb(row, key, cur, i);
-                            } catch (Exception ex) {
-                                bindPreHoneycomb(row, key, cur, i);
-                            }
-                        } else {
-                            bindPreHoneycomb(row, key, cur, i);
-                        }
-                    }
+            // (column names encoded once, for all rows)
+            char[][] names = new char[colCount][];
+            for (int i = 0; i < colCount; ++i)
+                names[i] = SQLiteJsonWriter.encodeName(cur.getColumnName(i));
 
-                    rowsArrayResult.put(row);
+            out.name("rows").beginArray();
 
-                } catch (JSONException e) {
-                    e.printStackTrace();
+            do {
+                out.beginObject();
+                for (int i = 0; i < colCount; ++i) {
+                    out.name(names[i]);
+                    writeColumn(out, cur, i);
                 }
+                out.endObject();
+                ++rowCount;
             } while (cur.moveToNext());
 
-            try {
-                rowsResult.put("rows", rowsArrayResult);
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
+            out.endArray();
         }
 
         if (cur != null) {
             cur.close();
         }
 
-        return rowsResult;
+        return rowCount;
     }
 
-    @SuppressLint("NewApi")
-    private void bindPostHoneycomb(JSONObject row, String key, Cursor cur, int i) throws JSONException {
-        int curType = cur.getType(i);
+    private void bindColumn(JSONObject row, String key, Cursor cur, int i) throws JSONException {
+        Object value = getColumnValue(cur, i);
+        row.put(key, value == null ? JSONObject.NULL : value);
+    }
 
-        switch (curType) {
+    /**
+     * Write the value in column i of the current row (like getColumnValue, without boxing).
+     */
+    private void writeColumn(SQLiteJsonWriter out, Cursor cur, int i) {
+        switch (getColumnType(cur, i)) {
             case Cursor.FIELD_TYPE_NULL:
-                row.put(key, JSONObject.NULL);
+                out.nullValue();
                 break;
             case Cursor.FIELD_TYPE_INTEGER:
-                row.put(key, cur.getLong(i));
+                out.value(cur.getLong(i));
                 break;
             case Cursor.FIELD_TYPE_FLOAT:
-                row.put(key, cur.getDouble(i));
+                out.value(cur.getDouble(i));
                 break;
             case Cursor.FIELD_TYPE_BLOB:
-                row.put(key, new String(Base64.encode(cur.getBlob(i), Base64.DEFAULT)));
+                out.value(new String(Base64.encode(cur.getBlob(i), Base64.DEFAULT)));
                 break;
             case Cursor.FIELD_TYPE_STRING:
             default: /* (not expected) */
-                row.put(key, cur.getString(i));
-                break;
+                out.value(cur.getString(i));
         }
     }
 
-    private void bindPreHoneycomb(JSONObject row, String key, Cursor cursor, int i) throws JSONException {
+    /**
+     * @return the value in column i of the current row: Long, Double, String
+     *         (BLOB in Base64), or null
+     */
+    private Object getColumnValue(Cursor cur, int i) {
+        switch (getColumnType(cur, i)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cur.getLong(i);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cur.getDouble(i);
+            case Cursor.FIELD_TYPE_BLOB:
+                return new String(Base64.encode(cur.getBlob(i), Base64.DEFAULT));
+            case Cursor.FIELD_TYPE_STRING:
+            default: /* (not expected) */
+                return cur.getString(i);
+        }
+    }
+
+    /**
+     * @return the type of column i of the current row (Cursor.FIELD_TYPE_*)
+     */
+    @SuppressLint("NewApi")
+    private int getColumnType(Cursor cur, int i) {
+        if (android.os.Build.VERSION.SDK_INT >= 11) {
+
+            // Use try & catch just in case android.os.Build.VERSION.SDK_INT >= 11 is lying:
+            try {
+                return cur.getType(i);
+            } catch (Exception ex) {
+                return getTypePreHoneycomb(cur, i);
+            }
+        } else {
+            return getTypePreHoneycomb(cur, i);
+        }
+    }
+
+    @SuppressLint("NewApi") /* (the FIELD_TYPE_* constants are inlined) */
+    private int getTypePreHoneycomb(Cursor cursor, int i) {
         // Since cursor.getType() is not available pre-honeycomb, this is
         // a workaround so we don't have to bind everything as a string
         // Details here: http://stackoverflow.com/q/11658239
@@ -472,18 +952,27 @@ class SQLiteAndroidDatabase
         CursorWindow cursorWindow = sqLiteCursor.getWindow();
         int pos = cursor.getPosition();
         if (cursorWindow.isNull(pos, i)) {
-            row.put(key, JSONObject.NULL);
+            return Cursor.FIELD_TYPE_NULL;
         } else if (cursorWindow.isLong(pos, i)) {
-            row.put(key, cursor.getLong(i));
+            return Cursor.FIELD_TYPE_INTEGER;
         } else if (cursorWindow.isFloat(pos, i)) {
-            row.put(key, cursor.getDouble(i));
+            return Cursor.FIELD_TYPE_FLOAT;
         } else if (cursorWindow.isBlob(pos, i)) {
-            row.put(key, new String(Base64.encode(cursor.getBlob(i), Base64.DEFAULT)));
+            return Cursor.FIELD_TYPE_BLOB;
         } else { // string
-            row.put(key, cursor.getString(i));
+            return Cursor.FIELD_TYPE_STRING;
         }
     }
 
+    /**
+     * @return the bytes of a BLOB parameter ({blob: "<base64>"}, such as an ArrayBuffer
+     *         from Javascript), or null if it is not a BLOB parameter
+     */
+    static byte[] getBlobParam(Object p) {
+        if (!(p instanceof JSONObject) || !((JSONObject)p).has("blob")) return null;
+        return Base64.decode(((JSONObject)p).optString("blob"), Base64.DEFAULT);
+    }
+
     static QueryType getQueryType(String query) {
         Matcher matcher = FIRST_WORD.matcher(query);
         if (matcher.find()) {
@@ -496,6 +985,14 @@ class SQLiteAndroidDatabase
         return QueryType.other;
     }
 
+    /**
+     * Check if a query may change the database schema (CREATE, DROP, ALTER).
+     */
+    static boolean isSchemaChange(String query) {
+        QueryType queryType = getQueryType(query);
+        return queryType == QueryType.create || queryType == QueryType.drop || queryType == QueryType.alter;
+    }
+
     static enum QueryType {
         update,
         insert,
@@ -504,6 +1001,9 @@ class SQLiteAndroidDatabase
         begin,
         commit,
         rollback,
+        create,
+        drop,
+        alter,
         other
     }
 } /* vim: set expandtab : */
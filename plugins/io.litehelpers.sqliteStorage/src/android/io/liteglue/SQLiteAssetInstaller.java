@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.content.res.AssetManager;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Installs (or upgrades) a database file from a pre-populated database in the assets,
+ * in the db thread before the database is opened. The first asset found is used:
+ * www/<name>.gz (gzip), www/<name>.zip (the entry named <name>, or the first file),
+ * or www/<name>; if a compressed asset cannot be read (or verified), the next one is tried.
+ *
+ * The asset is copied (or decompressed) with a large buffer into a temp file, verified,
+ * and renamed into place. An optional manifest (www/<name>.manifest.json) gives the
+ * expected content (of the uncompressed database):
+ *
+ *   { "version": 3, "sha256": "<hex>", "size": n, "keepTables": ["favorito", ...] }
+ *
+ * The installed version and SHA-256 are kept next to the database (<name>-asset.json).
+ * When the manifest version (or hash) changes, the database is replaced by the new
+ * asset, keeping the user tables of the old database: the tables that are not in the
+ * asset (except virtual tables and their shadow tables), and the keepTables.
+ *
+ * Report (for the open callback):
+ *   { installed: true, upgraded: true/false, source: "www/<name>.gz", version: v, sha256: "<hex>",
+ *     bytes: n, copyMs: t, totalMs: t, keptTables: [...] }
+ *
+ * Progress messages (if a callback is given, kept):
+ *   { type: "progress", bytes: n, totalBytes: n (or -1 if unknown) }
+ */
+class SQLiteAssetInstaller
+{
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // bytes between progress messages:
+    private static final long PROGRESS_BYTES = 4 * 1024 * 1024;
+
+    // compressed assets first:
+    private static final String[] SUFFIXES = { ".gz", ".zip", "" };
+
+    private final AssetManager assets;
+    private final String name;
+    private final String assetPath;
+    private final File dbfile;
+    private final CallbackContext progressCbc;
+
+    /**
+     * @param name          The database (and asset) file name
+     * @param progressCbc   Callback for progress messages (or null)
+     */
+    SQLiteAssetInstaller(AssetManager assets, String name, File dbfile, CallbackContext progressCbc) {
+        this.assets = assets;
+        this.name = name;
+        this.assetPath = "www/" + name;
+        this.dbfile = dbfile;
+        this.progressCbc = progressCbc;
+    }
+
+    /**
+     * Install or upgrade the database file (if needed).
+     *
+     * @return the report, or null if nothing was installed
+     */
+    JSONObject install() throws Exception {
+        long start = System.nanoTime();
+
+        JSONObject manifest = readJSON(assetPath + ".manifest.json");
+        File installedFile = new File(dbfile.getPath() + "-asset.json");
+        JSONObject installed = null;
+        try {
+            if (installedFile.exists()) installed = readJSON(new FileInputStream(installedFile));
+        } catch (Exception e) {
+            Log.v("createFromAssets", "ignoring invalid " + installedFile + ": " + e.getMessage());
+        }
+
+        boolean upgrade = dbfile.exists();
+        if (upgrade && (manifest == null || isCurrent(manifest, installed)))
+            return null;
+
+        File tmp = new File(dbfile.getPath() + ".tmp");
+        dbfile.getParentFile().mkdirs();
+
+        try {
+            String source = null;
+            long bytes = 0;
+            String sha256 = null;
+            long copyStart = System.nanoTime();
+            IOException lastError = null;
+
+            for (String suffix : SUFFIXES) {
+                long[] totalBytes = { manifest != null ? manifest.optLong("size", -1) : -1 };
+                InputStream in = openAsset(assetPath + suffix, totalBytes);
+                if (in == null) continue;
+
+                try {
+                    MessageDigest md = MessageDigest.getInstance("SHA-256");
+                    copyStart = System.nanoTime();
+                    bytes = copy(in, tmp, md, totalBytes[0]);
+                    sha256 = toHex(md.digest());
+
+                    if (manifest != null && manifest.has("size") && manifest.getLong("size") != bytes)
+                        throw new IOException("size mismatch: " + bytes + " bytes, expected " + manifest.getLong("size"));
+                    if (manifest != null && manifest.has("sha256") && !manifest.getString("sha256").equalsIgnoreCase(sha256))
+                        throw new IOException("checksum mismatch: " + sha256);
+
+                    source = assetPath + suffix;
+                    break;
+                } catch (IOException e) {
+                    Log.w("createFromAssets", "couldn't use " + assetPath + suffix, e);
+                    lastError = e;
+                }
+            }
+
+            if (source == null) {
+                if (lastError != null) throw lastError;
+                Log.v("createFromAssets", "No prepopulated DB found: " + assetPath);
+                return null;
+            }
+
+            long copyNanos = System.nanoTime() - copyStart;
+
+            JSONArray keptTables = new JSONArray();
+            if (upgrade)
+                keptTables = copyUserTables(dbfile, tmp, manifest.optJSONArray("keepTables"));
+
+            // (old journal files must not be applied to the new database)
+            for (String suffix : new String[] { "-journal", "-wal", "-shm" })
+                new File(dbfile.getPath() + suffix).delete();
+
+            if (!tmp.renameTo(dbfile))
+                throw new IOException("couldn't rename " + tmp + " to " + dbfile);
+
+            JSONObject record = new JSONObject();
+            if (manifest != null && manifest.has("version"))
+                record.put("version", manifest.get("version"));
+            record.put("sha256", sha256);
+            record.put("installedAt", System.currentTimeMillis());
+            writeJSON(installedFile, record);
+
+            JSONObject report = new JSONObject();
+            report.put("installed", true);
+            report.put("upgraded", upgrade);
+            report.put("source", source);
+            if (record.has("version"))
+                report.put("version", record.get("version"));
+            report.put("sha256", sha256);
+            report.put("bytes", bytes);
+            report.put("copyMs", copyNanos / 1e6);
+            report.put("totalMs", (System.nanoTime() - start) / 1e6);
+            report.put("keptTables", keptTables);
+
+            Log.v("info", "Copied prepopulated DB content to: " + dbfile.getAbsolutePath() + " " + report);
+            return report;
+        } catch (Exception e) {
+            tmp.delete();
+            if (!upgrade) throw e;
+
+            // (keep using the old database)
+            Log.e("createFromAssets", "couldn't upgrade the prepopulated DB", e);
+            JSONObject report = new JSONObject();
+            report.put("installed", false);
+            report.put("error", e.getMessage());
+            return report;
+        }
+    }
+
+    /**
+     * @return true if the installed database matches the manifest version (or hash)
+     */
+    private static boolean isCurrent(JSONObject manifest, JSONObject installed) {
+        if (manifest.has("version"))
+            return installed != null && manifest.optString("version").equals(installed.optString("version", null));
+        if (manifest.has("sha256"))
+            return installed != null && manifest.optString("sha256").equalsIgnoreCase(installed.optString("sha256", ""));
+        return true;
+    }
+
+    /**
+     * Open an asset (decompressing a .gz or .zip asset).
+     *
+     * @param totalBytes   [0] is set to the uncompressed size, if known (and not already set)
+     * @return the (uncompressed) stream, or null if there is no such asset
+     */
+    private InputStream openAsset(String path, long[] totalBytes) throws IOException {
+        InputStream in;
+        try {
+            in = assets.open(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        if (path.endsWith(".gz"))
+            return new GZIPInputStream(in, BUFFER_SIZE);
+
+        if (path.endsWith(".zip")) {
+            // the entry named <name>, or the first file:
+            ZipInputStream zin = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            ZipEntry e;
+            while ((e = zin.getNextEntry()) != null) {
+                if (!e.isDirectory() && new File(e.getName()).getName().equals(name)) break;
+            }
+
+            if (e == null) {
+                zin.close();
+                zin = new ZipInputStream(new BufferedInputStream(assets.open(path), BUFFER_SIZE));
+                while ((e = zin.getNextEntry()) != null && e.isDirectory()) { }
+                if (e == null) {
+                    zin.close();
+                    throw new IOException("no file in " + path);
+                }
+            }
+
+            if (totalBytes[0] < 0) totalBytes[0] = e.getSize();
+            return zin;
+        }
+
+        // (the length of an asset)
+        if (totalBytes[0] < 0) totalBytes[0] = in.available();
+        return in;
+    }
+
+    /**
+     * Copy a stream into a file (and sync it), updating the digest.
+     *
+     * @param totalBytes   For the progress messages (or -1 if unknown)
+     * @return the number of bytes
+     */
+    private long copy(InputStream in, File file, MessageDigest md, long totalBytes) throws IOException {
+        FileOutputStream out = null;
+        long bytes = 0;
+        long nextProgress = PROGRESS_BYTES;
+
+        try {
+            out = new FileOutputStream(file);
+
+            byte[] buf = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                md.update(buf, 0, len);
+                out.write(buf, 0, len);
+                bytes += len;
+
+                if (bytes >= nextProgress) {
+                    sendProgress(bytes, totalBytes);
+                    nextProgress = bytes + PROGRESS_BYTES;
+                }
+            }
+
+            out.getFD().sync();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) { }
+
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) { }
+            }
+        }
+
+        return bytes;
+    }
+
+    private void sendProgress(long bytes, long totalBytes) {
+        if (progressCbc == null) return;
+
+        try {
+            JSONObject r = new JSONObject();
+            r.put("type", "progress");
+            r.put("bytes", bytes);
+            r.put("totalBytes", totalBytes);
+
+            PluginResult result = new PluginResult(PluginResult.Status.OK, r);
+            result.setKeepCallback(true);
+            progressCbc.sendPluginResult(result);
+        } catch (JSONException ignored) { }
+    }
+
+    /**
+     * Copy the user tables of the old database into the new one (in one transaction).
+     *
+     * @param keepTables   Tables of the asset whose rows are replaced by the rows of the old database
+     * @return the names of the copied tables
+     */
+    private static JSONArray copyUserTables(File from, File to, JSONArray keepTables) throws JSONException {
+        HashSet<String> keep = new HashSet<String>();
+        if (keepTables != null) {
+            for (int i = 0; i < keepTables.length(); ++i)
+                keep.add(keepTables.getString(i));
+        }
+
+        JSONArray kept = new JSONArray();
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(to.getPath(), null,
+            SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+
+        try {
+            db.execSQL("ATTACH DATABASE ? AS old", new Object[] { from.getPath() });
+
+            HashSet<String> newTables = new HashSet<String>();
+            Cursor c = db.rawQuery("SELECT name FROM main.sqlite_master WHERE type = 'table'", null);
+            while (c.moveToNext())
+                newTables.add(c.getString(0));
+            c.close();
+
+            ArrayList<String> names = new ArrayList<String>();
+            ArrayList<String> sqls = new ArrayList<String>();
+            ArrayList<String> virtualTables = new ArrayList<String>();
+            c = db.rawQuery("SELECT name, sql FROM old.sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%'", null);
+            while (c.moveToNext()) {
+                String sql = c.getString(1);
+                if (sql != null && sql.toUpperCase(Locale.US).startsWith("CREATE VIRTUAL TABLE")) {
+                    virtualTables.add(c.getString(0));
+                } else {
+                    names.add(c.getString(0));
+                    sqls.add(sql);
+                }
+            }
+            c.close();
+
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < names.size(); ++i) {
+                    String name = names.get(i);
+                    if (name.equals("android_metadata") || isShadowTable(name, virtualTables)) continue;
+
+                    if (!newTables.contains(name)) {
+                        db.execSQL(sqls.get(i));
+                        db.execSQL("INSERT INTO main." + quote(name) + " SELECT * FROM old." + quote(name));
+
+                        Cursor ic = db.rawQuery("SELECT sql FROM old.sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL",
+                            new String[] { name });
+                        while (ic.moveToNext())
+                            db.execSQL(ic.getString(0));
+                        ic.close();
+
+                        kept.put(name);
+                    } else if (keep.contains(name)) {
+                        String columns = getCommonColumns(db, name);
+                        db.execSQL("DELETE FROM main." + quote(name));
+                        db.execSQL("INSERT INTO main." + quote(name) + " (" + columns + ") SELECT " + columns + " FROM old." + quote(name));
+
+                        kept.put(name);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            db.execSQL("DETACH DATABASE old");
+        } finally {
+            db.close();
+        }
+
+        return kept;
+    }
+
+    private static boolean isShadowTable(String name, ArrayList<String> virtualTables) {
+        for (String vt : virtualTables) {
+            if (name.startsWith(vt + "_")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the (quoted) columns of a table in both the old and the new database
+     */
+    private static String getCommonColumns(SQLiteDatabase db, String table) {
+        HashSet<String> oldColumns = new HashSet<String>();
+        Cursor c = db.rawQuery("PRAGMA old.table_info(" + quote(table) + ")", null);
+        while (c.moveToNext())
+            oldColumns.add(c.getString(1));
+        c.close();
+
+        StringBuilder columns = new StringBuilder();
+        c = db.rawQuery("PRAGMA main.table_info(" + quote(table) + ")", null);
+        while (c.moveToNext()) {
+            String column = c.getString(1);
+            if (!oldColumns.contains(column)) continue;
+            if (columns.length() > 0) columns.append(',');
+            columns.append(quote(column));
+        }
+        c.close();
+
+        return columns.toString();
+    }
+
+    private static String quote(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    private JSONObject readJSON(String path) throws IOException, JSONException {
+        InputStream in;
+        try {
+            in = assets.open(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        return readJSON(in);
+    }
+
+    private static JSONObject readJSON(InputStream in) throws IOException, JSONException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = in.read(buf)) > 0)
+                out.write(buf, 0, len);
+            return new JSONObject(out.toString("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeJSON(File file, JSONObject o) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(o.toString().getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+} /* vim: set expandtab : */
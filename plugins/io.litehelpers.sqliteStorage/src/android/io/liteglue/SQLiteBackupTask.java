@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.util.Log;
+
+import com.almworks.sqlite4java.SQLiteBackup;
+import com.almworks.sqlite4java.SQLiteBusyException;
+import com.almworks.sqlite4java.SQLiteConnection;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Online backup of the live database into a file, or restore of the live database
+ * from a (backup) file, with the SQLite online backup API (sqlite4java only).
+ *
+ * A backup copies pagesPerStep pages per step in the db thread and is queued again
+ * after each step, so the queued batches run between the steps. No step is run while
+ * a transaction is open (it would copy the uncommitted changes): the backup waits for
+ * the end of the transaction. Changes committed during the backup are copied as well.
+ * The backup is written to <file>.tmp and renamed when complete, so a previous backup
+ * is kept until then.
+ *
+ * A restore runs all of its steps in one go: the destination connection keeps an
+ * exclusive lock on the database from the first step to the last, so the queued
+ * batches could not run between the steps anyway.
+ *
+ * Messages sent via the (kept) callback:
+ *   { type: "progress", pageCount: n, remaining: n }
+ *   { type: "done", pageCount: n, steps: n, ms: t, file: "/absolute/path" }
+ */
+class SQLiteBackupTask implements SQLiteTask.Incremental
+{
+    static final int DEFAULT_PAGES_PER_STEP = 100;
+
+    // restore only: wait for the reader connections (if any)
+    private static final long BUSY_TIMEOUT_MS = 5000;
+
+    private final File file;
+    private final File dbfile;
+    private final boolean restore;
+    private final int pagesPerStep;
+
+    // backup state, between the steps:
+    private SQLiteBackup backup = null;
+    private File tmp = null;
+    private int steps = 0;
+    private long startTime = 0;
+    private boolean done = false;
+
+    /**
+     * @param file           The backup file
+     * @param dbfile         The database file
+     * @param restore        Restore the database from the file (instead of a backup into the file)
+     * @param pagesPerStep   Number of pages copied per step
+     */
+    SQLiteBackupTask(File file, File dbfile, boolean restore, int pagesPerStep) {
+        this.file = file;
+        this.dbfile = dbfile;
+        this.restore = restore;
+        this.pagesPerStep = pagesPerStep > 0 ? pagesPerStep : DEFAULT_PAGES_PER_STEP;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+        try {
+            if (!(mydb instanceof SQLitePlugin.SQLiteDatabaseNDK)) {
+                done = true;
+                cbc.error((restore ? "restore" : "backup") + " is not supported by androidDatabaseImplementation: 2");
+                return;
+            }
+
+            if (restore) {
+                restoreNow(mydb, cbc);
+                return;
+            }
+
+            // (queued again after the end of the transaction)
+            if (mydb.inTransaction()) return;
+
+            if (backup == null) {
+                startTime = System.nanoTime();
+                tmp = new File(file.getPath() + ".tmp");
+                tmp.delete();
+                if (file.getParentFile() != null) file.getParentFile().mkdirs();
+                backup = ((SQLitePlugin.SQLiteDatabaseNDK)mydb).mydb.initializeBackup(tmp);
+            }
+
+            ++steps;
+            // (NOTE: an SQLiteBusyException is not expected here: only this connection writes)
+            if (!backup.backupStep(pagesPerStep)) {
+                sendProgress(cbc, backup.getPageCount(), backup.getRemaining());
+                return;
+            }
+
+            int pageCount = backup.getPageCount();
+            backup.dispose();
+            backup = null;
+
+            if (!tmp.renameTo(file))
+                throw new IOException("couldn't rename " + tmp + " to " + file);
+
+            done = true;
+            sendDone(cbc, pageCount);
+        } catch (Exception ex) {
+            Log.v("backup", "SQLiteBackupTask.run(): Error after " + steps + " steps: " + ex.getMessage());
+            if (backup != null) backup.dispose();
+            backup = null;
+            if (tmp != null) tmp.delete();
+            done = true;
+            cbc.error((restore ? "restore" : "backup") + " failed: " + ex.getMessage());
+        }
+    }
+
+    private void restoreNow(SQLiteAndroidDatabase mydb, CallbackContext cbc) throws Exception {
+        done = true;
+
+        if (!file.canRead())
+            throw new IOException("can't read " + file);
+        if (mydb.inTransaction())
+            throw new IllegalStateException("a transaction is open");
+
+        startTime = System.nanoTime();
+        long deadline = startTime + BUSY_TIMEOUT_MS * 1000000L;
+
+        SQLiteConnection src = new SQLiteConnection(file);
+        try {
+            src.openReadonly();
+            backup = src.initializeBackup(dbfile);
+
+            for (;;) {
+                boolean finished;
+                try {
+                    finished = backup.backupStep(pagesPerStep);
+                } catch (SQLiteBusyException e) {
+                    // (a reader connection)
+                    if (System.nanoTime() - deadline > 0) throw e;
+                    Thread.sleep(10);
+                    continue;
+                }
+
+                ++steps;
+                if (finished) break;
+                sendProgress(cbc, backup.getPageCount(), backup.getRemaining());
+            }
+
+            int pageCount = backup.getPageCount();
+            backup.dispose();
+            backup = null;
+
+            sendDone(cbc, pageCount);
+        } finally {
+            src.dispose();
+        }
+    }
+
+    private static void sendProgress(CallbackContext cbc, int pageCount, int remaining) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("type", "progress");
+        r.put("pageCount", pageCount);
+        r.put("remaining", remaining);
+
+        PluginResult result = new PluginResult(PluginResult.Status.OK, r);
+        result.setKeepCallback(true);
+        cbc.sendPluginResult(result);
+    }
+
+    private void sendDone(CallbackContext cbc, int pageCount) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("type", "done");
+        r.put("pageCount", pageCount);
+        r.put("steps", steps);
+        r.put("ms", (System.nanoTime() - startTime) / 1000000L);
+        r.put("file", file.getAbsolutePath());
+        cbc.success(r);
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Compact binary encoding of batch results, sent to Javascript as an ArrayBuffer
+ * (decoded by www/SQLitePlugin.js).
+ *
+ * All numbers are big-endian, strings are a uint32 byte length followed by UTF-8 bytes.
+ *
+ *   batch   := uint32 resultCount, result*
+ *   result  := string qid, uint8 kind (0 = success, 1 = error, 2 = interrupted), success | error
+ *   error   := string message
+ *   success := uint32 columnCount, string* columnNames, row*, uint8 0 (end of rows),
+ *              float64 rowsAffected, uint8 hasInsertId, [float64 insertId]
+ *   row     := uint8 1, value*columnCount
+ *   value   := uint8 type (0 = null, 1 = integer, 2 = float, 3 = text, 4 = blob), payload
+ *              integer: int64, float: float64, text: string, blob: uint32 length, bytes
+ */
+class SQLiteBinaryResult
+{
+    static final int KIND_SUCCESS = 0;
+    static final int KIND_ERROR = 1;
+    static final int KIND_INTERRUPTED = 2;
+
+    static final int TYPE_NULL = 0;
+    static final int TYPE_INTEGER = 1;
+    static final int TYPE_FLOAT = 2;
+    static final int TYPE_TEXT = 3;
+    static final int TYPE_BLOB = 4;
+
+    private byte[] buf;
+    private int count = 0;
+
+    SQLiteBinaryResult(int initialCapacity) {
+        buf = new byte[initialCapacity];
+    }
+
+    /**
+     * @return current size, to be used with truncate() to drop a partial result
+     */
+    int size() {
+        return count;
+    }
+
+    void truncate(int size) {
+        count = size;
+    }
+
+    /**
+     * Overwrite a uint32 value written earlier (such as the result count).
+     */
+    void setInt(int pos, int v) {
+        buf[pos] = (byte)(v >>> 24);
+        buf[pos + 1] = (byte)(v >>> 16);
+        buf[pos + 2] = (byte)(v >>> 8);
+        buf[pos + 3] = (byte)v;
+    }
+
+    void writeByte(int v) {
+        ensureCapacity(1);
+        buf[count++] = (byte)v;
+    }
+
+    void writeInt(int v) {
+        ensureCapacity(4);
+        setInt(count, v);
+        count += 4;
+    }
+
+    void writeLong(long v) {
+        writeInt((int)(v >>> 32));
+        writeInt((int)v);
+    }
+
+    void writeDouble(double v) {
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    void writeString(String s) {
+        byte[] b;
+        try {
+            b = s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            // (not expected, UTF-8 is always supported)
+            throw new RuntimeException(ex);
+        }
+        writeInt(b.length);
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buf, count, b.length);
+        count += b.length;
+    }
+
+    void writeNull() {
+        writeByte(TYPE_NULL);
+    }
+
+    void writeInteger(long v) {
+        writeByte(TYPE_INTEGER);
+        writeLong(v);
+    }
+
+    void writeFloat(double v) {
+        writeByte(TYPE_FLOAT);
+        writeDouble(v);
+    }
+
+    void writeText(String s) {
+        writeByte(TYPE_TEXT);
+        writeString(s);
+    }
+
+    void writeBlob(byte[] b) {
+        writeByte(TYPE_BLOB);
+        writeInt(b.length);
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buf, count, b.length);
+        count += b.length;
+    }
+
+    byte[] toByteArray() {
+        byte[] result = new byte[count];
+        System.arraycopy(buf, 0, result, 0, count);
+        return result;
+    }
+
+    private void ensureCapacity(int n) {
+        if (count + n > buf.length) {
+            int newCapacity = Math.max(buf.length * 2, count + n);
+            byte[] newBuf = new byte[newCapacity];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.util.Log;
+
+import com.almworks.sqlite4java.SQLiteBlob;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CallbackContext;
+
+import org.json.JSONObject;
+
+/**
+ * Incremental BLOB I/O (sqlite4java SQLiteBlob), so a large value can be read
+ * and written in chunks: blobOpen gives a handle to the value of one column
+ * of one row, used by blobRead / blobWrite until blobClose.
+ *
+ * The handles belong to the db thread connection (SQLiteDatabaseNDK.openBlobs),
+ * so these tasks always run in the db thread. A blob cannot grow: to write a new
+ * value in chunks, first insert (or update) it with zeroblob(size).
+ *
+ * Results:
+ *   blobOpen:  { handle: h, size: n }
+ *   blobRead:  ArrayBuffer (up to length bytes from offset)
+ *   blobWrite: { bytes: n }
+ *   blobClose: { handle: h }
+ */
+class SQLiteBlobIO
+{
+    /**
+     * Maximum number of bytes per blobRead.
+     */
+    static final int MAX_READ = 1024 * 1024;
+
+    private static final AtomicInteger nextHandle = new AtomicInteger(1);
+
+    /**
+     * @return the open blobs of the (sqlite4java) connection
+     */
+    private static HashMap<Integer, SQLiteBlob> getOpenBlobs(SQLiteAndroidDatabase mydb) {
+        if (!(mydb instanceof SQLitePlugin.SQLiteDatabaseNDK))
+            throw new UnsupportedOperationException("blob I/O is not supported by androidDatabaseImplementation: 2");
+        return ((SQLitePlugin.SQLiteDatabaseNDK)mydb).openBlobs;
+    }
+
+    private static SQLiteBlob getBlob(SQLiteAndroidDatabase mydb, int handle) {
+        SQLiteBlob blob = getOpenBlobs(mydb).get(handle);
+        if (blob == null || blob.isDisposed())
+            throw new IllegalStateException("blob handle not open: " + handle);
+        return blob;
+    }
+
+    static class Open implements SQLiteTask {
+        private final String database;
+        private final String table;
+        private final String column;
+        private final long rowid;
+        private final boolean writable;
+
+        /**
+         * @param database   The database name ("main", or an attached database)
+         * @param writable   Open for blobWrite
+         */
+        Open(String database, String table, String column, long rowid, boolean writable) {
+            this.database = database;
+            this.table = table;
+            this.column = column;
+            this.rowid = rowid;
+            this.writable = writable;
+        }
+
+        public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+            try {
+                HashMap<Integer, SQLiteBlob> openBlobs = getOpenBlobs(mydb);
+                SQLiteBlob blob = ((SQLitePlugin.SQLiteDatabaseNDK)mydb).mydb.blob(database, table, column, rowid, writable);
+
+                int handle = nextHandle.getAndIncrement();
+                openBlobs.put(handle, blob);
+
+                JSONObject r = new JSONObject();
+                r.put("handle", handle);
+                r.put("size", blob.getSize());
+                cbc.success(r);
+            } catch (Exception ex) {
+                Log.v("blobOpen", "SQLiteBlobIO.Open: Error=" + ex.getMessage());
+                cbc.error("blobOpen failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    static class Read implements SQLiteTask {
+        private final int handle;
+        private final int offset;
+        private final int length;
+
+        /**
+         * @param length   Number of bytes (up to MAX_READ), or -1 for the rest of the blob
+         */
+        Read(int handle, int offset, int length) {
+            this.handle = handle;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+            try {
+                SQLiteBlob blob = getBlob(mydb, handle);
+
+                int size = blob.getSize();
+                if (offset < 0 || offset > size)
+                    throw new IllegalArgumentException("offset out of range: " + offset);
+
+                int n = size - offset;
+                if (length >= 0 && length < n) n = length;
+                if (n > MAX_READ) n = MAX_READ;
+
+                byte[] buf = new byte[n];
+                if (n > 0) blob.read(offset, buf, 0, n);
+
+                // (sent as an ArrayBuffer)
+                cbc.success(buf);
+            } catch (Exception ex) {
+                Log.v("blobRead", "SQLiteBlobIO.Read: Error=" + ex.getMessage());
+                cbc.error("blobRead failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    static class Write implements SQLiteTask {
+        private final int handle;
+        private final int offset;
+        private final byte[] data;
+
+        Write(int handle, int offset, byte[] data) {
+            this.handle = handle;
+            this.offset = offset;
+            this.data = data;
+        }
+
+        public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+            try {
+                SQLiteBlob blob = getBlob(mydb, handle);
+
+                if (offset < 0 || offset + data.length > blob.getSize())
+                    throw new IllegalArgumentException("write out of range (a blob cannot grow): " +
+                        offset + " + " + data.length + " bytes, size " + blob.getSize());
+
+                blob.write(offset, data, 0, data.length);
+
+                JSONObject r = new JSONObject();
+                r.put("bytes", data.length);
+                cbc.success(r);
+            } catch (Exception ex) {
+                Log.v("blobWrite", "SQLiteBlobIO.Write: Error=" + ex.getMessage());
+                cbc.error("blobWrite failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    static class Close implements SQLiteTask {
+        private final int handle;
+
+        Close(int handle) {
+            this.handle = handle;
+        }
+
+        public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+            try {
+                SQLiteBlob blob = getOpenBlobs(mydb).remove(handle);
+                if (blob != null) blob.dispose();
+
+                JSONObject r = new JSONObject();
+                r.put("handle", handle);
+                cbc.success(r);
+            } catch (Exception ex) {
+                Log.v("blobClose", "SQLiteBlobIO.Close: Error=" + ex.getMessage());
+                cbc.error("blobClose failed: " + ex.getMessage());
+            }
+        }
+    }
+} /* vim: set expandtab : */
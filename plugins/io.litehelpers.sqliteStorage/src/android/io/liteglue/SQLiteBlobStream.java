@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.net.Uri;
+import android.util.Base64;
+
+import com.almworks.sqlite4java.SQLiteBlob;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Stream of one BLOB value, for a blob URL loaded by the WebView (such as an <img> src):
+ *
+ *   file:///sqlite-blob/<dbname>/<table>/<column>/<rowid>[?type=<content type>][&v=<version>]
+ *
+ * (a file: URL, so it is allowed like the app's own files), remapped by
+ * SQLitePlugin.remapUri and opened by SQLitePlugin.handleOpenForRead.
+ *
+ * Since any content of the WebView can load such a URL, only the table and column pairs
+ * of the blobUrls open option can be read (see getColumns), and only BLOB values.
+ * The content type is application/octet-stream unless given by the URL (never sniffed,
+ * since a value such as an SVG image could run scripts).
+ *
+ * The value is read in chunks of CHUNK_SIZE bytes, each by a task queued in the
+ * interactive lane of the db thread (where the connection belongs), while the
+ * WebView reads the stream in its own thread. With sqlite4java, each chunk is read
+ * with incremental BLOB I/O (SQLiteBlob); otherwise with substr().
+ *
+ * NOTE: the first chunk is read by open(), in the thread that opens the URL.
+ */
+class SQLiteBlobStream extends InputStream
+{
+    static final String PATH_PREFIX = "sqlite-blob";
+
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    // maximum wait for a chunk from the db thread:
+    private static final long TIMEOUT_MS = 10000;
+
+    /**
+     * Queues a task in the interactive lane of the db thread of the database.
+     */
+    interface Runner {
+        void queue(SQLiteTask task, CallbackContext cbc) throws Exception;
+    }
+
+    private final String table;
+    private final String column;
+    private final long rowid;
+    private final Runner runner;
+
+    private int size = -1;
+    private long offset = 0;
+    private byte[] chunk = null;
+    private int chunkPos = 0;
+
+    /**
+     * @return true if the URL is a blob URL (file:///sqlite-blob/...)
+     */
+    static boolean isBlobUri(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        return "file".equals(uri.getScheme()) && segments.size() == 5 && PATH_PREFIX.equals(segments.get(0));
+    }
+
+    /**
+     * @return the database name of a blob URL (see isBlobUri)
+     */
+    static String getDbName(Uri uri) {
+        return uri.getPathSegments().get(1);
+    }
+
+    /**
+     * @return the table and column of a blob URL (see isBlobUri), as a key of getColumns()
+     */
+    static String getColumn(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        return columnKey(segments.get(2), segments.get(3));
+    }
+
+    /**
+     * @param blobUrls   The blobUrls open option: [{table: "...", column: "..."}, ...]
+     * @return the table and column pairs that may be read with blob URLs (see getColumn)
+     */
+    static HashSet<String> getColumns(JSONArray blobUrls) throws JSONException {
+        HashSet<String> columns = new HashSet<String>();
+        for (int i = 0; i < blobUrls.length(); ++i) {
+            JSONObject c = blobUrls.getJSONObject(i);
+            columns.add(columnKey(c.getString("table"), c.getString("column")));
+        }
+        return columns;
+    }
+
+    private static String columnKey(String table, String column) {
+        return table + '\u0000' + column;
+    }
+
+    /**
+     * @param uri      A blob URL (see isBlobUri)
+     * @param runner   For the database of the URL
+     */
+    SQLiteBlobStream(Uri uri, Runner runner) {
+        List<String> segments = uri.getPathSegments();
+        this.table = segments.get(2);
+        this.column = segments.get(3);
+        this.rowid = Long.parseLong(segments.get(4));
+        this.runner = runner;
+    }
+
+    /**
+     * Read the first chunk (and the size).
+     *
+     * @throws FileNotFoundException if there is no such value
+     */
+    void open() throws IOException {
+        fetch();
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+
+        if (chunkPos >= chunk.length) {
+            if (offset >= size) return -1;
+            fetch();
+        }
+
+        int n = Math.min(len, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, buf, off, n);
+        chunkPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk != null ? chunk.length - chunkPos : 0;
+    }
+
+    /**
+     * Read the next chunk in the db thread (and wait for it).
+     */
+    private void fetch() throws IOException {
+        ChunkTask task = new ChunkTask(offset);
+        Done done = new Done();
+
+        try {
+            runner.queue(task, done);
+            if (!done.latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                throw new IOException("timeout reading " + table + "." + column + " " + rowid);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.toString());
+        }
+
+        if (task.data == null)
+            throw new FileNotFoundException(table + "." + column + " " + rowid + ": " + task.error);
+
+        size = task.blobSize;
+        chunk = task.data;
+        chunkPos = 0;
+        offset += chunk.length;
+    }
+
+    /**
+     * Read one chunk (in the db thread).
+     */
+    private class ChunkTask implements SQLiteTask {
+        final long start;
+
+        // results:
+        byte[] data = null;
+        int blobSize = 0;
+        String error = null;
+
+        ChunkTask(long start) {
+            this.start = start;
+        }
+
+        public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+            SQLiteBlob blob = null;
+
+            try {
+                if (mydb instanceof SQLitePlugin.SQLiteDatabaseNDK) {
+                    blob = ((SQLitePlugin.SQLiteDatabaseNDK)mydb).mydb.blob("main", table, column, rowid, false);
+                    blobSize = blob.getSize();
+
+                    byte[] b = new byte[(int)Math.max(0, Math.min(CHUNK_SIZE, blobSize - start))];
+                    if (b.length > 0) blob.read((int)start, b, 0, b.length);
+                    data = b;
+                } else {
+                    JSONArray params = new JSONArray();
+                    params.put(start + 1);
+                    params.put(CHUNK_SIZE);
+                    params.put(rowid);
+
+                    JSONArray rows = mydb.queryRows("SELECT length(" + quote(column) + "), substr(" +
+                        quote(column) + ",?,?), typeof(" + quote(column) + ") FROM " + quote(table) + " WHERE rowid=?", params);
+                    if (rows.length() == 0)
+                        throw new IllegalArgumentException("no such row");
+                    // (like SQLiteBlob, which can't read other values)
+                    if (!"blob".equals(rows.getJSONArray(0).optString(2)))
+                        throw new IllegalArgumentException("not a BLOB value");
+
+                    // (the BLOB in Base64)
+                    blobSize = rows.getJSONArray(0).optInt(0, 0);
+                    data = Base64.decode(rows.getJSONArray(0).optString(1, ""), Base64.DEFAULT);
+                }
+
+                cbc.success();
+            } catch (Exception ex) {
+                error = ex.getMessage();
+                cbc.error(error != null ? error : "unknown");
+            } finally {
+                if (blob != null) blob.dispose();
+            }
+        }
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Callback that only signals that the task is done (or failed, such as if the database could not be reopened).
+     */
+    private static class Done extends CallbackContext {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Done() {
+            // (never sends anything to the webview)
+            super("SQLiteBlobStream", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            latch.countDown();
+        }
+    }
+} /* vim: set expandtab : */
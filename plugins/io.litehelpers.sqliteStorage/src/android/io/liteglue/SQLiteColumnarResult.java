@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Builds a columnar query result: the column names once, then one array of
+ * values per column. String columns with few distinct values are
+ * dictionary-encoded (the column array then holds indexes into its dictionary).
+ *
+ * Result format:
+ *   { columns: [name, ...], rowCount: n, values: [[...], ...], dicts: [[...] or null, ...] }
+ */
+class SQLiteColumnarResult
+{
+    /**
+     * Dictionary-encode a string column if there are at most this many
+     * distinct values for every 2 rows.
+     */
+    private static final int MAX_DISTINCT_PER_2_ROWS = 1;
+
+    private final String[] columns;
+    private final ArrayList<Object>[] values;
+    private int rowCount = 0;
+
+    @SuppressWarnings("unchecked")
+    SQLiteColumnarResult(String[] columns) {
+        this.columns = columns;
+        this.values = (ArrayList<Object>[]) new ArrayList<?>[columns.length];
+        for (int i = 0; i < columns.length; ++i)
+            values[i] = new ArrayList<Object>();
+    }
+
+    /**
+     * Add a value to the current row.
+     *
+     * @param i     Column index
+     * @param value Long, Double, String, or null
+     */
+    void put(int i, Object value) {
+        values[i].add(value);
+    }
+
+    /**
+     * End the current row.
+     */
+    void endRow() {
+        ++rowCount;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Write the columnar rows result as members of the open query result object.
+     */
+    void writeTo(SQLiteJsonWriter out) {
+        out.name("columns").beginArray();
+        for (String column : columns)
+            out.value(column);
+        out.endArray();
+
+        out.name("rowCount").value(rowCount);
+
+        LinkedHashMap<String, Integer>[] dicts = buildDictionaries();
+
+        out.name("values").beginArray();
+        for (int i = 0; i < columns.length; ++i) {
+            out.beginArray();
+            if (dicts[i] == null) {
+                for (Object v : values[i])
+                    out.value(v);
+            } else {
+                for (Object v : values[i])
+                    out.value(v == null ? null : dicts[i].get(v));
+            }
+            out.endArray();
+        }
+        out.endArray();
+
+        out.name("dicts").beginArray();
+        for (int i = 0; i < columns.length; ++i) {
+            if (dicts[i] == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (String v : dicts[i].keySet())
+                    out.value(v);
+                out.endArray();
+            }
+        }
+        out.endArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, Integer>[] buildDictionaries() {
+        LinkedHashMap<String, Integer>[] dicts = (LinkedHashMap<String, Integer>[]) new LinkedHashMap<?, ?>[columns.length];
+        for (int i = 0; i < columns.length; ++i)
+            dicts[i] = buildDictionary(values[i]);
+        return dicts;
+    }
+
+    /**
+     * @return the distinct values (with their indexes, in order) of a string column
+     *         worth dictionary-encoding, or null if the column should be sent as is.
+     */
+    private LinkedHashMap<String, Integer> buildDictionary(ArrayList<Object> column) {
+        int maxDistinct = (rowCount * MAX_DISTINCT_PER_2_ROWS) / 2;
+        if (maxDistinct < 1) return null;
+
+        LinkedHashMap<String, Integer> dict = new LinkedHashMap<String, Integer>();
+
+        for (Object v : column) {
+            if (v == null) continue;
+            if (!(v instanceof String)) return null;
+
+            if (!dict.containsKey(v)) {
+                dict.put((String)v, dict.size());
+                if (dict.size() > maxDistinct) return null;
+            }
+        }
+
+        return dict.isEmpty() ? null : dict;
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Small fixed set of database threads, shared by all open databases
+ * (instead of one Cordova pool thread per database).
+ *
+ * Each database is assigned to one thread (the one with the fewest databases)
+ * until it is closed, which keeps the work of a database in order and each
+ * sqlite4java connection in the thread that opened it (as required by sqlite4java).
+ *
+ * NOTE: only used by the plugin execute thread and the db threads.
+ */
+class SQLiteDbExecutor
+{
+    static final int THREADS = 2;
+
+    private static final ScheduledThreadPoolExecutor[] workers = new ScheduledThreadPoolExecutor[THREADS];
+
+    // number of databases assigned to each thread:
+    private static final int[] assigned = new int[THREADS];
+
+    /**
+     * @return the (single-thread) executor for a new database
+     */
+    static synchronized ScheduledThreadPoolExecutor acquire() {
+        int best = 0;
+        for (int i = 1; i < THREADS; ++i) {
+            if (assigned[i] < assigned[best]) best = i;
+        }
+
+        if (workers[best] == null) {
+            final String name = "SQLitePlugin-db-" + best;
+            workers[best] = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, name);
+                }
+            });
+        }
+
+        ++assigned[best];
+        return workers[best];
+    }
+
+    /**
+     * To be called when a database is closed (or could not be opened).
+     */
+    static synchronized void release(ScheduledThreadPoolExecutor worker) {
+        for (int i = 0; i < THREADS; ++i) {
+            if (workers[i] == worker && assigned[i] > 0) --assigned[i];
+        }
+    }
+} /* vim: set expandtab : */
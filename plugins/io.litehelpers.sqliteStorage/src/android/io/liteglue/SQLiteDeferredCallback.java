@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.ArrayList;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+/**
+ * Callback that keeps the results sent to it, to be sent to the real
+ * callback later (such as after a group commit) or discarded.
+ *
+ * NOTE: only used in the db thread.
+ */
+class SQLiteDeferredCallback extends CallbackContext
+{
+    private final CallbackContext target;
+    private final ArrayList<PluginResult> results = new ArrayList<PluginResult>();
+
+    SQLiteDeferredCallback(CallbackContext target) {
+        // (never sends anything to the webview itself)
+        super(target.getCallbackId(), null);
+        this.target = target;
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        results.add(pluginResult);
+    }
+
+    /**
+     * Send the kept results to the real callback.
+     */
+    void replay() {
+        for (PluginResult r : results)
+            target.sendPluginResult(r);
+        results.clear();
+    }
+} /* vim: set expandtab : */
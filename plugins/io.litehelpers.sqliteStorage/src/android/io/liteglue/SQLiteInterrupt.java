@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.util.Log;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Interruption of a batch: after timeoutMs of execution (timeoutMs batch option, or
+ * queryTimeoutMs open option), or by a cancel request with its queryId (batch option).
+ *
+ * With sqlite4java, the running statement is stopped with SQLiteConnection.interrupt()
+ * (the only connection method that may be called from another thread); otherwise
+ * (androidDatabaseImplementation: 2), only the statements not yet started are skipped.
+ * A batch cancelled while queued is not run at all.
+ *
+ * The default timeout (queryTimeoutMs) does not interrupt a write statement in a
+ * transaction (see holdTimeout()).
+ *
+ * Each interrupted (or skipped) statement fails with:
+ *   { message: "interrupted (timeout|cancelled)", code: 7 (SQLError.TIMEOUT_ERR), interrupted: true }
+ *
+ * NOTE: start() and finish() are called by the thread that runs the batch,
+ * cancel() by the plugin execute thread, and the timeout by the (shared) timer thread.
+ */
+class SQLiteInterrupt
+{
+    static final int TIMEOUT_ERR = 7;
+
+    // shared timer thread (started by the first timeout):
+    private static ScheduledThreadPoolExecutor timer = null;
+
+    final String queryId;
+    final long timeoutMs;
+    final boolean defaultTimeout;
+
+    // connection running the batch (null if none, or not sqlite4java):
+    private SQLiteConnection connection = null;
+    private ScheduledFuture<?> timeout = null;
+    private boolean running = false;
+
+    // default timeout only: held for the running statement, and expired while held:
+    private boolean held = false;
+    private boolean expired = false;
+
+    private volatile String reason = null;
+
+    /**
+     * @param queryId     For cancel (or null)
+     * @param timeoutMs   Maximum execution time (0 = none)
+     * @param defaultTimeout   The timeout is the queryTimeoutMs open option (not a batch option)
+     */
+    SQLiteInterrupt(String queryId, long timeoutMs, boolean defaultTimeout) {
+        this.queryId = queryId;
+        this.timeoutMs = timeoutMs;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    boolean isInterrupted() {
+        return reason != null;
+    }
+
+    /**
+     * Start of the batch (in the thread that runs it).
+     *
+     * @param connection   The sqlite4java connection, or null
+     */
+    synchronized void start(SQLiteConnection connection) {
+        if (reason != null) return;
+
+        this.connection = connection;
+        this.running = true;
+
+        if (timeoutMs > 0) {
+            timeout = getTimer().schedule(new Runnable() {
+                public void run() {
+                    timeout();
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * End of the batch (in the thread that runs it): the connection may not be interrupted after this.
+     */
+    synchronized void finish() {
+        running = false;
+        connection = null;
+
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+    /**
+     * Hold the default timeout for the next statement (in the thread that runs the batch),
+     * such as a write in a transaction: an interrupted INSERT, UPDATE or DELETE rolls back the
+     * whole transaction, and the next statements of the Javascript transaction would run
+     * without it. If the timeout expires while held, the first statement run without the
+     * hold fails (without being started), with the following ones.
+     *
+     * To be called before the isInterrupted() check of each statement.
+     */
+    synchronized void holdTimeout(boolean hold) {
+        if (!defaultTimeout) return;
+
+        held = hold;
+        if (!held && expired && reason == null) reason = "timeout";
+    }
+
+    private synchronized void timeout() {
+        if (held) {
+            expired = true;
+            return;
+        }
+        interrupt("timeout");
+    }
+
+    /**
+     * Cancel the batch (queued or running).
+     */
+    void cancel() {
+        interrupt("cancelled");
+    }
+
+    private synchronized void interrupt(String why) {
+        if (reason != null) return;
+        reason = why;
+
+        if (running && connection != null) {
+            try {
+                connection.interrupt();
+            } catch (Exception e) {
+                Log.v("interrupt", "SQLiteInterrupt.interrupt(): Error=" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the error message of an interrupted statement
+     */
+    String getMessage() {
+        return "interrupted (" + reason + ")";
+    }
+
+    /**
+     * Mark the error result of an interrupted statement.
+     */
+    void putTo(JSONObject er) throws JSONException {
+        er.put("message", getMessage());
+        er.put("code", TIMEOUT_ERR);
+        er.put("interrupted", true);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SQLitePlugin-timeout");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return timer;
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streaming import of a JSON file into a table, in the db thread.
+ *
+ * The file is either a JSON array of objects or NDJSON (one object per line),
+ * read with a pull parser (JsonReader) so only one record and one chunk of
+ * parameter rows are kept in memory at a time. Each chunk is inserted in its
+ * own transaction (see SQLiteAndroidDatabase.executeBulkRows), one chunk per step:
+ * the task is queued again after each chunk, so the other work of the database
+ * (and of the other databases of its db thread) runs in between.
+ *
+ * The column mapping is either an array of column names (same field names)
+ * or an object of {column: "field"}, where the field may be a dotted path
+ * into nested objects and arrays, such as "categoria.0.categoria_id".
+ *
+ * Messages sent via the (kept) callback:
+ *   { type: "progress", rows: n, bytesRead: n, totalBytes: n }
+ *   { type: "done", rows: n, rowsAffected: n, errors: [{index: i, message: "..."}, ...] }
+ */
+class SQLiteJsonImporter implements SQLiteTask.Incremental
+{
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * Maximum number of row errors reported (to keep memory flat for a bad feed).
+     */
+    static final int MAX_ERRORS = 100;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File file;
+    private final String query;
+    private final String[] fields;
+    private final int chunkSize;
+
+    // import state, between the steps:
+    private CountingInputStream in = null;
+    private JsonReader reader = null;
+    private boolean isArray = false;
+    private int rowCount = 0;
+    private long rowsAffected = 0;
+    private final JSONArray errors = new JSONArray();
+    private boolean done = false;
+
+    /**
+     * @param file       The JSON or NDJSON file
+     * @param table      The target table
+     * @param columns    JSONArray of column names or JSONObject of {column: field}
+     * @param chunkSize  Number of rows per transaction
+     * @param replace    Use INSERT OR REPLACE
+     */
+    SQLiteJsonImporter(File file, String table, Object columns, int chunkSize, boolean replace) throws JSONException {
+        this.file = file;
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+
+        String[] names;
+        if (columns instanceof JSONArray) {
+            JSONArray a = (JSONArray)columns;
+            names = new String[a.length()];
+            fields = new String[a.length()];
+            for (int i = 0; i < names.length; ++i)
+                names[i] = fields[i] = a.getString(i);
+        } else if (columns instanceof JSONObject) {
+            JSONObject o = (JSONObject)columns;
+            names = new String[o.length()];
+            fields = new String[o.length()];
+            Iterator<?> keys = o.keys();
+            for (int i = 0; keys.hasNext(); ++i) {
+                names[i] = (String)keys.next();
+                fields[i] = o.getString(names[i]);
+            }
+        } else {
+            throw new IllegalArgumentException("invalid columns: " + columns);
+        }
+
+        if (names.length == 0)
+            throw new IllegalArgumentException("no columns");
+
+        StringBuilder sql = new StringBuilder(replace ? "INSERT OR REPLACE INTO " : "INSERT INTO ");
+        sql.append(quoteName(table)).append(" (");
+        for (int i = 0; i < names.length; ++i)
+            sql.append(i == 0 ? "" : ",").append(quoteName(names[i]));
+        sql.append(") VALUES (");
+        for (int i = 0; i < names.length; ++i)
+            sql.append(i == 0 ? "?" : ",?");
+        sql.append(")");
+        this.query = sql.toString();
+    }
+
+    private static String quoteName(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Import the next chunk of the file (in the db thread), and send a progress
+     * or the done message via cbc.
+     */
+    @Override
+    public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+        try {
+            if (reader == null) {
+                in = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+                reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+                // NOTE: lenient mode accepts multiple top-level values (NDJSON):
+                reader.setLenient(true);
+
+                isArray = reader.peek() == JsonToken.BEGIN_ARRAY;
+                if (isArray) reader.beginArray();
+            }
+
+            JSONArray chunk = new JSONArray();
+            while (chunk.length() < chunkSize && hasNext())
+                chunk.put(toParams(readValue(reader)));
+
+            if (chunk.length() > 0) {
+                rowsAffected += insertChunk(mydb, chunk, rowCount, errors);
+                rowCount += chunk.length();
+            }
+
+            if (hasNext()) {
+                sendProgress(cbc, rowCount, in.count, file.length());
+                return;
+            }
+
+            done = true;
+            close();
+
+            JSONObject r = new JSONObject();
+            r.put("type", "done");
+            r.put("rows", rowCount);
+            r.put("rowsAffected", rowsAffected);
+            r.put("errors", errors);
+            cbc.success(r);
+        } catch (Exception ex) {
+            Log.v("importFile", "SQLiteJsonImporter.run(): Error after " + rowCount + " rows: " + ex.getMessage());
+            done = true;
+            close();
+            cbc.error("import failed after " + rowCount + " rows: " + ex.getMessage());
+        }
+    }
+
+    private boolean hasNext() throws IOException {
+        return isArray ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT;
+    }
+
+    private void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) { }
+            in = null;
+        }
+    }
+
+    private long insertChunk(SQLiteAndroidDatabase mydb, JSONArray chunk, int firstIndex, JSONArray errors) throws Exception {
+        JSONArray chunkErrors = new JSONArray();
+        long rowsAffected = mydb.executeBulkRows(query, chunk, firstIndex, chunkErrors);
+
+        for (int i = 0; i < chunkErrors.length() && errors.length() < MAX_ERRORS; ++i)
+            errors.put(chunkErrors.get(i));
+
+        return rowsAffected;
+    }
+
+    private static void sendProgress(CallbackContext cbc, int rowCount, long bytesRead, long totalBytes) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("type", "progress");
+        r.put("rows", rowCount);
+        r.put("bytesRead", bytesRead);
+        r.put("totalBytes", totalBytes);
+
+        PluginResult result = new PluginResult(PluginResult.Status.OK, r);
+        result.setKeepCallback(true);
+        cbc.sendPluginResult(result);
+    }
+
+    /**
+     * @return the parameters (in column order) for one record
+     */
+    private JSONArray toParams(Object record) throws JSONException {
+        JSONArray params = new JSONArray();
+
+        for (String field : fields) {
+            Object v = getField(record, field);
+
+            if (v == null)
+                params.put(JSONObject.NULL);
+            else if (v instanceof Boolean)
+                params.put(((Boolean)v).booleanValue() ? 1 : 0);
+            else if (v instanceof JSONObject || v instanceof JSONArray)
+                params.put(v.toString());
+            else
+                params.put(v);
+        }
+
+        return params;
+    }
+
+    private static Object getField(Object record, String field) throws JSONException {
+        Object v = record;
+
+        if (record instanceof JSONObject && ((JSONObject)record).has(field))
+            return ((JSONObject)record).opt(field);
+
+        for (String name : field.split("\\.")) {
+            if (v instanceof JSONObject) {
+                v = ((JSONObject)v).opt(name);
+            } else if (v instanceof JSONArray) {
+                try {
+                    v = ((JSONArray)v).opt(Integer.parseInt(name));
+                } catch (NumberFormatException ex) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+
+        return v == JSONObject.NULL ? null : v;
+    }
+
+    /**
+     * Read one value (such as one record) from the stream.
+     */
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject o = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext())
+                    o.put(reader.nextName(), readValue(reader));
+                reader.endObject();
+                return o;
+
+            case BEGIN_ARRAY:
+                JSONArray a = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext())
+                    a.put(readValue(reader));
+                reader.endArray();
+                return a;
+
+            case NUMBER:
+                String n = reader.nextString();
+                try {
+                    return Long.valueOf(n);
+                } catch (NumberFormatException ex) {
+                    return Double.valueOf(n);
+                }
+
+            case BOOLEAN:
+                return reader.nextBoolean();
+
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Counts the bytes read, for progress messages.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) ++count;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+} /* vim: set expandtab : */
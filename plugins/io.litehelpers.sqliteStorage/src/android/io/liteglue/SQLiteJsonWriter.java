@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Writes batch results as JSON text into a growable char buffer, without building
+ * JSONObject/JSONArray trees: each row is appended as it is stepped, integers and
+ * floats are written without boxing, and strings are escaped once.
+ *
+ * The text is sent with toMessage(), which Cordova's PluginResult takes as a JSON
+ * message (as is, since the JSONArray constructor only calls its toString()).
+ *
+ * A comma is written before a value or name unless it is the first one of its
+ * array or object (so the writer keeps no nesting state, and may be truncated
+ * to any earlier size, such as to drop a partial result).
+ *
+ * NOTE: reused for each batch by the thread of its database (see reset()).
+ */
+class SQLiteJsonWriter
+{
+    static final int INITIAL_CAPACITY = 8192;
+
+    /**
+     * reset() drops a larger buffer if the last result used less than a quarter of it,
+     * so that a large buffer is kept for a run of large results only.
+     */
+    static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private char[] buf;
+    private int count = 0;
+
+    SQLiteJsonWriter() {
+        buf = new char[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Start writing a new result (keeping the buffer, see MAX_RETAINED_CAPACITY).
+     */
+    SQLiteJsonWriter reset() {
+        if (buf.length > MAX_RETAINED_CAPACITY && count < buf.length / 4)
+            buf = new char[INITIAL_CAPACITY];
+        count = 0;
+        return this;
+    }
+
+    /**
+     * @return current size, to be used with truncate() to drop a partial result
+     */
+    int size() {
+        return count;
+    }
+
+    void truncate(int size) {
+        count = size;
+    }
+
+    SQLiteJsonWriter beginArray() {
+        separate();
+        append('[');
+        return this;
+    }
+
+    SQLiteJsonWriter endArray() {
+        append(']');
+        return this;
+    }
+
+    SQLiteJsonWriter beginObject() {
+        separate();
+        append('{');
+        return this;
+    }
+
+    SQLiteJsonWriter endObject() {
+        append('}');
+        return this;
+    }
+
+    /**
+     * Write the name of an object member (to be followed by its value).
+     */
+    SQLiteJsonWriter name(String name) {
+        separate();
+        string(name);
+        append(':');
+        return this;
+    }
+
+    /**
+     * Write the name of an object member, encoded once by encodeName() (such as a column name, for each row).
+     */
+    SQLiteJsonWriter name(char[] encodedName) {
+        separate();
+        ensureCapacity(encodedName.length);
+        System.arraycopy(encodedName, 0, buf, count, encodedName.length);
+        count += encodedName.length;
+        return this;
+    }
+
+    /**
+     * @return the name of an object member as JSON text (quoted and escaped, with the colon), for name(char[])
+     */
+    static char[] encodeName(String name) {
+        SQLiteJsonWriter w = new SQLiteJsonWriter();
+        w.string(name);
+        w.append(':');
+        char[] encoded = new char[w.count];
+        System.arraycopy(w.buf, 0, encoded, 0, w.count);
+        return encoded;
+    }
+
+    SQLiteJsonWriter nullValue() {
+        separate();
+        appendAscii("null");
+        return this;
+    }
+
+    SQLiteJsonWriter value(boolean v) {
+        separate();
+        appendAscii(v ? "true" : "false");
+        return this;
+    }
+
+    SQLiteJsonWriter value(long v) {
+        separate();
+        appendLong(v);
+        return this;
+    }
+
+    /**
+     * Write a float like org.json: without a fraction if it is integral, and null if it is not finite
+     * (not allowed in JSON).
+     */
+    SQLiteJsonWriter value(double v) {
+        separate();
+        if (Double.isNaN(v) || Double.isInfinite(v))
+            appendAscii("null");
+        else if (v == (long)v)
+            appendLong((long)v);
+        else
+            appendAscii(Double.toString(v));
+        return this;
+    }
+
+    SQLiteJsonWriter value(String v) {
+        separate();
+        if (v == null)
+            appendAscii("null");
+        else
+            string(v);
+        return this;
+    }
+
+    /**
+     * Write a value such as from a JSONArray: Long, Integer, Double, String, Boolean,
+     * null (or JSONObject.NULL), or a JSONObject or JSONArray (written with its toString()).
+     */
+    SQLiteJsonWriter value(Object v) {
+        if (v == null || v == JSONObject.NULL)
+            return nullValue();
+        if (v instanceof String)
+            return value((String)v);
+        if (v instanceof Float || v instanceof Double)
+            return value(((Number)v).doubleValue());
+        if (v instanceof Number)
+            return value(((Number)v).longValue());
+        if (v instanceof Boolean)
+            return value(((Boolean)v).booleanValue());
+        if (v instanceof JSONObject || v instanceof JSONArray)
+            return rawValue(v.toString());
+        return value(v.toString());
+    }
+
+    /**
+     * Write a value that is already JSON text (such as a cached result).
+     */
+    SQLiteJsonWriter rawValue(String json) {
+        separate();
+        ensureCapacity(json.length());
+        json.getChars(0, json.length(), buf, count);
+        count += json.length();
+        return this;
+    }
+
+    /**
+     * @return the text written since start (such as one result, for the result cache)
+     */
+    String substring(int start) {
+        return new String(buf, start, count - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, count);
+    }
+
+    /**
+     * @return the text written, as a message for PluginResult (or CallbackContext.success)
+     */
+    JSONArray toMessage() {
+        return new Message(toString());
+    }
+
+    /**
+     * JSON text given to PluginResult as is (it only calls toString() of a JSONArray message).
+     *
+     * NOTE: not a usable JSONArray (it has no elements).
+     */
+    static class Message extends JSONArray {
+        private final String json;
+
+        Message(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+
+        @Override
+        public String toString(int indentSpaces) {
+            return json;
+        }
+    }
+
+    /**
+     * Write a comma, unless at the start, or after the start of an array or object, or after a name.
+     */
+    private void separate() {
+        if (count == 0) return;
+        char last = buf[count - 1];
+        if (last != '[' && last != '{' && last != ':')
+            append(',');
+    }
+
+    /**
+     * Write a quoted string (like org.json, escaping the characters not allowed in a JSON string,
+     * and also U+2028 and U+2029, not allowed in Javascript strings).
+     */
+    private void string(String s) {
+        int len = s.length();
+        ensureCapacity(len + 2);
+        buf[count++] = '"';
+
+        int start = 0;
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') continue;
+
+            // (copy the run of characters before c, then escape c)
+            if (i > start) {
+                s.getChars(start, i, buf, count);
+                count += i - start;
+            }
+            start = i + 1;
+
+            ensureCapacity(6 + len - i);
+            buf[count++] = '\\';
+            switch (c) {
+            case '"':
+            case '\\':
+                buf[count++] = c;
+                break;
+            case '\b':
+                buf[count++] = 'b';
+                break;
+            case '\f':
+                buf[count++] = 'f';
+                break;
+            case '\n':
+                buf[count++] = 'n';
+                break;
+            case '\r':
+                buf[count++] = 'r';
+                break;
+            case '\t':
+                buf[count++] = 't';
+                break;
+            default:
+                buf[count++] = 'u';
+                buf[count++] = HEX[(c >> 12) & 0xf];
+                buf[count++] = HEX[(c >> 8) & 0xf];
+                buf[count++] = HEX[(c >> 4) & 0xf];
+                buf[count++] = HEX[c & 0xf];
+            }
+        }
+
+        if (len > start) {
+            s.getChars(start, len, buf, count);
+            count += len - start;
+        }
+        buf[count++] = '"';
+    }
+
+    private void appendLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            appendAscii("-9223372036854775808");
+            return;
+        }
+
+        ensureCapacity(20);
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+
+        // (digits written from the end)
+        int end = count + digits(v);
+        int pos = end;
+        do {
+            buf[--pos] = (char)('0' + (int)(v % 10));
+            v /= 10;
+        } while (v != 0);
+        count = end;
+    }
+
+    private static int digits(long v) {
+        int n = 1;
+        while (v >= 10) {
+            v /= 10;
+            ++n;
+        }
+        return n;
+    }
+
+    private void appendAscii(String s) {
+        ensureCapacity(s.length());
+        s.getChars(0, s.length(), buf, count);
+        count += s.length();
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        buf[count++] = c;
+    }
+
+    private void ensureCapacity(int n) {
+        if (count + n > buf.length) {
+            int newCapacity = Math.max(buf.length * 2, count + n);
+            char[] newBuf = new char[newCapacity];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.ArrayDeque;
+
+/**
+ * Blocking queue with priority lanes (interactive, normal, background) for
+ * the items of one database thread (or reader pool).
+ *
+ * take() returns the oldest item of the highest priority lane, except that an
+ * item of a lower lane waiting longer than maxWaitNanos is taken first
+ * (starvation protection). The order within each lane is FIFO.
+ *
+ * An item added with putLast() (such as a stop request) is only taken when
+ * all lanes are empty.
+ *
+ * NOTE: thread-safe, shared by the plugin execute thread, the db thread and the reader threads.
+ */
+class SQLiteLaneQueue<E>
+{
+    static final int INTERACTIVE = 0;
+    static final int NORMAL = 1;
+    static final int BACKGROUND = 2;
+
+    static final String[] LANE_NAMES = { "interactive", "normal", "background" };
+
+    static final long DEFAULT_MAX_WAIT_MS = 2000;
+
+    private static class Entry<E> {
+        final E item;
+        final long queuedAt;
+
+        Entry(E item, long queuedAt) {
+            this.item = item;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private final ArrayDeque<Entry<E>> interactive = new ArrayDeque<Entry<E>>();
+    private final ArrayDeque<Entry<E>> normal = new ArrayDeque<Entry<E>>();
+    private final ArrayDeque<Entry<E>> background = new ArrayDeque<Entry<E>>();
+    private final ArrayDeque<E> last = new ArrayDeque<E>();
+
+    private final long maxWaitNanos;
+
+    // items taken ahead of a higher lane (starvation protection), by lane:
+    private final long[] promoted = new long[LANE_NAMES.length];
+
+    /**
+     * @param maxWaitMs   Maximum wait of a lower lane item before it is taken ahead of higher lanes
+     */
+    SQLiteLaneQueue(long maxWaitMs) {
+        this.maxWaitNanos = maxWaitMs * 1000000L;
+    }
+
+    /**
+     * @return the lane for a name (such as the priority option), or defaultLane
+     */
+    static int getLane(String name, int defaultLane) {
+        for (int i = 0; i < LANE_NAMES.length; ++i) {
+            if (LANE_NAMES[i].equals(name)) return i;
+        }
+        return defaultLane;
+    }
+
+    private ArrayDeque<Entry<E>> lane(int lane) {
+        switch (lane) {
+            case INTERACTIVE: return interactive;
+            case BACKGROUND: return background;
+            default: return normal;
+        }
+    }
+
+    /**
+     * @param queuedAt   System.nanoTime() when the item was created
+     */
+    synchronized void put(E item, int lane, long queuedAt) {
+        lane(lane).add(new Entry<E>(item, queuedAt));
+        notifyAll();
+    }
+
+    synchronized void putLast(E item) {
+        last.add(item);
+        notifyAll();
+    }
+
+    /**
+     * Condition for pollIf().
+     */
+    interface Filter<E> {
+        boolean accept(E item);
+    }
+
+    synchronized E take() throws InterruptedException {
+        for (;;) {
+            E item = next(null);
+            if (item != null) return item;
+            wait();
+        }
+    }
+
+    /**
+     * @return the next item, or null if empty (without waiting)
+     */
+    synchronized E poll() {
+        return next(null);
+    }
+
+    /**
+     * @return the next item if accepted by the filter (never an item added with putLast()), or null
+     */
+    synchronized E pollIf(Filter<E> filter) {
+        return next(filter);
+    }
+
+    private E next(Filter<E> filter) {
+        int lane = nextLane();
+        if (lane < 0) return filter == null ? last.poll() : null;
+
+        ArrayDeque<Entry<E>> d = lane(lane);
+        if (filter != null && !filter.accept(d.peek().item)) return null;
+
+        for (int i = 0; i < lane; ++i) {
+            if (!lane(i).isEmpty()) {
+                ++promoted[lane];
+                break;
+            }
+        }
+
+        return d.poll().item;
+    }
+
+    /**
+     * @return the lane of the next item, or -1 if all lanes are empty
+     */
+    private int nextLane() {
+        long now = System.nanoTime();
+
+        // oldest starved item of a lower lane first:
+        Entry<E> n = normal.peek();
+        Entry<E> b = background.peek();
+        boolean normalStarved = n != null && !interactive.isEmpty() && now - n.queuedAt > maxWaitNanos;
+        boolean backgroundStarved = b != null && (!interactive.isEmpty() || n != null) && now - b.queuedAt > maxWaitNanos;
+
+        if (backgroundStarved && (!normalStarved || b.queuedAt - n.queuedAt < 0)) return BACKGROUND;
+        if (normalStarved) return NORMAL;
+
+        if (!interactive.isEmpty()) return INTERACTIVE;
+        if (n != null) return NORMAL;
+        if (b != null) return BACKGROUND;
+
+        return -1;
+    }
+
+    synchronized int size() {
+        return interactive.size() + normal.size() + background.size() + last.size();
+    }
+
+    synchronized int size(int lane) {
+        return lane(lane).size();
+    }
+
+    synchronized long getPromoted(int lane) {
+        return promoted[lane];
+    }
+} /* vim: set expandtab : */
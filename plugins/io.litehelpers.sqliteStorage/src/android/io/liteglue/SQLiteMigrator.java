@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Schema migrations (migrations open option), applied in the db thread when the
+ * database is opened, before the open callback:
+ *
+ *   migrations: [
+ *     { version: 1, sql: "CREATE TABLE ...; CREATE TABLE ..." },   (a script, or an array of statements)
+ *     { version: 2, asset: "migrations/2.sql" }                     (a script in www/)
+ *   ]
+ *
+ * The versions must be increasing. The migrations with a version above PRAGMA user_version
+ * are applied in order, all in one transaction, each one followed by PRAGMA user_version = <version>;
+ * if one fails, none of them is applied (and the open fails). When the schema is current,
+ * this costs one PRAGMA read.
+ *
+ * Report (openResult.migrations):
+ *   { fromVersion: v, toVersion: v, applied: [versions], ms: t }
+ */
+class SQLiteMigrator
+{
+    private static final Pattern CREATE_TRIGGER =
+        Pattern.compile("^\\s*CREATE\\s+(TEMP\\s+|TEMPORARY\\s+)?TRIGGER\\b", Pattern.CASE_INSENSITIVE);
+
+    private final AssetManager assets;
+    private final int[] versions;
+    private final Object[] scripts;
+
+    /**
+     * @param migrations   The migrations open option
+     * @param assets       For the asset scripts
+     */
+    SQLiteMigrator(JSONArray migrations, AssetManager assets) throws JSONException {
+        this.assets = assets;
+        this.versions = new int[migrations.length()];
+        this.scripts = new Object[migrations.length()];
+
+        for (int i = 0; i < versions.length; ++i) {
+            JSONObject m = migrations.getJSONObject(i);
+            versions[i] = m.getInt("version");
+            if (versions[i] <= (i > 0 ? versions[i - 1] : 0))
+                throw new JSONException("migration versions must be positive and increasing: " + versions[i]);
+
+            if (m.has("sql"))
+                scripts[i] = m.get("sql");
+            else if (m.has("asset"))
+                scripts[i] = new String[] { m.getString("asset") };
+            else
+                throw new JSONException("migration " + versions[i] + " has no sql or asset");
+        }
+    }
+
+    /**
+     * Apply the pending migrations (in the db thread).
+     *
+     * @return the report
+     */
+    JSONObject migrate(SQLiteAndroidDatabase mydb) throws Exception {
+        long start = System.nanoTime();
+
+        String v = mydb.execPragma("PRAGMA user_version");
+        int fromVersion = v != null ? Integer.parseInt(v) : 0;
+        int toVersion = fromVersion;
+        JSONArray applied = new JSONArray();
+
+        if (versions.length > 0 && versions[versions.length - 1] > fromVersion) {
+            mydb.beginTransactionNow();
+
+            boolean ok = false;
+            int i = 0;
+            try {
+                for (; i < versions.length; ++i) {
+                    if (versions[i] <= fromVersion) continue;
+
+                    for (String statement : getStatements(i))
+                        mydb.queryRows(statement, new JSONArray());
+
+                    mydb.queryRows("PRAGMA user_version = " + versions[i], new JSONArray());
+                    applied.put(versions[i]);
+                    toVersion = versions[i];
+                }
+                ok = true;
+            } catch (Exception ex) {
+                Log.v("migrations", "SQLiteMigrator.migrate(): Error in version " + versions[i] + ": " + ex.getMessage());
+                throw new Exception("migration to version " + versions[i] + " failed: " + ex.getMessage());
+            } finally {
+                mydb.endTransactionNow(ok);
+            }
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("fromVersion", fromVersion);
+        report.put("toVersion", toVersion);
+        report.put("applied", applied);
+        report.put("ms", (System.nanoTime() - start) / 1000000L);
+        return report;
+    }
+
+    private ArrayList<String> getStatements(int i) throws IOException, JSONException {
+        Object script = scripts[i];
+
+        if (script instanceof String[])
+            return splitStatements(readAsset("www/" + ((String[])script)[0]));
+
+        if (script instanceof JSONArray) {
+            ArrayList<String> statements = new ArrayList<String>();
+            JSONArray a = (JSONArray)script;
+            for (int j = 0; j < a.length(); ++j)
+                statements.add(a.getString(j));
+            return statements;
+        }
+
+        return splitStatements(script.toString());
+    }
+
+    private String readAsset(String path) throws IOException {
+        InputStream in = assets.open(path);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) > 0)
+                out.write(buf, 0, len);
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Split a script into statements at the semicolons outside of quotes and comments
+     * (and, in CREATE TRIGGER, only at the semicolon after the END of its body, counting
+     * the BEGIN ... END and CASE ... END pairs).
+     */
+    static ArrayList<String> splitStatements(String script) {
+        ArrayList<String> statements = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        int n = script.length();
+        // BEGIN and CASE not yet closed by END, in the current statement:
+        int depth = 0;
+
+        for (int i = 0; i < n; ++i) {
+            char c = script.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                int end = script.indexOf(close, i + 1);
+                // (a doubled quote is part of the same token)
+                while (end >= 0 && close != ']' && end + 1 < n && script.charAt(end + 1) == close)
+                    end = script.indexOf(close, end + 2);
+                if (end < 0) end = n - 1;
+                current.append(script, i, end + 1);
+                i = end;
+            } else if (c == '-' && i + 1 < n && script.charAt(i + 1) == '-') {
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? n : end;
+                current.append('\n');
+            } else if (c == '/' && i + 1 < n && script.charAt(i + 1) == '*') {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 1;
+                current.append(' ');
+            } else if (c == ';') {
+                String s = current.toString().trim();
+                if (depth > 0 && CREATE_TRIGGER.matcher(s).find()) {
+                    // (a statement of the trigger body)
+                    current.append(c);
+                    continue;
+                }
+                if (s.length() > 0) statements.add(s);
+                current.setLength(0);
+                depth = 0;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i + 1;
+                while (end < n && (Character.isLetterOrDigit(script.charAt(end)) || script.charAt(end) == '_' || script.charAt(end) == '$'))
+                    ++end;
+                String word = script.substring(i, end);
+                if (word.equalsIgnoreCase("BEGIN") || word.equalsIgnoreCase("CASE"))
+                    ++depth;
+                else if (word.equalsIgnoreCase("END") && depth > 0)
+                    --depth;
+                current.append(word);
+                i = end - 1;
+            } else {
+                current.append(c);
+            }
+        }
+
+        String s = current.toString().trim();
+        if (s.length() > 0) statements.add(s);
+
+        return statements;
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Performance profile: a set of PRAGMA settings applied when a database is opened.
+ *
+ * The performanceProfile open option is either the name of a preset
+ * ("readMostly", "writeHeavy", "lowMemory") or an object with an optional
+ * "preset" and any of the supported settings, which override the preset:
+ *
+ *   {preset: "readMostly", cache_size: -16000}
+ *
+ * The per-connection settings (cache_size, mmap_size, temp_store) are also
+ * applied to the reader connections (readerPoolSize option).
+ */
+class SQLitePerformanceProfile
+{
+    /**
+     * Supported settings, in the order they are applied
+     * (page_size must be set before journal_mode=WAL).
+     */
+    private static final String[] SETTINGS = {
+        "page_size", "journal_mode", "synchronous", "cache_size", "mmap_size", "temp_store"
+    };
+
+    /**
+     * Settings of one connection (not stored in the database file), for the reader connections.
+     */
+    private static final String[] CONNECTION_SETTINGS = { "cache_size", "mmap_size", "temp_store" };
+
+    private static final String[] JOURNAL_MODES = { "DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF" };
+    private static final String[] SYNCHRONOUS = { "OFF", "NORMAL", "FULL", "EXTRA", "0", "1", "2", "3" };
+    private static final String[] TEMP_STORES = { "DEFAULT", "FILE", "MEMORY", "0", "1", "2" };
+
+    private final LinkedHashMap<String, String> settings = new LinkedHashMap<String, String>();
+
+    /**
+     * @param option   The performanceProfile open option (String or JSONObject)
+     * @throws IllegalArgumentException for an unknown preset, setting, or value
+     */
+    SQLitePerformanceProfile(Object option) throws JSONException {
+        if (option instanceof String) {
+            putPreset((String)option);
+        } else if (option instanceof JSONObject) {
+            JSONObject o = (JSONObject)option;
+
+            if (o.has("preset"))
+                putPreset(o.getString("preset"));
+
+            Iterator<?> keys = o.keys();
+            while (keys.hasNext()) {
+                String key = (String)keys.next();
+                if (!key.equals("preset"))
+                    put(key, o.getString(key));
+            }
+        } else {
+            throw new IllegalArgumentException("invalid performanceProfile: " + option);
+        }
+    }
+
+    private void putPreset(String preset) {
+        if (preset.equals("readMostly")) {
+            // read-mostly catalog: large page cache and memory-mapped I/O
+            put("journal_mode", "WAL");
+            put("synchronous", "NORMAL");
+            put("cache_size", "-8000");
+            put("mmap_size", "67108864");
+            put("temp_store", "MEMORY");
+        } else if (preset.equals("writeHeavy")) {
+            // write-heavy sync: fewer fsyncs per commit
+            put("journal_mode", "WAL");
+            put("synchronous", "NORMAL");
+            put("cache_size", "-4000");
+            put("temp_store", "MEMORY");
+        } else if (preset.equals("lowMemory")) {
+            put("journal_mode", "TRUNCATE");
+            put("cache_size", "-512");
+            put("mmap_size", "0");
+            put("temp_store", "FILE");
+        } else {
+            throw new IllegalArgumentException("unknown performanceProfile preset: " + preset);
+        }
+    }
+
+    private void put(String name, String value) {
+        String v = value.trim().toUpperCase(Locale.US);
+
+        if (name.equals("journal_mode")) {
+            checkOneOf(name, v, JOURNAL_MODES);
+        } else if (name.equals("synchronous")) {
+            checkOneOf(name, v, SYNCHRONOUS);
+        } else if (name.equals("temp_store")) {
+            checkOneOf(name, v, TEMP_STORES);
+        } else if (name.equals("cache_size") || name.equals("mmap_size") || name.equals("page_size")) {
+            try {
+                v = Long.toString(Long.parseLong(v));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("invalid value for " + name + ": " + value);
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported performanceProfile setting: " + name);
+        }
+
+        settings.put(name, v);
+    }
+
+    private static void checkOneOf(String name, String value, String[] allowed) {
+        for (String a : allowed)
+            if (a.equals(value)) return;
+        throw new IllegalArgumentException("invalid value for " + name + ": " + value);
+    }
+
+    /**
+     * Apply the settings to an open database (in the db thread).
+     * See getEffectiveSettings() for the values in effect.
+     */
+    void apply(SQLiteAndroidDatabase mydb) throws Exception {
+        apply(mydb, SETTINGS);
+    }
+
+    /**
+     * Apply the per-connection settings to a reader connection (in its thread).
+     */
+    void applyToReader(SQLiteAndroidDatabase mydb) throws Exception {
+        apply(mydb, CONNECTION_SETTINGS);
+    }
+
+    private void apply(SQLiteAndroidDatabase mydb, String[] names) throws Exception {
+        for (String name : names) {
+            String value = settings.get(name);
+            if (value != null)
+                mydb.execPragma("PRAGMA " + name + "=" + value);
+        }
+    }
+
+    /**
+     * @return the current value of every supported setting
+     */
+    static JSONObject getEffectiveSettings(SQLiteAndroidDatabase mydb) throws Exception {
+        JSONObject effective = new JSONObject();
+        for (String name : SETTINGS) {
+            String value = mydb.execPragma("PRAGMA " + name);
+            effective.put(name, value == null ? JSONObject.NULL : value);
+        }
+        return effective;
+    }
+} /* vim: set expandtab : */
@@ -10,29 +10,43 @@ import android.annotation.SuppressLint;
 
 import com.almworks.sqlite4java.*;
 
+import android.net.Uri;
+
 import android.util.Base64;
 import android.util.Log;
 
 import java.io.File;
 import java.lang.IllegalArgumentException;
 import java.lang.Number;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaResourceApi;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 public class SQLitePlugin extends CordovaPlugin {
 
@@ -43,6 +57,30 @@ public class SQLitePlugin extends CordovaPlugin {
      */
     static ConcurrentHashMap<String, DBRunner> dbrmap = new ConcurrentHashMap<String, DBRunner>();
 
+    /**
+     * Stop flags of the paged queries that are queued or running, by paged query id.
+     */
+    static ConcurrentHashMap<String, AtomicBoolean> pagedmap = new ConcurrentHashMap<String, AtomicBoolean>();
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    static final long READER_BUSY_TIMEOUT = 5000;
+
+    /**
+     * Maximum wait of a reader for the next batch of its read transaction, before it is rolled back.
+     */
+    static final long READ_TX_TIMEOUT = 60000;
+
+    /**
+     * Maximum number of queued items run in one turn of a database in its (shared) db thread.
+     */
+    static final int MAX_ITEMS_PER_TURN = 16;
+
+    /**
+     * Maximum number of items in one group commit.
+     */
+    static final int GROUP_COMMIT_MAX = 64;
+
     /**
      * NOTE: Using default constructor, no explicit constructor.
      */
@@ -138,12 +176,112 @@ public class SQLitePlugin extends CordovaPlugin {
                     }
                 }
 
-                // put db query in the queue to be executed in the db thread:
+                // put db query in the queue to be executed in the db thread
+                // (or by a reader thread, if possible):
                 DBQuery q = new DBQuery(queries, queryIDs, jsonparams, cbc);
+
+                if (allargs.optBoolean("atomic", false)) {
+                    if (!isAtomicBatch(queries)) {
+                        cbc.error("an atomic batch cannot contain BEGIN, COMMIT or ROLLBACK");
+                        break;
+                    }
+                    q.atomic = true;
+                }
+
+                // (a read transaction with reader connections, see DBRunner.queueReadTx)
+                q.readTxId = allargs.optString("readTxId", null);
+
                 DBRunner r = dbrmap.get(dbname);
                 if (r != null) {
+                    // cached results are sent without waking the db thread:
+                    if (r.sendCachedBatch(q)) break;
+
+                    // (the foreground action is run ahead of the background batches, unless a priority is given)
+                    q.lane = getLane(allargs, action == Action.executeSqlBatch ? SQLiteLaneQueue.INTERACTIVE : r.batchLane);
+                    r.setInterrupt(q, allargs);
+
+                    try {
+                        r.queueBatch(q);
+                    } catch(Exception e) {
+                        Log.e(SQLitePlugin.class.getSimpleName(), "couldn't add to queue", e);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case executeSqlPaged:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                String pagedId = o.getString("pagedId");
+                int pageSize = o.optInt("pageSize", DEFAULT_PAGE_SIZE);
+                if (pageSize < 1) pageSize = DEFAULT_PAGE_SIZE;
+                JSONArray pagedParams = o.optJSONArray("params");
+                if (pagedParams == null) pagedParams = new JSONArray();
+
+                // (stopped while it was waiting in the Javascript queue: stops after the first page)
+                AtomicBoolean stopped = new AtomicBoolean(o.optBoolean("stopped", false));
+                pagedmap.put(pagedId, stopped);
+
+                DBRunner pr = dbrmap.get(dbname);
+                if (pr != null) {
+                    try {
+                        DBQuery pq = new DBQuery(o.getString("sql"), pagedParams, pageSize, pagedId, stopped, cbc);
+                        pq.lane = getLane(o, pr.batchLane);
+                        pr.queueBatch(pq);
+                    } catch(Exception e) {
+                        pagedmap.remove(pagedId);
+                        Log.e(SQLitePlugin.class.getSimpleName(), "couldn't add to queue", e);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    pagedmap.remove(pagedId);
+                    cbc.error("database not open");
+                }
+                break;
+
+            case executeBulk:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                DBRunner br = dbrmap.get(dbname);
+                if (br != null) {
+                    try {
+                        // NOTE: always run by the db thread (never by a reader):
+                        DBQuery bq = new DBQuery(o.getString("sql"), o.getJSONArray("rows"), cbc);
+                        bq.lane = getLane(o, SQLiteLaneQueue.BACKGROUND);
+                        br.queueTask(bq, false);
+                    } catch(Exception e) {
+                        Log.e(SQLitePlugin.class.getSimpleName(), "couldn't add to queue", e);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case importFile:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                SQLiteJsonImporter importer;
+                try {
+                    importer = new SQLiteJsonImporter(getImportFile(o.getString("path")), o.getString("table"),
+                        o.get("columns"), o.optInt("chunkSize", SQLiteJsonImporter.DEFAULT_CHUNK_SIZE),
+                        o.optBoolean("replace", false));
+                } catch (Exception e) {
+                    cbc.error("invalid import: " + e.getMessage());
+                    break;
+                }
+
+                DBRunner ir = dbrmap.get(dbname);
+                if (ir != null) {
                     try {
-                        r.q.put(q); 
+                        DBQuery iq = new DBQuery(importer, cbc);
+                        iq.lane = getLane(o, SQLiteLaneQueue.BACKGROUND);
+                        ir.queueTask(iq, false);
                     } catch(Exception e) {
                         Log.e(SQLitePlugin.class.getSimpleName(), "couldn't add to queue", e);
                         cbc.error("couldn't add to queue");
@@ -152,11 +290,284 @@ public class SQLitePlugin extends CordovaPlugin {
                     cbc.error("database not open");
                 }
                 break;
+
+            case backup:
+            case restore:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                DBRunner kr = dbrmap.get(dbname);
+                if (kr != null) {
+                    try {
+                        File bf = action == Action.restore ? getImportFile(o.getString("file")) : getFile(o.getString("file"));
+                        DBQuery bq = new DBQuery(new SQLiteBackupTask(bf, getDatabasePath(dbname),
+                            action == Action.restore, o.optInt("pagesPerStep", SQLiteBackupTask.DEFAULT_PAGES_PER_STEP)), cbc);
+                        bq.lane = getLane(o, SQLiteLaneQueue.BACKGROUND);
+                        kr.queueDbTask(bq, action == Action.restore);
+                    } catch (FileNotFoundException e) {
+                        cbc.error("can't read " + e.getMessage());
+                    } catch(Exception e) {
+                        Log.e(SQLitePlugin.class.getSimpleName(), "couldn't add to queue", e);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case blobOpen:
+            case blobRead:
+            case blobWrite:
+            case blobClose:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                SQLiteTask blobTask;
+                try {
+                    if (action == Action.blobOpen)
+                        blobTask = new SQLiteBlobIO.Open(o.optString("database", "main"), o.getString("table"),
+                            o.getString("column"), o.getLong("rowid"), o.optBoolean("writable", false));
+                    else if (action == Action.blobRead)
+                        blobTask = new SQLiteBlobIO.Read(o.getInt("handle"), o.optInt("offset", 0), o.optInt("length", -1));
+                    else if (action == Action.blobWrite)
+                        blobTask = new SQLiteBlobIO.Write(o.getInt("handle"), o.optInt("offset", 0),
+                            Base64.decode(o.getString("data"), Base64.DEFAULT));
+                    else
+                        blobTask = new SQLiteBlobIO.Close(o.getInt("handle"));
+                } catch (Exception e) {
+                    cbc.error("invalid " + action + ": " + e.getMessage());
+                    break;
+                }
+
+                DBRunner xr = dbrmap.get(dbname);
+                if (xr != null) {
+                    try {
+                        DBQuery xq = new DBQuery(blobTask, cbc);
+                        xq.lane = getLane(o, SQLiteLaneQueue.NORMAL);
+                        xr.queueDbTask(xq, action == Action.blobWrite);
+                    } catch(Exception e) {
+                        Log.e(SQLitePlugin.class.getSimpleName(), "couldn't add to queue", e);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case createSearchIndex:
+            case search:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                SQLiteTask searchTask;
+                try {
+                    if (action == Action.search)
+                        searchTask = new SQLiteSearchIndex.Search(o.getString("table"), o.getString("text"), o);
+                    else
+                        searchTask = new SQLiteSearchIndex.Create(o.getString("table"), o.getJSONArray("columns"),
+                            o.optBoolean("rebuild", false));
+                } catch (Exception e) {
+                    cbc.error("invalid " + action + ": " + e.getMessage());
+                    break;
+                }
+
+                DBRunner sr = dbrmap.get(dbname);
+                if (sr != null) {
+                    try {
+                        DBQuery sq = new DBQuery(searchTask, cbc);
+                        sq.lane = getLane(o, action == Action.search ? SQLiteLaneQueue.INTERACTIVE : SQLiteLaneQueue.BACKGROUND);
+                        // (a search may be run by a reader):
+                        sr.queueTask(sq, action == Action.search);
+                    } catch(Exception e) {
+                        Log.e(SQLitePlugin.class.getSimpleName(), "couldn't add to queue", e);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case getStats:
+                o = args.optJSONObject(0);
+                String statsdb = o != null ? o.optString("dbname", null) : null;
+
+                JSONObject allStats = new JSONObject();
+                for (DBRunner gr : dbrmap.values()) {
+                    if (statsdb == null || statsdb.equals(gr.dbname))
+                        allStats.put(gr.dbname, gr.getStats());
+                }
+                cbc.success(allStats);
+                break;
+
+            case getSlowQueries:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                DBRunner sqr = dbrmap.get(dbname);
+                if (sqr == null) {
+                    cbc.error("database not open");
+                } else if (sqr.slowQueryLog == null) {
+                    cbc.error("slow query log not enabled (slowQueryMs open option)");
+                } else {
+                    JSONObject slow = sqr.slowQueryLog.toJSON(o.optBoolean("clear", false));
+                    if (o.has("file"))
+                        dumpSlowQueries(getFile(o.getString("file")), slow, cbc);
+                    else
+                        cbc.success(slow);
+                }
+                break;
+
+            case stopPaged:
+                o = args.getJSONObject(0);
+                AtomicBoolean flag = pagedmap.get(o.getString("pagedId"));
+                if (flag != null) flag.set(true);
+                cbc.success();
+                break;
+
+            case cancel:
+                o = args.getJSONObject(0);
+                dbname = o.getJSONObject("dbargs").getString("dbname");
+
+                DBRunner cr = dbrmap.get(dbname);
+                if (cr != null) {
+                    JSONObject cancelResult = new JSONObject();
+                    cancelResult.put("cancelled", cr.cancel(o.getString("queryId")));
+                    cbc.success(cancelResult);
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
         }
 
         return status;
     }
 
+    /**
+     * @return the lane of the priority option (if any), or defaultLane
+     */
+    private static int getLane(JSONObject o, int defaultLane) {
+        return SQLiteLaneQueue.getLane(o.optString("priority", null), defaultLane);
+    }
+
+    /**
+     * @param path   A file path or file:// URL (a relative path is relative to the app files directory)
+     * @return the file to import
+     */
+    private File getImportFile(String path) throws IOException {
+        File file = getFile(path);
+
+        if (!file.canRead())
+            throw new FileNotFoundException(file.getAbsolutePath());
+
+        return file;
+    }
+
+    /**
+     * @return true if the batch can be run as one atomic batch (no transaction statements)
+     */
+    private static boolean isAtomicBatch(String[] queries) {
+        for (String query : queries) {
+            switch (SQLiteAndroidDatabase.getQueryType(query)) {
+                case begin:
+                case commit:
+                case rollback:
+                    return false;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param path   A file path or file:// URL (a relative path is relative to the app files directory)
+     */
+    private File getFile(String path) {
+        if (path.startsWith("file://"))
+            path = Uri.parse(path).getPath();
+
+        File file = new File(path);
+        if (!file.isAbsolute())
+            file = new File(this.cordova.getActivity().getFilesDir(), path);
+
+        return file;
+    }
+
+    /**
+     * Write the slow query log to a file (in a background thread).
+     * Result: { file: "/absolute/path", count: n }
+     */
+    private void dumpSlowQueries(final File file, final JSONObject slow, final CallbackContext cbc) {
+        cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                Writer out = null;
+                try {
+                    out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                    out.write(slow.toString(2));
+                    out.close();
+                    out = null;
+
+                    JSONObject r = new JSONObject();
+                    r.put("file", file.getAbsolutePath());
+                    r.put("count", slow.getJSONArray("entries").length());
+                    cbc.success(r);
+                } catch (Exception e) {
+                    Log.e(SQLitePlugin.class.getSimpleName(), "couldn't write slow query log", e);
+                    cbc.error("couldn't write slow query log: " + e.getMessage());
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException ignored) { }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Blob URLs (file:///sqlite-blob/...) are opened by this plugin (see SQLiteBlobStream).
+     */
+    @Override
+    public Uri remapUri(Uri uri) {
+        return SQLiteBlobStream.isBlobUri(uri) ? toPluginUri(uri) : null;
+    }
+
+    /**
+     * Open a blob URL (in the thread that loads it), for the WebView.
+     */
+    @Override
+    public CordovaResourceApi.OpenForReadResult handleOpenForRead(Uri uri) throws IOException {
+        Uri origUri = fromPluginUri(uri);
+
+        String dbname = SQLiteBlobStream.getDbName(origUri);
+        final DBRunner r = dbrmap.get(dbname);
+        if (r == null)
+            throw new FileNotFoundException("database not open: " + dbname);
+
+        // (only the columns of the blobUrls open option)
+        if (r.blobUrlColumns == null || !r.blobUrlColumns.contains(SQLiteBlobStream.getColumn(origUri)))
+            throw new FileNotFoundException("blob URLs not enabled for this column: " + origUri);
+
+        SQLiteBlobStream in;
+        try {
+            in = new SQLiteBlobStream(origUri, new SQLiteBlobStream.Runner() {
+                public void queue(SQLiteTask task, CallbackContext cbc) throws Exception {
+                    DBQuery dbq = new DBQuery(task, cbc);
+                    dbq.lane = SQLiteLaneQueue.INTERACTIVE;
+                    r.queueDbTask(dbq, false);
+                }
+            });
+        } catch (NumberFormatException e) {
+            throw new FileNotFoundException("invalid blob URL: " + origUri);
+        }
+        in.open();
+
+        String type = origUri.getQueryParameter("type");
+        return new CordovaResourceApi.OpenForReadResult(origUri, in,
+            type != null ? type : "application/octet-stream", in.getSize(), null);
+    }
+
     /**
      * Clean up and close all open databases.
      */
@@ -170,7 +581,7 @@ public class SQLitePlugin extends CordovaPlugin {
             DBRunner r = dbrmap.get(dbname);
             try {
                 // stop the db runner thread:
-                r.q.put(new DBQuery());
+                r.queueStop(new DBQuery());
             } catch(Exception e) {
                 Log.e(SQLitePlugin.class.getSimpleName(), "couldn't stop db thread", e);
             }
@@ -192,93 +603,76 @@ public class SQLitePlugin extends CordovaPlugin {
             // don't orphan the existing thread; just re-open the existing database.
             // In the worst case it might be in the process of closing, but even that's less serious
             // than orphaning the old DBRunner.
-            cbc.success();
+            r.reopen(cbc);
         } else {
             r = new DBRunner(dbname, options, cbc);
+
+            try {
+                r.setPerformanceProfile(options);
+            } catch (Exception e) {
+                Log.e(SQLitePlugin.class.getSimpleName(), "invalid performanceProfile", e);
+                cbc.error("can't open database: " + e.getMessage());
+                return;
+            }
+
+            try {
+                r.setMigrations(options);
+            } catch (Exception e) {
+                Log.e(SQLitePlugin.class.getSimpleName(), "invalid migrations", e);
+                cbc.error("can't open database: invalid migrations: " + e.getMessage());
+                return;
+            }
+
+            try {
+                r.setBlobUrls(options);
+            } catch (Exception e) {
+                Log.e(SQLitePlugin.class.getSimpleName(), "invalid blobUrls", e);
+                cbc.error("can't open database: invalid blobUrls: " + e.getMessage());
+                return;
+            }
+
+            r.acquireWorker();
             dbrmap.put(dbname, r);
-            this.cordova.getThreadPool().execute(r);
+            r.schedule();
         }
     }
+    /**
+     * @return the file of a database (NOTE: overridden by the benchmarks, see benchmark/README.md)
+     */
+    File getDatabasePath(String dbname) {
+        return this.cordova.getActivity().getDatabasePath(dbname);
+    }
+
     /**
      * Open a database.
      *
      * @param dbName   The name of the database file
      */
-    private SQLiteAndroidDatabase openDatabase(String dbname, boolean createFromAssets, CallbackContext cbc, boolean old_impl) throws Exception {
-        try {
-            // ASSUMPTION: no db (connection/handle) is already stored in the map
-            // [should be true according to the code in DBRunner.run()]
-
-            File dbfile = this.cordova.getActivity().getDatabasePath(dbname);
-
-            if (!dbfile.exists() && createFromAssets) this.createFromAssets(dbname, dbfile);
-
-            if (!dbfile.exists()) {
-                dbfile.getParentFile().mkdirs();
-            }
-
-            Log.v("info", "Open sqlite db: " + dbfile.getAbsolutePath());
-
-            SQLiteAndroidDatabase mydb = old_impl ? new SQLiteAndroidDatabase() : new SQLiteDatabaseNDK();
-            mydb.open(dbfile);
-
-            if (cbc != null) // XXX Android locking/closing BUG workaround
-                cbc.success();
+    private SQLiteAndroidDatabase openDatabase(String dbname, boolean createFromAssets, boolean old_impl,
+                                               int statementCacheSize, JSONObject openResult,
+                                               CallbackContext progressCbc) throws Exception {
+        // ASSUMPTION: no db (connection/handle) is already stored in the map
+        // [should be true according to the code in DBRunner.run()]
+
+        File dbfile = getDatabasePath(dbname);
+
+        if (createFromAssets) {
+            // install (or upgrade) the pre-populated database, if needed:
+            JSONObject installResult = new SQLiteAssetInstaller(this.cordova.getActivity().getAssets(), dbname, dbfile, progressCbc).install();
+            if (installResult != null)
+                openResult.put("createFromAssets", installResult);
+        }
 
-            return mydb;
-        } catch (SQLiteException e) {
-            if (cbc != null) // XXX Android locking/closing BUG workaround
-                cbc.error("can't open database " + e);
-            throw e;
+        if (!dbfile.exists()) {
+            dbfile.getParentFile().mkdirs();
         }
-    }
 
-    /**
-     * If a prepopulated DB file exists in the assets folder it is copied to the dbPath.
-     * Only runs the first time the app runs.
-     */
-    private void createFromAssets(String myDBName, File dbfile)
-    {
-        InputStream in = null;
-        OutputStream out = null;
+        Log.v("info", "Open sqlite db: " + dbfile.getAbsolutePath());
 
-            try {
-                in = this.cordova.getActivity().getAssets().open("www/" + myDBName);
-                String dbPath = dbfile.getAbsolutePath();
-                dbPath = dbPath.substring(0, dbPath.lastIndexOf("/") + 1);
-
-                File dbPathFile = new File(dbPath);
-                if (!dbPathFile.exists())
-                    dbPathFile.mkdirs();
-
-                File newDbFile = new File(dbPath + myDBName);
-                out = new FileOutputStream(newDbFile);
-
-                // XXX TODO: this is very primitive, other alternatives at:
-                // http://www.journaldev.com/861/4-ways-to-copy-file-in-java
-                byte[] buf = new byte[1024];
-                int len;
-                while ((len = in.read(buf)) > 0)
-                    out.write(buf, 0, len);
-    
-                Log.v("info", "Copied prepopulated DB content to: " + newDbFile.getAbsolutePath());
-            } catch (IOException e) {
-                Log.v("createFromAssets", "No prepopulated DB found, Error=" + e.getMessage());
-            } finally {
-                if (in != null) {
-                    try {
-                        in.close();
-                    } catch (IOException ignored) {
-                    }
-                }
-    
-                if (out != null) {
-                    try {
-                        out.close();
-                    } catch (IOException ignored) {
-                    }
-                }
-            }
+        SQLiteAndroidDatabase mydb = old_impl ? new SQLiteAndroidDatabase() : new SQLiteDatabaseNDK(statementCacheSize);
+        mydb.open(dbfile);
+
+        return mydb;
     }
 
     /**
@@ -290,7 +684,7 @@ public class SQLitePlugin extends CordovaPlugin {
         DBRunner r = dbrmap.get(dbname);
         if (r != null) {
             try {
-                r.q.put(new DBQuery(false, cbc));
+                r.queueStop(new DBQuery(false, cbc));
             } catch(Exception e) {
                 if (cbc != null) {
                     cbc.error("couldn't close database" + e);
@@ -324,7 +718,7 @@ public class SQLitePlugin extends CordovaPlugin {
         DBRunner r = dbrmap.get(dbname);
         if (r != null) {
             try {
-                r.q.put(new DBQuery(true, cbc));
+                r.queueStop(new DBQuery(true, cbc));
             } catch(Exception e) {
                 if (cbc != null) {
                     cbc.error("couldn't close database" + e);
@@ -349,7 +743,7 @@ public class SQLitePlugin extends CordovaPlugin {
      * @return true if successful or false if an exception was encountered
      */
     private boolean deleteDatabaseNow(String dbname) {
-        File dbfile = this.cordova.getActivity().getDatabasePath(dbname);
+        File dbfile = getDatabasePath(dbname);
 
         try {
             return cordova.getActivity().deleteDatabase(dbfile.getAbsolutePath());
@@ -364,6 +758,34 @@ public class SQLitePlugin extends CordovaPlugin {
     class SQLiteDatabaseNDK extends SQLiteAndroidDatabase {
       SQLiteConnection mydb;
 
+      // blobOpen handles (see SQLiteBlobIO), disposed with the connection:
+      final HashMap<Integer, SQLiteBlob> openBlobs = new HashMap<Integer, SQLiteBlob>();
+
+      private final int statementCacheSize;
+      private final boolean readOnly;
+      // NOTE: volatile since its stats may be read from the execute thread (see getStats):
+      volatile SQLiteStatementCache statementCache;
+
+      /**
+       * Send batch results in binary form (see SQLiteBinaryResult).
+       */
+      boolean binaryResults = false;
+
+      // statement type with the most rows in the last binary batch result (for stats):
+      private QueryType binaryResultType = QueryType.other;
+
+      SQLiteDatabaseNDK(int statementCacheSize) {
+        this(statementCacheSize, false);
+      }
+
+      /**
+       * @param readOnly   Open a read-only connection (for a reader thread)
+       */
+      SQLiteDatabaseNDK(int statementCacheSize, boolean readOnly) {
+        this.statementCacheSize = statementCacheSize;
+        this.readOnly = readOnly;
+      }
+
       /**
        * Open a database.
        *
@@ -372,7 +794,26 @@ public class SQLitePlugin extends CordovaPlugin {
       @Override
       void open(File dbFile) throws Exception {
         mydb = new SQLiteConnection(dbFile);
-        mydb.open(true); /* create if db does not exist */
+        if (readOnly) {
+            mydb.openReadonly();
+            // (should not happen in WAL mode, except during a checkpoint)
+            mydb.setBusyTimeout(READER_BUSY_TIMEOUT);
+        } else {
+            mydb.open(true); /* create if db does not exist */
+        }
+        statementCache = new SQLiteStatementCache(mydb, statementCacheSize);
+      }
+
+      /**
+       * @return true if a transaction (or savepoint) is open (in the current thread)
+       */
+      @Override
+      boolean inTransaction() {
+        try {
+            return mydb != null && !mydb.getAutoCommit();
+        } catch (SQLiteException e) {
+            return false;
+        }
       }
 
       /**
@@ -380,12 +821,125 @@ public class SQLitePlugin extends CordovaPlugin {
        */
       @Override
       void closeDatabaseNow() {
+        if (statementCache != null) {
+            try {
+                Log.v(SQLitePlugin.class.getSimpleName(), "statement cache: " + statementCache.getStats());
+            } catch (JSONException ignored) { }
+            statementCache.clear();
+        }
+
+        openBlobs.clear();
+
         if (mydb != null)
             mydb.dispose();
       }
 
       /**
-       * Ignore Android bug workaround for NDK version
+       * Execute a PRAGMA statement (in the current thread).
+       *
+       * @param pragma   The PRAGMA statement
+       * @return the first column of the first result row, or null if none
+       */
+      @Override
+      String execPragma(String pragma) throws SQLiteException {
+        SQLiteStatement myStatement = mydb.prepare(pragma, false);
+        try {
+            if (myStatement.step() && !myStatement.columnNull(0))
+                return myStatement.columnString(0);
+            return null;
+        } finally {
+            myStatement.dispose();
+        }
+      }
+
+      /**
+       * Execute a query (in the current thread) and get all of the result rows.
+       */
+      @Override
+      JSONArray queryRows(String query, JSONArray paramsAsJson) throws Exception {
+        if (mydb == null)
+            throw new IllegalStateException("database has been closed");
+
+        JSONArray rows = new JSONArray();
+        SQLiteStatement myStatement = statementCache.acquire(query);
+
+        try {
+            bindArgsToStatementNDK(myStatement, paramsAsJson);
+
+            while (myStatement.step()) {
+                JSONArray row = new JSONArray();
+                for (int i = 0; i < myStatement.columnCount(); ++i) {
+                    Object value = getColumnValueNDK(myStatement, i);
+                    row.put(value == null ? JSONObject.NULL : value);
+                }
+                rows.put(row);
+            }
+        } finally {
+            statementCache.release(query, myStatement);
+        }
+
+        if (isSchemaChange(query))
+            statementCache.clear();
+
+        return rows;
+      }
+
+      /**
+       * Start a savepoint (a transaction, or nested in the current transaction).
+       */
+      @Override
+      void beginTransactionNow() throws SQLiteException {
+        beginSavepointNow("native");
+      }
+
+      /**
+       * End the savepoint started by beginTransactionNow().
+       */
+      @Override
+      void endTransactionNow(boolean commit) throws SQLiteException {
+        endSavepointNow("native", commit);
+      }
+
+      /**
+       * Roll back the open transaction (if any), such as a read transaction that was not ended.
+       */
+      void rollbackNow() {
+        if (!inTransaction()) return;
+
+        try {
+            mydb.exec("ROLLBACK");
+        } catch (SQLiteException e) {
+            Log.e(SQLitePlugin.class.getSimpleName(), "couldn't roll back", e);
+        }
+      }
+
+      /**
+       * Start a named savepoint (a transaction, or nested in the current transaction).
+       */
+      void beginSavepointNow(String name) throws SQLiteException {
+        mydb.exec("SAVEPOINT " + name);
+      }
+
+      /**
+       * End a named savepoint.
+       *
+       * @param commit   Keep (true) or roll back (false) the changes since the savepoint
+       */
+      void endSavepointNow(String name, boolean commit) throws SQLiteException {
+        if (!commit)
+            mydb.exec("ROLLBACK TO " + name);
+        mydb.exec("RELEASE " + name);
+      }
+
+      /**
+       * Switch the database to WAL journal mode (to allow reader connections).
+       */
+      void enableWAL() throws SQLiteException {
+        Log.v(SQLitePlugin.class.getSimpleName(), "journal_mode: " + execPragma("PRAGMA journal_mode=WAL"));
+      }
+
+      /**
+       * Ignore Android bug workaround for NDK version
        */
       @Override
       void bugWorkaround() { }
@@ -409,100 +963,136 @@ public class SQLitePlugin extends CordovaPlugin {
             return;
         }
 
+        // (a running statement is stopped with mydb.interrupt())
+        if (interrupt != null) interrupt.start(mydb);
+
+        if (binaryResults) {
+            byte[] batchResults = executeSqlBatchBinary(queryarr, jsonparams, queryIDs);
+            if (interrupt != null) interrupt.finish();
+            sendBatchResults(cbc, batchResults, binaryResultType);
+            return;
+        }
+
         int len = queryarr.length;
-        JSONArray batchResults = new JSONArray();
+        SQLiteJsonWriter out = jsonResults.reset();
+        out.beginArray();
+
+        QueryType resultType = QueryType.other;
+        long resultTypeRows = -1;
 
         for (int i = 0; i < len; i++) {
-            int rowsAffectedCompat = 0;
-            boolean needRowsAffectedCompat = false;
             String query_id = queryIDs[i];
+            int resultStart = out.size();
 
-            JSONObject queryResult = null;
+            boolean error = false;
             String errorMessage = "unknown";
+            long rowCount = 0;
+            long rowsAffected = 0;
+
+            long start = System.nanoTime();
+            QueryType queryType = getQueryType(queryarr[i]);
 
             try {
+                if (interrupt != null) {
+                    // (the default timeout does not interrupt a write in a transaction)
+                    interrupt.holdTimeout(queryType != QueryType.select && inTransaction());
+                    if (interrupt.isInterrupted())
+                        throw new IllegalStateException("interrupted");
+                }
+
                 String query = queryarr[i];
 
+                long cacheGeneration = resultCache != null ? resultCache.getGeneration() : 0;
+
+                out.beginObject();
+                out.name("qid").value(query_id);
+                out.name("type").value("success");
+                out.name("result");
+                int queryResultStart = out.size();
+                out.beginObject();
+
                 long lastTotal = mydb.getTotalChanges();
-                queryResult = this.executeSqlStatementNDK(query, jsonparams[i], cbc);
+                rowCount = this.executeSqlStatementNDK(query, jsonparams[i], out);
                 long newTotal = mydb.getTotalChanges();
-                long rowsAffected = newTotal - lastTotal;
+                rowsAffected = newTotal - lastTotal;
 
-                queryResult.put("rowsAffected", rowsAffected);
+                out.name("rowsAffected").value(rowsAffected);
                 if (rowsAffected > 0) {
                     long insertId = mydb.getLastInsertId();
                     if (insertId > 0) {
-                        queryResult.put("insertId", insertId);
+                        out.name("insertId").value(insertId);
                     }
                 }
+
+                out.endObject();
+
+                // (not in a transaction, such as a read transaction, which may read an older snapshot)
+                if (resultCache != null && queryType == QueryType.select && !inTransaction())
+                    resultCache.put(query, jsonparams[i], out.substring(queryResultStart), cacheGeneration);
+
+                out.endObject();
             } catch (Exception ex) {
                 ex.printStackTrace();
+                error = true;
                 errorMessage = ex.getMessage();
                 Log.v("executeSqlBatch", "SQLitePlugin.executeSql[Batch](): Error=" + errorMessage);
             }
 
-            try {
-                if (queryResult != null) {
-                    JSONObject r = new JSONObject();
-                    r.put("qid", query_id);
-
-                    r.put("type", "success");
-                    r.put("result", queryResult);
+            boolean interrupted = error && interrupt != null && interrupt.isInterrupted();
+            if (interrupted)
+                errorMessage = interrupt.getMessage();
 
-                    batchResults.put(r);
-                } else {
-                    JSONObject r = new JSONObject();
-                    r.put("qid", query_id);
-                    r.put("type", "error");
+            long elapsed = System.nanoTime() - start;
 
-                    JSONObject er = new JSONObject();
-                    er.put("message", errorMessage);
-                    r.put("result", er);
+            if (stats != null) {
+                stats.recordStatement(queryType, elapsed, error, rowCount, rowsAffected);
 
-                    batchResults.put(r);
+                if (rowCount > resultTypeRows) {
+                    resultType = queryType;
+                    resultTypeRows = rowCount;
                 }
-            } catch (JSONException ex) {
-                ex.printStackTrace();
-                Log.v("executeSqlBatch", "SQLitePlugin.executeSql[Batch](): Error=" + ex.getMessage());
-                // TODO what to do?
+            }
+
+            if (slowQueryLog != null && elapsed >= slowQueryLog.thresholdNanos)
+                slowQueryLog.add(queryarr[i], jsonparams[i], elapsed, queueWaitNanos, rowCount, rowsAffected,
+                    error ? errorMessage : null, slowQueries);
+
+            if (error) {
+                // drop the partial result and report the error instead:
+                out.truncate(resultStart);
+                writeError(out, query_id, errorMessage, interrupted);
+            }
+
+            if (error && stopOnError) {
+                batchErrorIndex = i;
+                batchErrorMessage = errorMessage;
+                break;
             }
         }
 
-        cbc.success(batchResults);
+        out.endArray();
+
+        if (interrupt != null) interrupt.finish();
+
+        sendBatchResults(cbc, out, resultType);
       }
 
       /**
-       * Get rows results from query cursor.
+       * Execute a statement and write its rows (if any) as members of the open query result object.
        *
-       * @param cur Cursor into query results
-       * @return results in string form
+       * @param out   The batch results
+       * @return the number of rows
        */
-      private JSONObject executeSqlStatementNDK(String query, JSONArray paramsAsJson,
-                                                CallbackContext cbc) throws Exception {
-        JSONObject rowsResult = new JSONObject();
+      long executeSqlStatementNDK(String query, JSONArray paramsAsJson,
+                                  SQLiteJsonWriter out) throws Exception {
+        long rowCount = 0;
 
         boolean hasRows = false;
 
-        SQLiteStatement myStatement = mydb.prepare(query);
+        SQLiteStatement myStatement = statementCache.acquire(query);
 
         try {
-            String[] params = null;
-
-            params = new String[paramsAsJson.length()];
-
-            for (int i = 0; i < paramsAsJson.length(); ++i) {
-                if (paramsAsJson.isNull(i)) {
-                    myStatement.bindNull(i + 1);
-                } else {
-                    Object p = paramsAsJson.get(i);
-                    if (p instanceof Float || p instanceof Double) 
-                        myStatement.bind(i + 1, paramsAsJson.getDouble(i));
-                    else if (p instanceof Number) 
-                        myStatement.bind(i + 1, paramsAsJson.getLong(i));
-                    else
-                        myStatement.bind(i + 1, paramsAsJson.getString(i));
-                }
-            }
+            bindArgsToStatementNDK(myStatement, paramsAsJson);
 
             hasRows = myStatement.step();
         } catch (Exception ex) {
@@ -511,74 +1101,479 @@ public class SQLitePlugin extends CordovaPlugin {
             Log.v("executeSqlBatch", "SQLitePlugin.executeSql[Batch](): Error=" + errorMessage);
 
             // cleanup statement and throw the exception:
-            myStatement.dispose();
+            statementCache.release(query, myStatement);
             throw ex;
         }
 
         // If query result has rows
-        if (hasRows) {
-            JSONArray rowsArrayResult = new JSONArray();
-            String key = "";
-            int colCount = myStatement.columnCount();
-
-            // Build up JSON result object for each row
-            do {
-                JSONObject row = new JSONObject();
-                try {
+        try {
+            if (hasRows && columnarResults) {
+                String[] keys = getColumnNamesNDK(myStatement);
+                SQLiteColumnarResult columnar = new SQLiteColumnarResult(keys);
+
+                do {
+                    for (int i = 0; i < keys.length; ++i)
+                        columnar.put(i, getColumnValueNDK(myStatement, i));
+                    columnar.endRow();
+                } while (myStatement.step());
+
+                columnar.writeTo(out);
+                rowCount = columnar.getRowCount();
+            } else if (hasRows) {
+                // (column names encoded once, for all rows)
+                int colCount = myStatement.columnCount();
+                char[][] names = new char[colCount][];
+                for (int i = 0; i < colCount; ++i)
+                    names[i] = SQLiteJsonWriter.encodeName(myStatement.getColumnName(i));
+
+                out.name("rows").beginArray();
+
+                do {
+                    out.beginObject();
                     for (int i = 0; i < colCount; ++i) {
-                        key = myStatement.getColumnName(i);
+                        out.name(names[i]);
+                        writeColumnNDK(out, myStatement, i);
+                    }
+                    out.endObject();
+                    ++rowCount;
+                } while (myStatement.step());
 
-                        switch (myStatement.columnType(i)) {
-                        case 5: // SQLITE_NULL
-                            row.put(key, JSONObject.NULL);
-                            break;
+                out.endArray();
+            }
+        } catch (Exception ex) {
+            // (such as an interrupted statement) cleanup statement and throw the exception:
+            statementCache.release(query, myStatement);
+            throw ex;
+        }
+
+        statementCache.release(query, myStatement);
+
+        // cached statements may refer to a dropped or altered table:
+        if (isSchemaChange(query))
+            statementCache.clear();
+
+        return rowCount;
+      }
+
+      /**
+       * Executes a batch request and encodes the results in binary form.
+       *
+       * @param queryarr   Array of query strings
+       * @param jsonparams Array of JSON query parameters
+       * @param queryIDs   Array of query ids
+       * @return           The encoded batch results
+       */
+      private byte[] executeSqlBatchBinary(String[] queryarr, JSONArray[] jsonparams, String[] queryIDs) {
+        int len = queryarr.length;
+        SQLiteBinaryResult out = new SQLiteBinaryResult(4096);
+
+        binaryResultType = QueryType.other;
+        long resultTypeRows = -1;
+
+        // (the result count, patched after the loop if stopped by an error)
+        int countPos = out.size();
+        out.writeInt(len);
+        int resultCount = 0;
+
+        for (int i = 0; i < len; i++) {
+            int resultStart = out.size();
+            ++resultCount;
+            out.writeString(queryIDs[i]);
+
+            String query = queryarr[i];
+            SQLiteStatement myStatement = null;
 
-                        case 2: // SQLITE_FLOAT
-                            row.put(key, myStatement.columnDouble(i));
-                            break;
+            long start = System.nanoTime();
+            long rowCount = 0;
+            long rowsAffected = 0;
+            boolean error = false;
+            String errorMessage = null;
 
-                        case 1: // SQLITE_INTEGER
-                            row.put(key, myStatement.columnLong(i));
-                            break;
+            try {
+                if (interrupt != null) {
+                    // (the default timeout does not interrupt a write in a transaction)
+                    interrupt.holdTimeout(getQueryType(query) != QueryType.select && inTransaction());
+                    if (interrupt.isInterrupted())
+                        throw new IllegalStateException("interrupted");
+                }
 
-                        case 4: // [XXX TODO] SQLITE_BLOB
-                        case 3: // SQLITE3_TEXT
-                        default: // (just in case)
-                            row.put(key, myStatement.columnString(i));
+                out.writeByte(SQLiteBinaryResult.KIND_SUCCESS);
+
+                long lastTotal = mydb.getTotalChanges();
+
+                myStatement = statementCache.acquire(query);
+                bindArgsToStatementNDK(myStatement, jsonparams[i]);
+
+                boolean hasRows = myStatement.step();
+
+                int colCount = hasRows ? myStatement.columnCount() : 0;
+                out.writeInt(colCount);
+                for (int j = 0; j < colCount; ++j)
+                    out.writeString(myStatement.getColumnName(j));
+
+                if (hasRows) {
+                    do {
+                        ++rowCount;
+                        out.writeByte(1);
+                        for (int j = 0; j < colCount; ++j) {
+                            switch (myStatement.columnType(j)) {
+                            case 5: // SQLITE_NULL
+                                out.writeNull();
+                                break;
+
+                            case 2: // SQLITE_FLOAT
+                                out.writeFloat(myStatement.columnDouble(j));
+                                break;
+
+                            case 1: // SQLITE_INTEGER
+                                out.writeInteger(myStatement.columnLong(j));
+                                break;
+
+                            case 4: // SQLITE_BLOB
+                                out.writeBlob(myStatement.columnBlob(j));
+                                break;
+
+                            case 3: // SQLITE3_TEXT
+                            default: // (just in case)
+                                out.writeText(myStatement.columnString(j));
+                            }
                         }
+                    } while (myStatement.step());
+                }
+                out.writeByte(0);
 
-                    }
+                rowsAffected = mydb.getTotalChanges() - lastTotal;
+                out.writeDouble(rowsAffected);
 
-                    rowsArrayResult.put(row);
+                long insertId = rowsAffected > 0 ? mydb.getLastInsertId() : 0;
+                if (insertId > 0) {
+                    out.writeByte(1);
+                    out.writeDouble(insertId);
+                } else {
+                    out.writeByte(0);
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                errorMessage = ex.getMessage();
+                Log.v("executeSqlBatch", "SQLitePlugin.executeSql[Batch](): Error=" + errorMessage);
+
+                error = true;
+                boolean interrupted = interrupt != null && interrupt.isInterrupted();
+                if (interrupted)
+                    errorMessage = interrupt.getMessage();
+
+                // drop the partial result and report the error instead:
+                out.truncate(resultStart);
+                out.writeString(queryIDs[i]);
+                out.writeByte(interrupted ? SQLiteBinaryResult.KIND_INTERRUPTED : SQLiteBinaryResult.KIND_ERROR);
+                out.writeString(errorMessage != null ? errorMessage : "unknown");
+            } finally {
+                statementCache.release(query, myStatement);
+            }
+
+            if (isSchemaChange(query))
+                statementCache.clear();
+
+            long elapsed = System.nanoTime() - start;
+
+            if (stats != null) {
+                QueryType queryType = getQueryType(query);
+                stats.recordStatement(queryType, elapsed, error, rowCount, rowsAffected);
 
-                } catch (JSONException e) {
-                    e.printStackTrace();
+                if (rowCount > resultTypeRows) {
+                    binaryResultType = queryType;
+                    resultTypeRows = rowCount;
                 }
-            } while (myStatement.step());
+            }
+
+            if (slowQueryLog != null && elapsed >= slowQueryLog.thresholdNanos)
+                slowQueryLog.add(query, jsonparams[i], elapsed, queueWaitNanos, rowCount, rowsAffected,
+                    error ? (errorMessage != null ? errorMessage : "unknown") : null, slowQueries);
+
+            if (error && stopOnError) {
+                // (the partial result is not sent)
+                batchErrorIndex = i;
+                batchErrorMessage = errorMessage != null ? errorMessage : "unknown";
+                break;
+            }
+        }
+
+        out.setInt(countPos, resultCount);
+        return out.toByteArray();
+      }
+
+      /**
+       * Step through a SELECT statement and send the rows in pages of pageSize rows.
+       */
+      @Override
+      void executeSqlPaged(String query, JSONArray paramsAsJson, int pageSize,
+                           AtomicBoolean stopped, CallbackContext cbc) {
+        if (mydb == null) {
+            cbc.error("database has been closed");
+            return;
+        }
+
+        SQLiteStatement myStatement = null;
+        int pageCount = 0;
+        int rowCount = 0;
+
+        try {
+            myStatement = statementCache.acquire(query);
+            bindArgsToStatementNDK(myStatement, paramsAsJson);
+
+            if (myStatement.step()) {
+                String[] keys = getColumnNamesNDK(myStatement);
+                JSONArray page = new JSONArray();
+
+                do {
+                    page.put(getRowNDK(myStatement, keys));
+                    ++rowCount;
+
+                    if (page.length() >= pageSize) {
+                        sendPage(cbc, page, pageCount++);
+                        page = new JSONArray();
+                        if (stopped.get()) break;
+                    }
+                } while (myStatement.step());
+
+                if (page.length() > 0 && !stopped.get())
+                    sendPage(cbc, page, pageCount++);
+            }
+
+            sendPagedDone(cbc, pageCount, rowCount, stopped.get());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            Log.v("executeSqlPaged", "SQLitePlugin.executeSqlPaged(): Error=" + ex.getMessage());
+            cbc.error(ex.getMessage());
+        } finally {
+            statementCache.release(query, myStatement);
+        }
+      }
+
+      /**
+       * Executes one statement for each row of parameters, in a single transaction
+       * (a savepoint if a transaction is already open), with one prepared statement.
+       */
+      @Override
+      long executeBulkRows(String query, JSONArray paramRows, int firstIndex, JSONArray errors) throws Exception {
+        if (mydb == null)
+            throw new IllegalStateException("database has been closed");
+
+        long rowsAffected = 0;
+
+        SQLiteStatement myStatement = statementCache.acquire(query);
+
+        try {
+            mydb.exec("SAVEPOINT bulk");
 
             try {
-                rowsResult.put("rows", rowsArrayResult);
-            } catch (JSONException e) {
-                e.printStackTrace();
+                int len = paramRows.length();
+
+                for (int i = 0; i < len; ++i) {
+                    try {
+                        myStatement.reset(true);
+                        bindArgsToStatementNDK(myStatement, paramRows.getJSONArray(i));
+
+                        long lastTotal = mydb.getTotalChanges();
+                        while (myStatement.step()) { }
+                        rowsAffected += mydb.getTotalChanges() - lastTotal;
+                    } catch (Exception ex) {
+                        Log.v("executeBulk", "SQLitePlugin.executeBulkRows(): row " + (firstIndex + i) + " Error=" + ex.getMessage());
+                        putBulkError(errors, firstIndex + i, ex.getMessage());
+                    }
+                }
+            } catch (Exception ex) {
+                try {
+                    mydb.exec("ROLLBACK TO bulk");
+                    mydb.exec("RELEASE bulk");
+                } catch (Exception ignored) { }
+                throw ex;
             }
+
+            mydb.exec("RELEASE bulk");
+        } finally {
+            statementCache.release(query, myStatement);
         }
 
-        myStatement.dispose();
+        return rowsAffected;
+      }
 
-        return rowsResult;
+      void bindArgsToStatementNDK(SQLiteStatement myStatement, JSONArray paramsAsJson) throws Exception {
+        for (int i = 0; i < paramsAsJson.length(); ++i) {
+            if (paramsAsJson.isNull(i)) {
+                myStatement.bindNull(i + 1);
+            } else {
+                Object p = paramsAsJson.get(i);
+                byte[] blob = getBlobParam(p);
+                if (blob != null)
+                    myStatement.bind(i + 1, blob);
+                else if (p instanceof Float || p instanceof Double) 
+                    myStatement.bind(i + 1, paramsAsJson.getDouble(i));
+                else if (p instanceof Number) 
+                    myStatement.bind(i + 1, paramsAsJson.getLong(i));
+                else
+                    myStatement.bind(i + 1, paramsAsJson.getString(i));
+            }
+        }
+      }
+
+      private String[] getColumnNamesNDK(SQLiteStatement myStatement) throws SQLiteException {
+        int colCount = myStatement.columnCount();
+        String[] keys = new String[colCount];
+        for (int i = 0; i < colCount; ++i)
+            keys[i] = myStatement.getColumnName(i);
+        return keys;
+      }
+
+      /**
+       * Build up JSON result object for the current row.
+       */
+      private JSONObject getRowNDK(SQLiteStatement myStatement, String[] keys) throws SQLiteException, JSONException {
+        JSONObject row = new JSONObject();
+
+        for (int i = 0; i < keys.length; ++i) {
+            Object value = getColumnValueNDK(myStatement, i);
+            row.put(keys[i], value == null ? JSONObject.NULL : value);
+        }
+
+        return row;
+      }
+
+      /**
+       * @return the value in column i of the current row: Long, Double, String
+       *         (BLOB in Base64), or null
+       */
+      private Object getColumnValueNDK(SQLiteStatement myStatement, int i) throws SQLiteException {
+        switch (myStatement.columnType(i)) {
+        case 5: // SQLITE_NULL
+            return null;
+
+        case 2: // SQLITE_FLOAT
+            return myStatement.columnDouble(i);
+
+        case 1: // SQLITE_INTEGER
+            return myStatement.columnLong(i);
+
+        case 4: // SQLITE_BLOB
+            return Base64.encodeToString(myStatement.columnBlob(i), Base64.NO_WRAP);
+
+        case 3: // SQLITE3_TEXT
+        default: // (just in case)
+            return myStatement.columnString(i);
+        }
+      }
+
+      /**
+       * Write the value in column i of the current row (like getColumnValueNDK, without boxing).
+       */
+      private void writeColumnNDK(SQLiteJsonWriter out, SQLiteStatement myStatement, int i) throws SQLiteException {
+        switch (myStatement.columnType(i)) {
+        case 5: // SQLITE_NULL
+            out.nullValue();
+            break;
+
+        case 2: // SQLITE_FLOAT
+            out.value(myStatement.columnDouble(i));
+            break;
+
+        case 1: // SQLITE_INTEGER
+            out.value(myStatement.columnLong(i));
+            break;
+
+        case 4: // SQLITE_BLOB
+            out.value(Base64.encodeToString(myStatement.columnBlob(i), Base64.NO_WRAP));
+            break;
+
+        case 3: // SQLITE3_TEXT
+        default: // (just in case)
+            out.value(myStatement.columnString(i));
+        }
       }
     }
 
+    /**
+     * Work queue of one database, run in turns by its (shared) db thread (see SQLiteDbExecutor).
+     * The connection is closed when idle for idleCloseMs (if set), and opened again for the next request.
+     */
     private class DBRunner implements Runnable {
         final String dbname;
         private boolean createFromAssets;
         private boolean oldImpl;
         private boolean bugWorkaround;
-
-        final BlockingQueue<DBQuery> q;
+        private int statementCacheSize;
+        private boolean columnarResults;
+        private boolean binaryResults;
+        private SQLitePerformanceProfile performanceProfile = null;
+        // schema migrations, applied by the first open (optional):
+        private SQLiteMigrator migrator = null;
+        // table and column pairs that may be read with blob URLs (see SQLiteBlobStream.getColumns), set before it is started:
+        HashSet<String> blobUrlColumns = null;
+
+        // default timeout of a batch (0 = none):
+        final long queryTimeoutMs;
+        // batches with a queryId, until they are done (for cancel):
+        final ConcurrentHashMap<String, SQLiteInterrupt> interrupts = new ConcurrentHashMap<String, SQLiteInterrupt>();
+
+        // SELECT result cache (optional):
+        final SQLiteResultCache resultCache;
+        // number of queued batches (and tasks) that may write:
+        final AtomicInteger pendingWrites = new AtomicInteger();
+
+        final SQLiteStats stats = new SQLiteStats();
+
+        // slow statements (optional):
+        final SQLiteSlowQueryLog slowQueryLog;
+
+        // priority lanes:
+        final SQLiteLaneQueue<DBQuery> q;
+        // default lane of batches and paged queries:
+        final int batchLane;
         final CallbackContext openCbc;
 
-        SQLiteAndroidDatabase mydb;
+        // result of the first open (with its features and migrations), and the callbacks
+        // of other opens of the database until then (NOTE: only used with openCallbacks held):
+        private boolean openDone = false;
+        private JSONObject openResult = null;
+        private final ArrayList<CallbackContext> openCallbacks = new ArrayList<CallbackContext>();
+
+        // shared db thread (assigned by acquireWorker() once the open options are valid),
+        // and whether a turn is queued (or running) in it:
+        ScheduledThreadPoolExecutor worker = null;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        // NOTE: only used in the db thread:
+        private boolean opened = false;
+        private boolean stopped = false;
+        private boolean idleCheckPending = false;
+        private long lastActive = System.nanoTime();
+
+        // run adjacent write-only items in one transaction (sqlite4java only):
+        final boolean groupCommit;
+
+        // close the connection after this idle time (0 = never):
+        final long idleCloseMs;
+        final AtomicLong reopens = new AtomicLong();
+
+        // read-only connection pool (WAL mode, sqlite4java only):
+        final int readerPoolSize;
+        final SQLiteLaneQueue<DBQuery> readq;
+        private CountDownLatch readersDone;
+        // NOTE: set with readerLock held, which is also held to queue an item for the readers:
+        volatile int readersStarted = 0;
+        private final Object readerLock = new Object();
+        final AtomicLong readerBatches = new AtomicLong();
+        // open read transactions, each run by one reader: the queue of its next batches,
+        // by read transaction id (NOTE: only used with readerLock held):
+        private final HashMap<String, LinkedBlockingQueue<DBQuery>> readTxs = new HashMap<String, LinkedBlockingQueue<DBQuery>>();
+
+        // NOTE: only used in the plugin execute thread:
+        private boolean txOpen = false;
+
+        // incremental tasks (such as a backup) waiting for the end of the open transaction
+        // (NOTE: only used in the db thread):
+        private final ArrayList<DBQuery> waitingForTx = new ArrayList<DBQuery>();
+
+        volatile SQLiteAndroidDatabase mydb;
 
         DBRunner(final String dbname, JSONObject options, CallbackContext cbc) {
             this.dbname = dbname;
@@ -588,39 +1583,841 @@ public class SQLitePlugin extends CordovaPlugin {
             this.bugWorkaround = this.oldImpl && options.has("androidBugWorkaround");
             if (this.bugWorkaround)
                 Log.v(SQLitePlugin.class.getSimpleName(), "Android db closing/locking workaround applied");
-
-            this.q = new LinkedBlockingQueue<DBQuery>();
+            this.statementCacheSize = options.optInt("statementCacheSize", SQLiteStatementCache.DEFAULT_SIZE);
+            this.columnarResults = "columnar".equals(options.optString("resultEncoding"));
+            this.binaryResults = "binary".equals(options.optString("resultEncoding"));
+
+            this.readerPoolSize = this.oldImpl ? 0 : Math.max(0, options.optInt("readerPoolSize", 0));
+            if (this.readerPoolSize > 0)
+                Log.v(SQLitePlugin.class.getSimpleName(), "WAL mode with " + readerPoolSize + " reader connection(s)");
+
+            // NOTE: binary results are not cached (encoded for the whole batch).
+            long resultCacheSize = options.optLong("resultCacheSize", 0);
+            this.resultCache = (resultCacheSize > 0 && !(this.binaryResults && !this.oldImpl)) ?
+                new SQLiteResultCache(resultCacheSize) : null;
+
+            long slowQueryMs = options.optLong("slowQueryMs", 0);
+            this.slowQueryLog = slowQueryMs > 0 ?
+                new SQLiteSlowQueryLog(slowQueryMs, options.optInt("slowQueryLogSize", SQLiteSlowQueryLog.DEFAULT_SIZE)) : null;
+
+            long maxLaneWaitMs = options.optLong("maxLaneWaitMs", SQLiteLaneQueue.DEFAULT_MAX_WAIT_MS);
+            this.batchLane = getLane(options, SQLiteLaneQueue.NORMAL);
+            this.q = new SQLiteLaneQueue<DBQuery>(maxLaneWaitMs);
+            this.readq = new SQLiteLaneQueue<DBQuery>(maxLaneWaitMs);
             this.openCbc = cbc;
+
+            this.idleCloseMs = Math.max(0, options.optLong("idleCloseMs", 0));
+            this.queryTimeoutMs = Math.max(0, options.optLong("queryTimeoutMs", 0));
+            // NOTE: group commit is only supported by the sqlite4java (NDK) version.
+            this.groupCommit = !this.oldImpl && options.optBoolean("groupCommit", false);
+        }
+
+        /**
+         * Assign a shared db thread, to be called before the first schedule()
+         * (and released when the database is closed or could not be opened).
+         */
+        void acquireWorker() {
+            this.worker = SQLiteDbExecutor.acquire();
+        }
+
+        /**
+         * Queue a turn in the db thread, unless one is already queued.
+         */
+        void schedule() {
+            if (scheduled.compareAndSet(false, true))
+                worker.execute(this);
+        }
+
+        /**
+         * Queue a close (or delete) request, to be run after all queued work.
+         */
+        void queueStop(DBQuery dbq) {
+            q.putLast(dbq);
+            schedule();
+        }
+
+        /**
+         * Give an item back to the db thread (from a reader thread).
+         */
+        void requeue(DBQuery dbq) {
+            q.put(dbq, dbq.lane, dbq.queuedAt);
+            schedule();
+        }
+
+        /**
+         * Parse the performanceProfile open option (if any), to be applied in the db thread.
+         */
+        void setPerformanceProfile(JSONObject options) throws JSONException {
+            if (options.has("performanceProfile"))
+                this.performanceProfile = new SQLitePerformanceProfile(options.get("performanceProfile"));
+        }
+
+        /**
+         * Parse the migrations open option (if any), to be applied in the db thread by the first open.
+         */
+        void setMigrations(JSONObject options) throws JSONException {
+            if (options.has("migrations"))
+                this.migrator = new SQLiteMigrator(options.getJSONArray("migrations"),
+                    SQLitePlugin.this.cordova.getActivity().getAssets());
+        }
+
+        /**
+         * Parse the blobUrls open option (if any): the columns that may be read with blob URLs.
+         */
+        void setBlobUrls(JSONObject options) throws JSONException {
+            if (options.has("blobUrls"))
+                this.blobUrlColumns = SQLiteBlobStream.getColumns(options.getJSONArray("blobUrls"));
+        }
+
+        /**
+         * Send the result of the first open to another open of the database
+         * (from the plugin execute thread), as soon as it is known.
+         */
+        void reopen(CallbackContext cbc) {
+            JSONObject result;
+            synchronized (openCallbacks) {
+                if (!openDone) {
+                    openCallbacks.add(cbc);
+                    return;
+                }
+                result = openResult;
+            }
+
+            if (result != null)
+                cbc.success(result);
+            else
+                cbc.error("can't open database");
+        }
+
+        /**
+         * Send the result of the first open (or its error) to the other opens waiting for it
+         * (in the db thread).
+         */
+        private void sendOpenResult(JSONObject result, String error) {
+            ArrayList<CallbackContext> waiting;
+            synchronized (openCallbacks) {
+                openDone = true;
+                openResult = result;
+                waiting = new ArrayList<CallbackContext>(openCallbacks);
+                openCallbacks.clear();
+            }
+
+            for (CallbackContext cbc : waiting) {
+                if (result != null)
+                    cbc.success(result);
+                else
+                    cbc.error(error);
+            }
+        }
+
+        /**
+         * Set the timeout and queryId of a batch (timeoutMs and queryId batch options), if any,
+         * before it is queued (in the plugin execute thread).
+         */
+        void setInterrupt(DBQuery dbq, JSONObject allargs) {
+            String queryId = allargs.optString("queryId", null);
+            long timeoutMs = allargs.optLong("timeoutMs", queryTimeoutMs);
+            if (queryId == null && timeoutMs <= 0) return;
+
+            dbq.interrupt = new SQLiteInterrupt(queryId, timeoutMs, !allargs.has("timeoutMs"));
+            if (queryId != null)
+                interrupts.put(queryId, dbq.interrupt);
+        }
+
+        /**
+         * Cancel a batch, queued or running (from the plugin execute thread).
+         *
+         * @return true if a batch with this queryId was found
+         */
+        boolean cancel(String queryId) {
+            SQLiteInterrupt interrupt = interrupts.remove(queryId);
+            if (interrupt == null) return false;
+
+            interrupt.cancel();
+            return true;
+        }
+
+        /**
+         * To be called when a batch is done (in the thread that ran it).
+         */
+        void forgetInterrupt(DBQuery dbq) {
+            if (dbq.interrupt != null && dbq.interrupt.queryId != null)
+                interrupts.remove(dbq.interrupt.queryId, dbq.interrupt);
+        }
+
+        /**
+         * Queue a batch (or paged query) from the plugin execute thread.
+         * A batch with only SELECT statements goes to the reader pool (if any),
+         * unless it is part of an open transaction (or it is part of a read transaction, see queueReadTx).
+         */
+        void queueBatch(DBQuery dbq) throws InterruptedException {
+            // a read transaction is run by a reader, also while a transaction is open,
+            // since a reader only sees committed data (and a write fails on its read-only connection):
+            if (dbq.readTxId != null) {
+                // (the db thread opens the connection again, with the readers, see run())
+                if (!queueReadTx(dbq))
+                    queueOnDbThread(dbq, false);
+                return;
+            }
+
+            // (an atomic batch runs in a transaction of the db thread connection)
+            boolean readOnly = !txOpen && !dbq.atomic;
+
+            boolean write = false;
+
+            for (String query : dbq.queries) {
+                SQLiteAndroidDatabase.QueryType queryType = SQLiteAndroidDatabase.getQueryType(query);
+
+                if (queryType == SQLiteAndroidDatabase.QueryType.begin)
+                    txOpen = true;
+                else if (queryType == SQLiteAndroidDatabase.QueryType.commit ||
+                         queryType == SQLiteAndroidDatabase.QueryType.rollback)
+                    txOpen = false;
+
+                if (queryType != SQLiteAndroidDatabase.QueryType.select) {
+                    readOnly = false;
+                    write = true;
+                }
+            }
+
+            if (!(readOnly && dbq.queries.length > 0 && queueOnReaders(dbq)))
+                queueOnDbThread(dbq, write);
+        }
+
+        /**
+         * Queue an item for the readers, unless they are not started (or stopped when idle,
+         * in which case the db thread opens the connection again, with the readers).
+         *
+         * @return true if queued
+         */
+        private boolean queueOnReaders(DBQuery dbq) {
+            synchronized (readerLock) {
+                if (readersStarted == 0) return false;
+                readq.put(dbq, dbq.lane, dbq.queuedAt);
+            }
+            stats.queued(getQueueDepth());
+            return true;
+        }
+
+        /**
+         * Queue a batch of a read transaction: the first one (with BEGIN) for the readers,
+         * and the next ones for the reader that runs the transaction (see DBReader.runReadTx),
+         * so that all of them read the same snapshot.
+         *
+         * @return false if the readers are not started
+         */
+        boolean queueReadTx(DBQuery dbq) {
+            synchronized (readerLock) {
+                LinkedBlockingQueue<DBQuery> txq = readTxs.get(dbq.readTxId);
+                if (txq != null) {
+                    txq.add(dbq);
+                } else {
+                    if (readersStarted == 0) return false;
+                    readTxs.put(dbq.readTxId, new LinkedBlockingQueue<DBQuery>());
+                    readq.put(dbq, dbq.lane, dbq.queuedAt);
+                }
+            }
+            stats.queued(getQueueDepth());
+            return true;
+        }
+
+        /**
+         * @return the queue of the next batches of a read transaction, or null if it was ended
+         *         (such as by stopReaders)
+         */
+        LinkedBlockingQueue<DBQuery> getReadTx(String readTxId) {
+            synchronized (readerLock) {
+                return readTxs.get(readTxId);
+            }
+        }
+
+        /**
+         * End a read transaction (in its reader thread), unless a batch was queued for it in the meantime.
+         *
+         * @return the next batch, or null if ended
+         */
+        DBQuery endReadTx(String readTxId, LinkedBlockingQueue<DBQuery> txq) {
+            synchronized (readerLock) {
+                DBQuery next = txq.poll();
+                if (next == null && readTxs.get(readTxId) == txq)
+                    readTxs.remove(readTxId);
+                return next;
+            }
+        }
+
+        private boolean hasReadTxs() {
+            synchronized (readerLock) {
+                return !readTxs.isEmpty();
+            }
+        }
+
+        int getQueueDepth() {
+            return q.size() + readq.size();
+        }
+
+        /**
+         * @param write   The query (or task) may write, so the result cache must not be used until it is done
+         */
+        private void queueOnDbThread(DBQuery dbq, boolean write) throws InterruptedException {
+            if (write && resultCache != null) {
+                dbq.pendingWrite = true;
+                pendingWrites.incrementAndGet();
+            }
+            q.put(dbq, dbq.lane, dbq.queuedAt);
+            stats.queued(getQueueDepth());
+            schedule();
+        }
+
+        /**
+         * Send the results of a batch from the result cache (in the plugin execute thread),
+         * if all of its statements are SELECTs with cached results (and no transaction is open,
+         * and it is not part of a read transaction, which reads its own snapshot).
+         *
+         * @return true if the results were sent
+         */
+        boolean sendCachedBatch(DBQuery dbq) {
+            if (resultCache == null || txOpen || pendingWrites.get() > 0 || dbq.queries.length == 0 || dbq.atomic ||
+                dbq.readTxId != null) return false;
+
+            String[] cached = new String[dbq.queries.length];
+
+            for (int i = 0; i < dbq.queries.length; ++i) {
+                if (SQLiteAndroidDatabase.getQueryType(dbq.queries[i]) != SQLiteAndroidDatabase.QueryType.select)
+                    return false;
+                cached[i] = resultCache.get(dbq.queries[i], dbq.jsonparams[i]);
+                if (cached[i] == null) return false;
+            }
+
+            SQLiteJsonWriter out = new SQLiteJsonWriter();
+            out.beginArray();
+            for (int i = 0; i < cached.length; ++i) {
+                out.beginObject();
+                out.name("qid").value(dbq.queryIDs[i]);
+                out.name("type").value("success");
+                out.name("result").rawValue(cached[i]);
+                out.endObject();
+            }
+            out.endArray();
+
+            dbq.cbc.success(out.toMessage());
+            return true;
+        }
+
+        /**
+         * @return runtime statistics (in the plugin execute thread)
+         */
+        JSONObject getStats() throws JSONException {
+            JSONObject result = stats.toJSON(getQueueDepth());
+
+            SQLiteAndroidDatabase db = this.mydb;
+            SQLiteStatementCache statementCache = db instanceof SQLiteDatabaseNDK ? ((SQLiteDatabaseNDK)db).statementCache : null;
+            if (statementCache != null)
+                result.put("statementCache", statementCache.getStats());
+
+            if (resultCache != null)
+                result.put("resultCache", resultCache.getStats());
+
+            JSONObject lanes = new JSONObject();
+            for (int i = 0; i < SQLiteLaneQueue.LANE_NAMES.length; ++i) {
+                JSONObject lane = new JSONObject();
+                lane.put("queueDepth", q.size(i) + readq.size(i));
+                lane.put("promoted", q.getPromoted(i) + readq.getPromoted(i));
+                lane.put("queueWait", stats.laneWait[i].toJSON());
+                lanes.put(SQLiteLaneQueue.LANE_NAMES[i], lane);
+            }
+            result.put("lanes", lanes);
+
+            result.put("connectionOpen", this.mydb != null);
+            result.put("reopens", reopens.get());
+            result.put("readerPoolSize", readersStarted);
+            result.put("readerBatches", readerBatches.get());
+            return result;
+        }
+
+        /**
+         * Queue a native task from the plugin execute thread.
+         *
+         * @param readOnly   The task may be run by a reader (unless a transaction is open)
+         */
+        void queueTask(DBQuery dbq, boolean readOnly) throws InterruptedException {
+            if (!(readOnly && !txOpen && queueOnReaders(dbq)))
+                queueOnDbThread(dbq, !readOnly);
+        }
+
+        /**
+         * Queue a native task that must run in the db thread (such as a backup, or a blob I/O
+         * with a handle of the db thread connection), from the plugin execute thread.
+         *
+         * @param write   The task may write (such as a restore)
+         */
+        void queueDbTask(DBQuery dbq, boolean write) throws InterruptedException {
+            queueOnDbThread(dbq, write);
+        }
+
+        private void startReaders() {
+            readersDone = new CountDownLatch(readerPoolSize);
+            // NOTE: own threads, not the Cordova thread pool or the shared db threads:
+            for (int i = 0; i < readerPoolSize; ++i)
+                new Thread(new DBReader(this), "SQLitePlugin-reader-" + i).start();
+            synchronized (readerLock) {
+                readersStarted = readerPoolSize;
+            }
+        }
+
+        /**
+         * Stop the reader threads and wait for them to close their connections,
+         * then give the items still in the reader queue (if any) to the db thread.
+         */
+        private void stopReaders() {
+            int started;
+            synchronized (readerLock) {
+                // (nothing more is queued for the readers)
+                started = readersStarted;
+                readersStarted = 0;
+
+                // (the open read transactions are rolled back, and their next batches fail)
+                for (LinkedBlockingQueue<DBQuery> txq : readTxs.values())
+                    txq.add(new DBQuery());
+                readTxs.clear();
+            }
+            if (started == 0) return;
+
+            try {
+                for (int i = 0; i < started; ++i)
+                    readq.putLast(new DBQuery());
+                if (!readersDone.await(READER_BUSY_TIMEOUT, TimeUnit.MILLISECONDS))
+                    Log.w(SQLitePlugin.class.getSimpleName(), "reader threads did not stop in time");
+            } catch (InterruptedException e) {
+                Log.e(SQLitePlugin.class.getSimpleName(), "couldn't stop reader threads", e);
+            }
+
+            // (including the stop requests not taken by a reader)
+            DBQuery dbq;
+            while ((dbq = readq.poll()) != null) {
+                if (!dbq.stop) requeue(dbq);
+            }
+        }
+
+        /**
+         * @return {action: true} for each native action supported with this database,
+         *         and readerPool: true if it has reader connections
+         */
+        private JSONObject getFeatures() throws JSONException {
+            JSONObject features = new JSONObject();
+            for (Action action : Action.values()) {
+                // NOTE: incremental blob I/O is only supported by the sqlite4java (NDK) version.
+                if (!(mydb instanceof SQLiteDatabaseNDK) && action.name().startsWith("blob")) continue;
+                features.put(action.name(), true);
+            }
+            // (read transactions are run by the readers, see queueReadTx)
+            if (readersStarted > 0)
+                features.put("readerPool", true);
+            return features;
+        }
+
+        /**
+         * Open the connection (in the db thread), with the settings of this database.
+         *
+         * @return the open result
+         */
+        private JSONObject openNow() throws Exception {
+            JSONObject openResult = new JSONObject();
+
+            try {
+                this.mydb = openDatabase(dbname, this.createFromAssets, this.oldImpl, this.statementCacheSize, openResult, openCbc);
+                // (the assets are only checked by the first open)
+                this.createFromAssets = false;
+
+                if (performanceProfile != null)
+                    performanceProfile.apply(mydb);
+
+                // (the schema is only migrated by the first open)
+                if (migrator != null) {
+                    openResult.put("migrations", migrator.migrate(mydb));
+                    migrator = null;
+                }
+            } catch (Exception e) {
+                if (mydb != null) mydb.closeDatabaseNow();
+                mydb = null;
+                throw e;
+            }
+
+            mydb.columnarResults = this.columnarResults;
+            mydb.resultCache = this.resultCache;
+            mydb.stats = this.stats;
+            mydb.slowQueryLog = this.slowQueryLog;
+            // NOTE: binary results are only supported by the sqlite4java (NDK) version.
+            if (mydb instanceof SQLiteDatabaseNDK)
+                ((SQLiteDatabaseNDK)mydb).binaryResults = this.binaryResults;
+
+            if (readerPoolSize > 0) {
+                try {
+                    ((SQLiteDatabaseNDK)mydb).enableWAL();
+                    startReaders();
+                } catch (Exception e) {
+                    Log.e(SQLitePlugin.class.getSimpleName(), "couldn't start reader connections, using the db thread only", e);
+                }
+            }
+
+            // (the values in effect, also after journal_mode=WAL for the readers)
+            if (performanceProfile != null)
+                openResult.put("performanceProfile", SQLitePerformanceProfile.getEffectiveSettings(mydb));
+
+            // (for feature detection in Javascript, see db.hasNativeFeature())
+            openResult.put("features", getFeatures());
+
+            return openResult;
         }
 
+        /**
+         * One turn in the db thread: open the database (the first time), then run up to
+         * MAX_ITEMS_PER_TURN queued items, and let the other databases of this thread have a turn.
+         */
         public void run() {
+            if (stopped) return;
+
+            if (!opened) {
+                opened = true;
+                try {
+                    JSONObject result = openNow();
+                    openCbc.success(result);
+                    // (NOTE: not replaced by a reopen after idle close, which runs no migrations)
+                    sendOpenResult(result, null);
+                } catch (Exception e) {
+                    Log.e(SQLitePlugin.class.getSimpleName(), "unexpected error, stopping db runner", e);
+                    openCbc.error("can't open database " + e);
+                    stopped = true;
+                    sendOpenResult(null, "can't open database " + e);
+                    dbrmap.remove(dbname);
+                    SQLiteDbExecutor.release(worker);
+                    return;
+                }
+            }
+
+            DBQuery dbq;
+            for (int n = 0; n < MAX_ITEMS_PER_TURN && (dbq = q.poll()) != null; ++n) {
+                if (dbq.stop) {
+                    stopNow(dbq);
+                    return;
+                }
+
+                if (mydb == null) {
+                    // closed when idle:
+                    try {
+                        openNow();
+                        reopens.incrementAndGet();
+                    } catch (Exception e) {
+                        Log.e(SQLitePlugin.class.getSimpleName(), "couldn't reopen database", e);
+                        if (dbq.pendingWrite) pendingWrites.decrementAndGet();
+                        if (dbq.pagedId != null) pagedmap.remove(dbq.pagedId);
+                        dbq.cbc.error("can't reopen database " + e);
+                        continue;
+                    }
+                }
+
+                if (dbq.readTxId != null) {
+                    // (for the readers started again by the reopen)
+                    if (!queueReadTx(dbq))
+                        sendBatchError(dbq, "no reader connection for the read transaction");
+                    continue;
+                }
+
+                if (groupCommit && isGroupable(dbq)) {
+                    ArrayList<DBQuery> group = new ArrayList<DBQuery>();
+                    group.add(dbq);
+
+                    DBQuery next;
+                    while (group.size() < GROUP_COMMIT_MAX && (next = q.pollIf(groupable)) != null)
+                        group.add(next);
+
+                    if (group.size() > 1) {
+                        runGroup(group);
+                        continue;
+                    }
+                }
+
+                runQuery(dbq);
+            }
+
+            if (!waitingForTx.isEmpty() && mydb != null && !mydb.inTransaction()) {
+                for (DBQuery next : waitingForTx)
+                    q.put(next, next.lane, next.queuedAt);
+                waitingForTx.clear();
+            }
+
+            lastActive = System.nanoTime();
+
+            scheduled.set(false);
+            // (in case of more work, including work queued since the last poll)
+            if (q.size() > 0)
+                schedule();
+            else
+                scheduleIdleCheck(idleCloseMs);
+        }
+
+        private void runQuery(DBQuery dbq) {
             try {
-                this.mydb = openDatabase(dbname, this.createFromAssets, this.openCbc, this.oldImpl);
+                executeQuery(dbq, dbq.cbc);
             } catch (Exception e) {
-                Log.e(SQLitePlugin.class.getSimpleName(), "unexpected error, stopping db thread", e);
-                dbrmap.remove(dbname);
+                Log.e(SQLitePlugin.class.getSimpleName(), "unexpected error", e);
+            }
+
+            if (dbq.task instanceof SQLiteTask.Incremental && !((SQLiteTask.Incremental)dbq.task).isDone()) {
+                // next step after the work queued in the meantime (in its lane),
+                // or after the end of the open transaction:
+                dbq.queuedAt = System.nanoTime();
+                if (mydb.inTransaction())
+                    waitingForTx.add(dbq);
+                else
+                    q.put(dbq, dbq.lane, dbq.queuedAt);
                 return;
             }
 
-            DBQuery dbq = null;
+            finishQuery(dbq);
 
+            // (after the result is sent)
+            mydb.explainSlowQueries();
+        }
+
+        /**
+         * Run the item in the db thread, sending its result(s) via cbc.
+         */
+        private void executeQuery(DBQuery dbq, CallbackContext cbc) throws Exception {
+            mydb.queueWaitNanos = System.nanoTime() - dbq.queuedAt;
+            stats.queueWait.record(mydb.queueWaitNanos);
+            stats.laneWait[dbq.lane].record(mydb.queueWaitNanos);
+            // (batch only)
+            mydb.interrupt = dbq.interrupt;
+
+            if (dbq.pagedId != null) {
+                mydb.executeSqlPaged(dbq.queries[0], dbq.jsonparams[0], dbq.pageSize, dbq.stopped, cbc);
+                pagedmap.remove(dbq.pagedId);
+            } else if (dbq.bulkRows != null) {
+                mydb.executeBulk(dbq.queries[0], dbq.bulkRows, cbc);
+            } else if (dbq.task != null) {
+                dbq.task.run(mydb, cbc);
+            } else if (dbq.atomic) {
+                executeAtomic(dbq, cbc);
+                forgetInterrupt(dbq);
+            } else {
+                mydb.executeSqlBatch(dbq.queries, dbq.jsonparams, dbq.queryIDs, cbc);
+                forgetInterrupt(dbq);
+
+                // NOTE: androidLock[Bug]Workaround is not necessary and IGNORED for sqlite4java (NDK version).
+                if (this.bugWorkaround && dbq.queries.length == 1 && dbq.queries[0] == "COMMIT")
+                    mydb.bugWorkaround();
+            }
+        }
+
+        /**
+         * Run an atomic batch in one transaction (a savepoint with sqlite4java, so it may be nested),
+         * stopping at the first failed statement. The results are only sent if all statements
+         * succeeded (and the transaction was committed); otherwise the transaction is rolled back
+         * and the error is sent: { qid: "<failed statement>", index: i, message: "..." }
+         */
+        private void executeAtomic(DBQuery dbq, CallbackContext cbc) throws Exception {
+            SQLiteDeferredCallback results = new SQLiteDeferredCallback(cbc);
+
+            mydb.beginTransactionNow();
+
+            boolean ok = false;
             try {
-                dbq = q.take();
+                mydb.stopOnError = true;
+                mydb.batchErrorIndex = -1;
+                mydb.executeSqlBatch(dbq.queries, dbq.jsonparams, dbq.queryIDs, results);
+                ok = mydb.batchErrorIndex < 0;
+            } finally {
+                mydb.stopOnError = false;
+                mydb.endTransactionNow(ok);
+            }
 
-                while (!dbq.stop) {
-                    mydb.executeSqlBatch(dbq.queries, dbq.jsonparams, dbq.queryIDs, dbq.cbc);
+            if (ok) {
+                results.replay();
+            } else {
+                JSONObject er = new JSONObject();
+                er.put("qid", dbq.queryIDs[mydb.batchErrorIndex]);
+                er.put("index", mydb.batchErrorIndex);
+                er.put("message", mydb.batchErrorMessage);
+                if (dbq.interrupt != null && dbq.interrupt.isInterrupted())
+                    dbq.interrupt.putTo(er);
+                cbc.error(er);
+            }
+        }
 
-                    // NOTE: androidLock[Bug]Workaround is not necessary and IGNORED for sqlite4java (NDK version).
-                    if (this.bugWorkaround && dbq.queries.length == 1 && dbq.queries[0] == "COMMIT")
-                        mydb.bugWorkaround();
+        /**
+         * Invalidate the result cache (if the item may have written), after the item is done (or committed).
+         */
+        private void finishQuery(DBQuery dbq) {
+            if (!dbq.pendingWrite) return;
 
-                    dbq = q.take();
+            if (dbq.task != null) {
+                // (may have written to any table, or changed the schema)
+                resultCache.invalidateSchema();
+            } else {
+                for (String query : dbq.queries)
+                    resultCache.invalidate(query, mydb);
+            }
+
+            pendingWrites.decrementAndGet();
+        }
+
+        /**
+         * Send an error result for each statement of a batch that cannot be run.
+         */
+        void sendBatchError(DBQuery dbq, String message) {
+            SQLiteJsonWriter out = new SQLiteJsonWriter();
+            out.beginArray();
+            for (int i = 0; i < dbq.queries.length; ++i)
+                SQLiteAndroidDatabase.writeError(out, dbq.queryIDs[i], message, false);
+            out.endArray();
+            dbq.cbc.success(out.toMessage());
+        }
+
+        /**
+         * @return true if the item is a plain batch that only writes (INSERT, UPDATE, DELETE),
+         *         and may be part of a group commit
+         */
+        private boolean isGroupable(DBQuery dbq) {
+            // (a bulk statement or an atomic batch has its own transaction, and a batch with
+            // a timeout could interrupt the statements of the other items)
+            if (dbq.stop || dbq.pagedId != null || dbq.task != null || dbq.bulkRows != null ||
+                dbq.atomic || dbq.readTxId != null || dbq.interrupt != null || dbq.queries.length == 0) return false;
+
+            for (String query : dbq.queries) {
+                switch (SQLiteAndroidDatabase.getQueryType(query)) {
+                    case insert:
+                    case update:
+                    case delete:
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        private final SQLiteLaneQueue.Filter<DBQuery> groupable = new SQLiteLaneQueue.Filter<DBQuery>() {
+            public boolean accept(DBQuery dbq) {
+                return isGroupable(dbq);
+            }
+        };
+
+        /**
+         * Run adjacent write-only items in one transaction (sqlite4java only), each in its own
+         * savepoint, and send their results after the commit.
+         *
+         * The group stops at the first failed statement, so no statement is run after an error
+         * that rolled back the whole transaction (such as SQLITE_FULL or SQLITE_IOERR), which would
+         * be committed on its own. If a statement fails or the transaction cannot be committed,
+         * none of the items is committed, and all of them are run again one by one
+         * (so a failed statement gets its usual error result).
+         */
+        private void runGroup(ArrayList<DBQuery> group) {
+            SQLiteDatabaseNDK ndk = (SQLiteDatabaseNDK)mydb;
+            SQLiteDeferredCallback[] results = new SQLiteDeferredCallback[group.size()];
+            long start = System.nanoTime();
+
+            try {
+                ndk.beginSavepointNow("grouped");
+
+                try {
+                    for (int i = 0; i < group.size(); ++i) {
+                        DBQuery dbq = group.get(i);
+                        results[i] = new SQLiteDeferredCallback(dbq.cbc);
+
+                        ndk.beginSavepointNow("batch");
+                        boolean ok = false;
+                        try {
+                            ndk.stopOnError = true;
+                            ndk.batchErrorIndex = -1;
+                            executeQuery(dbq, results[i]);
+                            ok = ndk.batchErrorIndex < 0;
+                        } finally {
+                            ndk.stopOnError = false;
+                            // (unless an error rolled back the whole transaction)
+                            if (ndk.inTransaction()) ndk.endSavepointNow("batch", ok);
+                        }
+
+                        if (!ok)
+                            throw new IllegalStateException("statement " + ndk.batchErrorIndex + " failed: " + ndk.batchErrorMessage);
+                        if (!ndk.inTransaction())
+                            throw new IllegalStateException("the transaction was rolled back");
+                    }
+
+                    ndk.endSavepointNow("grouped", true);
+                } catch (Exception e) {
+                    if (ndk.inTransaction()) ndk.endSavepointNow("grouped", false);
+                    throw e;
                 }
             } catch (Exception e) {
-                Log.e(SQLitePlugin.class.getSimpleName(), "unexpected error", e);
+                Log.w(SQLitePlugin.class.getSimpleName(), "group commit failed, running " + group.size() + " items one by one", e);
+                // (nothing was committed: the items were only run inside the transaction)
+                ndk.slowQueries.clear();
+                for (DBQuery dbq : group)
+                    runQuery(dbq);
+                return;
+            }
+
+            stats.groupCommit.record(System.nanoTime() - start);
+            stats.groupCommitItems.addAndGet(group.size());
+
+            for (int i = 0; i < group.size(); ++i) {
+                results[i].replay();
+                finishQuery(group.get(i));
             }
 
-            if (dbq != null && dbq.close) {
+            // (after the results are sent)
+            mydb.explainSlowQueries();
+        }
+
+        /**
+         * Check for idle time in the db thread after delayMs (if idleCloseMs is set).
+         */
+        private void scheduleIdleCheck(long delayMs) {
+            if (idleCloseMs == 0 || idleCheckPending || mydb == null) return;
+
+            idleCheckPending = true;
+            worker.schedule(new Runnable() {
+                public void run() {
+                    idleCheckPending = false;
+                    closeIfIdle();
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Close the connection (in the db thread) if idle for idleCloseMs,
+         * with no open transaction (or read transaction) and no work for the readers.
+         */
+        private void closeIfIdle() {
+            if (stopped || mydb == null || q.size() > 0) return;
+
+            long idleMs = (System.nanoTime() - lastActive) / 1000000L;
+            if (idleMs < idleCloseMs || mydb.inTransaction() || readq.size() > 0 || hasReadTxs() ||
+                (mydb instanceof SQLiteDatabaseNDK && !((SQLiteDatabaseNDK)mydb).openBlobs.isEmpty())) {
+                scheduleIdleCheck(Math.max(1, idleCloseMs - idleMs));
+                return;
+            }
+
+            Log.v(SQLitePlugin.class.getSimpleName(), "closing idle database: " + dbname);
+            stopReaders();
+            mydb.closeDatabaseNow();
+            mydb = null;
+        }
+
+        /**
+         * Close (and possibly delete) the database in the db thread, and stop this runner.
+         */
+        private void stopNow(DBQuery dbq) {
+            stopped = true;
+
+            stopReaders();
+
+            for (DBQuery waiting : waitingForTx)
+                waiting.cbc.error("database closed");
+            waitingForTx.clear();
+
+            if (dbq.close) {
                 try {
                     closeDatabaseNow(dbname);
 
@@ -648,6 +2445,147 @@ public class SQLitePlugin extends CordovaPlugin {
                     }
                 }
             }
+
+            SQLiteDbExecutor.release(worker);
+        }
+    }
+
+    /**
+     * Reader thread with its own read-only connection, taking SELECT-only batches
+     * from the shared reader queue of a DBRunner.
+     */
+    private class DBReader implements Runnable {
+        final DBRunner runner;
+
+        DBReader(DBRunner runner) {
+            this.runner = runner;
+        }
+
+        public void run() {
+            SQLiteDatabaseNDK mydb = new SQLiteDatabaseNDK(runner.statementCacheSize, true);
+            mydb.columnarResults = runner.columnarResults;
+            mydb.binaryResults = runner.binaryResults;
+            mydb.resultCache = runner.resultCache;
+            mydb.stats = runner.stats;
+            mydb.slowQueryLog = runner.slowQueryLog;
+
+            try {
+                mydb.open(getDatabasePath(runner.dbname));
+                // (cache_size, mmap_size and temp_store are settings of each connection)
+                if (runner.performanceProfile != null)
+                    runner.performanceProfile.applyToReader(mydb);
+            } catch (Exception e) {
+                Log.e(SQLitePlugin.class.getSimpleName(), "couldn't open reader connection", e);
+                if (mydb != null) mydb.closeDatabaseNow();
+                mydb = null;
+            }
+
+            try {
+                DBQuery dbq = runner.readq.take();
+
+                while (!dbq.stop) {
+                    long queueWait = recordQueueWait(dbq);
+
+                    if (mydb == null) {
+                        if (dbq.readTxId != null) {
+                            // (a read transaction cannot be run by the db thread)
+                            LinkedBlockingQueue<DBQuery> txq = runner.getReadTx(dbq.readTxId);
+                            if (txq != null) runner.endReadTx(dbq.readTxId, txq);
+                            runner.sendBatchError(dbq, "no reader connection for the read transaction");
+                        } else {
+                            // give it back to the db thread:
+                            runner.requeue(dbq);
+                        }
+                    } else if (dbq.pagedId != null) {
+                        mydb.executeSqlPaged(dbq.queries[0], dbq.jsonparams[0], dbq.pageSize, dbq.stopped, dbq.cbc);
+                        pagedmap.remove(dbq.pagedId);
+                        runner.readerBatches.incrementAndGet();
+                    } else if (dbq.task != null) {
+                        dbq.task.run(mydb, dbq.cbc);
+                        runner.readerBatches.incrementAndGet();
+                    } else if (dbq.readTxId != null) {
+                        runReadTx(mydb, dbq, queueWait);
+                    } else {
+                        runBatch(mydb, dbq, queueWait);
+                    }
+
+                    dbq = runner.readq.take();
+                }
+            } catch (Exception e) {
+                Log.e(SQLitePlugin.class.getSimpleName(), "unexpected error in reader thread", e);
+            }
+
+            if (mydb != null)
+                mydb.closeDatabaseNow();
+
+            runner.readersDone.countDown();
+        }
+
+        private long recordQueueWait(DBQuery dbq) {
+            long queueWait = System.nanoTime() - dbq.queuedAt;
+            runner.stats.queueWait.record(queueWait);
+            runner.stats.laneWait[dbq.lane].record(queueWait);
+            return queueWait;
+        }
+
+        private void runBatch(SQLiteDatabaseNDK mydb, DBQuery dbq, long queueWait) throws Exception {
+            mydb.queueWaitNanos = queueWait;
+            mydb.interrupt = dbq.interrupt;
+            mydb.executeSqlBatch(dbq.queries, dbq.jsonparams, dbq.queryIDs, dbq.cbc);
+            runner.forgetInterrupt(dbq);
+            runner.readerBatches.incrementAndGet();
+            // (after the result is sent)
+            mydb.explainSlowQueries();
+        }
+
+        /**
+         * Run a read transaction, from its first batch (with BEGIN) to the one with COMMIT or ROLLBACK,
+         * on this connection, so that all of its batches read the same snapshot.
+         * The transaction is rolled back if the readers are stopped, or if its next batch does not
+         * come within READ_TX_TIMEOUT (such as after a page reload).
+         */
+        private void runReadTx(SQLiteDatabaseNDK mydb, DBQuery dbq, long queueWait) throws Exception {
+            String readTxId = dbq.readTxId;
+            LinkedBlockingQueue<DBQuery> txq = runner.getReadTx(readTxId);
+
+            // (not the start of the transaction: ended by stopReaders, or after a timeout)
+            if (txq == null || SQLiteAndroidDatabase.getQueryType(dbq.queries[0]) != SQLiteAndroidDatabase.QueryType.begin) {
+                if (txq != null) runner.endReadTx(readTxId, txq);
+                runner.sendBatchError(dbq, "read transaction ended");
+                return;
+            }
+
+            for (;;) {
+                runBatch(mydb, dbq, queueWait);
+                if (isReadTxEnd(dbq)) break;
+
+                dbq = txq.poll(READ_TX_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (dbq == null) dbq = runner.endReadTx(readTxId, txq);
+                if (dbq == null) {
+                    Log.w(SQLitePlugin.class.getSimpleName(), "read transaction not ended in time, rolled back");
+                    mydb.rollbackNow();
+                    return;
+                }
+                if (dbq.stop) {
+                    mydb.rollbackNow();
+                    return;
+                }
+
+                queueWait = recordQueueWait(dbq);
+            }
+
+            runner.endReadTx(readTxId, txq);
+            // (if the COMMIT failed)
+            mydb.rollbackNow();
+        }
+
+        private boolean isReadTxEnd(DBQuery dbq) {
+            for (String query : dbq.queries) {
+                SQLiteAndroidDatabase.QueryType queryType = SQLiteAndroidDatabase.getQueryType(query);
+                if (queryType == SQLiteAndroidDatabase.QueryType.commit || queryType == SQLiteAndroidDatabase.QueryType.rollback)
+                    return true;
+            }
+            return false;
         }
     }
 
@@ -661,6 +2599,35 @@ public class SQLitePlugin extends CordovaPlugin {
         final JSONArray[] jsonparams;
         final CallbackContext cbc;
 
+        // paged query only:
+        final String pagedId;
+        final int pageSize;
+        final AtomicBoolean stopped;
+
+        // bulk statement only:
+        final JSONArray bulkRows;
+
+        // native task (such as a file import) only:
+        final SQLiteTask task;
+
+        // set (in the plugin execute thread) if counted in DBRunner.pendingWrites:
+        boolean pendingWrite = false;
+
+        // for the queue wait time (set again when the next step of an incremental task is queued):
+        long queuedAt = System.nanoTime();
+
+        // priority lane (SQLiteLaneQueue), set before it is queued:
+        int lane = SQLiteLaneQueue.NORMAL;
+
+        // batch only: run in one transaction (see DBRunner.executeAtomic), set before it is queued:
+        boolean atomic = false;
+
+        // batch only: id of its read transaction, run by one reader (see DBRunner.queueReadTx), set before it is queued:
+        String readTxId = null;
+
+        // batch only: timeout and cancel (see DBRunner.setInterrupt), set before it is queued:
+        SQLiteInterrupt interrupt = null;
+
         DBQuery(String[] myqueries, String[] qids, JSONArray[] params, CallbackContext c) {
             this.stop = false;
             this.close = false;
@@ -669,6 +2636,56 @@ public class SQLitePlugin extends CordovaPlugin {
             this.queryIDs = qids;
             this.jsonparams = params;
             this.cbc = c;
+            this.pagedId = null;
+            this.pageSize = 0;
+            this.stopped = null;
+            this.bulkRows = null;
+            this.task = null;
+        }
+
+        DBQuery(String query, JSONArray params, int pageSize, String pagedId, AtomicBoolean stopped, CallbackContext c) {
+            this.stop = false;
+            this.close = false;
+            this.delete = false;
+            this.queries = new String[] { query };
+            this.queryIDs = null;
+            this.jsonparams = new JSONArray[] { params };
+            this.cbc = c;
+            this.pagedId = pagedId;
+            this.pageSize = pageSize;
+            this.stopped = stopped;
+            this.bulkRows = null;
+            this.task = null;
+        }
+
+        DBQuery(String query, JSONArray rows, CallbackContext c) {
+            this.stop = false;
+            this.close = false;
+            this.delete = false;
+            this.queries = new String[] { query };
+            this.queryIDs = null;
+            this.jsonparams = null;
+            this.cbc = c;
+            this.pagedId = null;
+            this.pageSize = 0;
+            this.stopped = null;
+            this.bulkRows = rows;
+            this.task = null;
+        }
+
+        DBQuery(SQLiteTask task, CallbackContext c) {
+            this.stop = false;
+            this.close = false;
+            this.delete = false;
+            this.queries = new String[0];
+            this.queryIDs = null;
+            this.jsonparams = null;
+            this.cbc = c;
+            this.pagedId = null;
+            this.pageSize = 0;
+            this.stopped = null;
+            this.bulkRows = null;
+            this.task = task;
         }
 
         DBQuery(boolean delete, CallbackContext cbc) {
@@ -679,6 +2696,11 @@ public class SQLitePlugin extends CordovaPlugin {
             this.queryIDs = null;
             this.jsonparams = null;
             this.cbc = cbc;
+            this.pagedId = null;
+            this.pageSize = 0;
+            this.stopped = null;
+            this.bulkRows = null;
+            this.task = null;
         }
 
         // signal the DBRunner thread to stop:
@@ -690,6 +2712,11 @@ public class SQLitePlugin extends CordovaPlugin {
             this.queryIDs = null;
             this.jsonparams = null;
             this.cbc = null;
+            this.pagedId = null;
+            this.pageSize = 0;
+            this.stopped = null;
+            this.bulkRows = null;
+            this.task = null;
         }
     }
 
@@ -699,6 +2726,21 @@ public class SQLitePlugin extends CordovaPlugin {
         delete,
         executeSqlBatch,
         backgroundExecuteSqlBatch,
+        executeSqlPaged,
+        stopPaged,
+        cancel,
+        executeBulk,
+        importFile,
+        createSearchIndex,
+        search,
+        getStats,
+        getSlowQueries,
+        backup,
+        restore,
+        blobOpen,
+        blobRead,
+        blobWrite,
+        blobClose,
     }
 }
 
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Cache of SELECT results, keyed by SQL text and parameters, bounded by an
+ * estimated size in bytes (LRU).
+ *
+ * Each entry remembers the words of its query (which include the names of
+ * the tables it reads), and is invalidated by a write to any of these tables
+ * (INSERT, UPDATE, DELETE). A write to a table with a trigger (which may
+ * write to other tables, such as a search index) or read by a view (named
+ * in a query instead of the table), and any other statement that is not
+ * a SELECT (such as DDL, ROLLBACK, PRAGMA), invalidates all entries.
+ *
+ * The writes of a transaction are invalidated again by its COMMIT: until then,
+ * a reader connection reads (and may cache) the rows from before the transaction.
+ *
+ * Only a SELECT that reads a table (FROM) and calls no function with a result
+ * that changes without a write (such as random(), changes(), last_insert_rowid()
+ * or datetime('now')) is cached.
+ *
+ * NOTE: thread-safe, shared by the plugin execute thread (lookups),
+ * the db thread and the reader threads.
+ */
+class SQLiteResultCache
+{
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}_$]+");
+
+    private static final Pattern WRITE_TABLE = Pattern.compile(
+        "^\\s*(?:INSERT(?:\\s+OR\\s+\\w+)?\\s+INTO|UPDATE(?:\\s+OR\\s+\\w+)?|DELETE\\s+FROM)\\s+" +
+        "(?:[\"`\\[]?[\\p{L}\\p{N}_$]+[\"`\\]]?\\s*\\.\\s*)?[\"`\\[]?([\\p{L}\\p{N}_$]+)",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern FROM = Pattern.compile("\\bFROM\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern NOT_DETERMINISTIC = Pattern.compile(
+        "\\b(?:random|randomblob|changes|total_changes|last_insert_rowid)\\s*\\(|" +
+        "\\bcurrent_(?:date|time|timestamp)\\b|'\\s*now\\s*'",
+        Pattern.CASE_INSENSITIVE);
+
+    private static class Entry {
+        final String result;
+        final HashSet<String> words;
+        final long size;
+
+        Entry(String result, HashSet<String> words, long size) {
+            this.result = result;
+            this.words = words;
+            this.size = size;
+        }
+    }
+
+    private final long maxBytes;
+    private long bytes = 0;
+    private long generation = 0;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    // (lowercase) names of the tables with triggers or read by views, or null if not read
+    // since the last schema change (only used in the db thread, see invalidate()):
+    private HashSet<String> dependentTables = null;
+
+    // (lowercase) names of the tables written in the open transaction, or all of them,
+    // to be invalidated again by its COMMIT (only used in the db thread):
+    private final HashSet<String> txTables = new HashSet<String>();
+    private boolean txAllTables = false;
+
+    /**
+     * @param maxBytes   Maximum (estimated) size of all cached results
+     */
+    SQLiteResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        // access-order for LRU:
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    private static String key(String query, JSONArray params) {
+        return query + '\u0000' + (params == null ? "[]" : params.toString());
+    }
+
+    private static HashSet<String> words(String query) {
+        HashSet<String> words = new HashSet<String>();
+        Matcher m = WORD.matcher(query.toLowerCase(Locale.US));
+        while (m.find())
+            words.add(m.group());
+        return words;
+    }
+
+    /**
+     * @return true if the result of a SELECT only changes with a write to a table it reads
+     */
+    private static boolean isCacheable(String query, JSONArray params) {
+        if (!FROM.matcher(query).find() || NOT_DETERMINISTIC.matcher(query).find()) return false;
+
+        // (such as datetime(?) with 'now')
+        if (params != null) {
+            for (int i = 0; i < params.length(); ++i) {
+                if (params.optString(i).trim().equalsIgnoreCase("now")) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the cached result of a SELECT (JSON text), or null
+     */
+    synchronized String get(String query, JSONArray params) {
+        Entry e = entries.get(key(query, params));
+        if (e == null) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        return e.result;
+    }
+
+    /**
+     * To be called before a SELECT is executed, and given to put().
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache the result of a SELECT, unless there was an invalidation since
+     * the SELECT was started (the result may be stale), or it is not cacheable.
+     *
+     * @param result   The result (JSON text)
+     */
+    synchronized void put(String query, JSONArray params, String result, long startGeneration) {
+        if (startGeneration != generation || !isCacheable(query, params)) return;
+
+        String k = key(query, params);
+        // estimated size of the Java strings:
+        long size = 2L * (k.length() + result.length());
+        if (size > maxBytes / 4) return;
+
+        Entry old = entries.put(k, new Entry(result, words(query), size));
+        if (old != null) bytes -= old.size;
+        bytes += size;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().size;
+            it.remove();
+            ++evictions;
+        }
+    }
+
+    /**
+     * Invalidate the entries that may be changed by a statement (if not a SELECT),
+     * in the db thread, after the batch of the statement is done.
+     *
+     * @param mydb   The database written by the statement (to read its triggers and views)
+     */
+    void invalidate(String query, SQLiteAndroidDatabase mydb) {
+        SQLiteAndroidDatabase.QueryType queryType = SQLiteAndroidDatabase.getQueryType(query);
+
+        switch (queryType) {
+            case select:
+            case begin:
+                return;
+
+            case commit:
+                invalidateCommitted();
+                return;
+
+            case rollback:
+                txTables.clear();
+                txAllTables = false;
+                invalidateSchema();
+                return;
+
+            case insert:
+            case update:
+            case delete:
+                Matcher m = WRITE_TABLE.matcher(query);
+                HashSet<String> dependents = getDependentTables(mydb);
+                if (m.find() && dependents != null) {
+                    String table = m.group(1).toLowerCase(Locale.US);
+                    if (!dependents.contains(table)) {
+                        invalidateTable(table);
+                        if (mydb.inTransaction()) txTables.add(table);
+                        return;
+                    }
+                }
+                // (table not found, or with triggers or views: invalidate all)
+                invalidateAll();
+                if (mydb.inTransaction()) txAllTables = true;
+                return;
+
+            default:
+                invalidateSchema();
+                if (mydb.inTransaction()) txAllTables = true;
+        }
+    }
+
+    /**
+     * Invalidate the tables written in the transaction, at its COMMIT: a reader may have
+     * cached their rows from before the transaction since they were invalidated by the writes.
+     */
+    private void invalidateCommitted() {
+        if (txAllTables) {
+            invalidateAll();
+        } else {
+            for (String table : txTables)
+                invalidateTable(table);
+        }
+        txTables.clear();
+        txAllTables = false;
+    }
+
+    /**
+     * Invalidate all entries, after a statement or task that may have changed the schema
+     * (in the db thread).
+     */
+    void invalidateSchema() {
+        dependentTables = null;
+        invalidateAll();
+    }
+
+    /**
+     * @return the (lowercase) names of the tables with triggers, or named in the SQL of a view,
+     *         or null if sqlite_master could not be read
+     */
+    private HashSet<String> getDependentTables(SQLiteAndroidDatabase mydb) {
+        if (dependentTables != null) return dependentTables;
+
+        try {
+            JSONArray rows = mydb.queryRows("SELECT type, tbl_name, sql FROM sqlite_master WHERE type IN ('trigger', 'view')",
+                new JSONArray());
+
+            HashSet<String> tables = new HashSet<String>();
+            for (int i = 0; i < rows.length(); ++i) {
+                JSONArray row = rows.getJSONArray(i);
+                if (row.getString(0).equals("trigger"))
+                    tables.add(row.getString(1).toLowerCase(Locale.US));
+                else
+                    tables.addAll(words(row.optString(2, "")));
+            }
+            dependentTables = tables;
+        } catch (Exception ex) {
+            Log.v(SQLiteResultCache.class.getSimpleName(), "could not read triggers & views: " + ex.getMessage());
+        }
+        return dependentTables;
+    }
+
+    synchronized void invalidateTable(String table) {
+        ++generation;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.words.contains(table)) {
+                bytes -= e.size;
+                it.remove();
+                ++invalidations;
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        ++generation;
+        invalidations += entries.size();
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        return stats;
+    }
+} /* vim: set expandtab : */
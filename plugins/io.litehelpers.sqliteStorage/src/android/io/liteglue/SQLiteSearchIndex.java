@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.util.Log;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.apache.cordova.CallbackContext;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Full-text search index: an FTS4 shadow table (<table>_fts) over some text
+ * columns of a table, with docid = rowid of the table, kept in sync by triggers.
+ *
+ * The unicode61 tokenizer (which removes diacritics) is used if available;
+ * otherwise the simple tokenizer is used and the indexed text is folded
+ * (lower case, Portuguese accents removed) by the triggers. Search terms are
+ * always folded in Java, and each one is a prefix query.
+ */
+class SQLiteSearchIndex
+{
+    static final int DEFAULT_LIMIT = 20;
+    static final int DEFAULT_SNIPPET_TOKENS = 15;
+
+    /**
+     * Default weight of the first indexed column (such as the name) in the rank,
+     * the other columns have weight 1.
+     */
+    static final double DEFAULT_FIRST_COLUMN_WEIGHT = 4.0;
+
+    private static final int MAX_TERMS = 16;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Accented characters (upper and lower case) and their folded form,
+     * for the simple tokenizer (SQLite lower() only folds ASCII).
+     */
+    private static final String[][] FOLD = {
+        { "\u00e1\u00e0\u00e2\u00e3\u00e4\u00c1\u00c0\u00c2\u00c3\u00c4", "a" },
+        { "\u00e9\u00e8\u00ea\u00eb\u00c9\u00c8\u00ca\u00cb", "e" },
+        { "\u00ed\u00ec\u00ee\u00ef\u00cd\u00cc\u00ce\u00cf", "i" },
+        { "\u00f3\u00f2\u00f4\u00f5\u00f6\u00d3\u00d2\u00d4\u00d5\u00d6", "o" },
+        { "\u00fa\u00f9\u00fb\u00fc\u00da\u00d9\u00db\u00dc", "u" },
+        { "\u00e7\u00c7", "c" },
+        { "\u00f1\u00d1", "n" },
+    };
+
+    static String indexName(String table) {
+        return table + "_fts";
+    }
+
+    static String quoteName(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * @return the text folded for search: lower case, without accents
+     */
+    static String fold(String text) {
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return the MATCH expression for the search text (each term as a prefix),
+     *         or null if there are no terms
+     */
+    static String buildMatch(String text) {
+        StringBuilder match = new StringBuilder();
+        int terms = 0;
+
+        for (String term : NON_WORD.split(fold(text))) {
+            if (term.length() == 0) continue;
+            if (terms++ == MAX_TERMS) break;
+            if (match.length() > 0) match.append(' ');
+            match.append(term).append('*');
+        }
+
+        return terms == 0 ? null : match.toString();
+    }
+
+    /**
+     * @return SQL expression with the folded value of a column, for the simple tokenizer
+     */
+    private static String foldExpression(String column) {
+        String e = "lower(" + column + ")";
+        for (String[] f : FOLD)
+            for (int i = 0; i < f[0].length(); ++i)
+                e = "replace(" + e + ",'" + f[0].charAt(i) + "','" + f[1] + "')";
+        return e;
+    }
+
+    /**
+     * Create (or rebuild) the search index of a table with its triggers.
+     *
+     * Result: { index: "<table>_fts", tokenizer: "unicode61" or "simple", created: true/false }
+     */
+    static class Create implements SQLiteTask {
+        private final String table;
+        private final String[] columns;
+        private final boolean rebuild;
+
+        /**
+         * @param table    The table to index
+         * @param columns  The text columns to index
+         * @param rebuild  Drop and rebuild an existing index (such as after changing the columns)
+         */
+        Create(String table, JSONArray columns, boolean rebuild) throws JSONException {
+            if (columns.length() == 0)
+                throw new IllegalArgumentException("no columns");
+
+            this.table = table;
+            this.columns = new String[columns.length()];
+            for (int i = 0; i < this.columns.length; ++i)
+                this.columns[i] = columns.getString(i);
+            this.rebuild = rebuild;
+        }
+
+        public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+            try {
+                JSONObject result;
+
+                mydb.beginTransactionNow();
+                boolean ok = false;
+                try {
+                    result = create(mydb);
+                    ok = true;
+                } finally {
+                    mydb.endTransactionNow(ok);
+                }
+
+                cbc.success(result);
+            } catch (Exception ex) {
+                Log.v("createSearchIndex", "SQLiteSearchIndex.Create: Error=" + ex.getMessage());
+                cbc.error("couldn't create search index: " + ex.getMessage());
+            }
+        }
+
+        private JSONObject create(SQLiteAndroidDatabase mydb) throws Exception {
+            String index = indexName(table);
+            String qindex = quoteName(index);
+            String qtable = quoteName(table);
+
+            JSONArray existing = mydb.queryRows("SELECT sql FROM sqlite_master WHERE type='table' AND name=?",
+                new JSONArray().put(index));
+
+            if (existing.length() > 0 && rebuild) {
+                mydb.queryRows("DROP TABLE " + qindex, new JSONArray());
+                for (String suffix : new String[] { "_ai", "_ad", "_au" })
+                    mydb.queryRows("DROP TRIGGER IF EXISTS " + quoteName(index + suffix), new JSONArray());
+                existing = new JSONArray();
+            }
+
+            boolean created = existing.length() == 0;
+            boolean unicode;
+
+            StringBuilder cols = new StringBuilder();
+            for (String column : columns)
+                cols.append(cols.length() == 0 ? "" : ", ").append(quoteName(column));
+
+            if (created) {
+                try {
+                    mydb.queryRows("CREATE VIRTUAL TABLE " + qindex + " USING fts4(" + cols + ", tokenize=unicode61)",
+                        new JSONArray());
+                    unicode = true;
+                } catch (Exception ex) {
+                    Log.v("createSearchIndex", "unicode61 tokenizer not available, using simple tokenizer with folding");
+                    mydb.queryRows("CREATE VIRTUAL TABLE " + qindex + " USING fts4(" + cols + ")", new JSONArray());
+                    unicode = false;
+                }
+            } else {
+                unicode = existing.getJSONArray(0).optString(0).contains("unicode61");
+            }
+
+            String insertNew = "INSERT INTO " + qindex + " (docid, " + cols + ") VALUES (new.rowid" + values("new.", unicode) + ");";
+            String deleteOld = "DELETE FROM " + qindex + " WHERE docid = old.rowid;";
+
+            mydb.queryRows("CREATE TRIGGER IF NOT EXISTS " + quoteName(index + "_ai") + " AFTER INSERT ON " + qtable +
+                " BEGIN " + insertNew + " END", new JSONArray());
+            mydb.queryRows("CREATE TRIGGER IF NOT EXISTS " + quoteName(index + "_ad") + " AFTER DELETE ON " + qtable +
+                " BEGIN " + deleteOld + " END", new JSONArray());
+            mydb.queryRows("CREATE TRIGGER IF NOT EXISTS " + quoteName(index + "_au") + " AFTER UPDATE ON " + qtable +
+                " BEGIN " + deleteOld + " " + insertNew + " END", new JSONArray());
+
+            if (created)
+                mydb.queryRows("INSERT INTO " + qindex + " (docid, " + cols + ") SELECT rowid" + values("", unicode) +
+                    " FROM " + qtable, new JSONArray());
+
+            JSONObject result = new JSONObject();
+            result.put("index", index);
+            result.put("tokenizer", unicode ? "unicode61" : "simple");
+            result.put("created", created);
+            return result;
+        }
+
+        private String values(String prefix, boolean unicode) {
+            StringBuilder v = new StringBuilder();
+            for (String column : columns) {
+                String c = prefix + quoteName(column);
+                v.append(", ").append(unicode ? c : foldExpression(c));
+            }
+            return v.toString();
+        }
+    }
+
+    /**
+     * Search the index of a table, ranked by the (weighted) number of hits per column.
+     *
+     * Result: { total: n, results: [{id: rowid, rank: r, snippet: "..."}, ...] }
+     */
+    static class Search implements SQLiteTask {
+        private final String table;
+        private final String match;
+        private final int limit;
+        private final int offset;
+        private final double[] weights;
+        private final JSONArray snippetParams;
+
+        /**
+         * @param table    The indexed table
+         * @param text     The search text
+         * @param options  Optional limit, offset, weights (per indexed column),
+         *                 snippetStart, snippetEnd, snippetEllipsis, snippetTokens
+         */
+        Search(String table, String text, JSONObject options) throws JSONException {
+            this.table = table;
+            this.match = buildMatch(text);
+            this.limit = Math.max(1, options.optInt("limit", DEFAULT_LIMIT));
+            this.offset = Math.max(0, options.optInt("offset", 0));
+
+            JSONArray w = options.optJSONArray("weights");
+            if (w != null) {
+                weights = new double[w.length()];
+                for (int i = 0; i < weights.length; ++i)
+                    weights[i] = w.getDouble(i);
+            } else {
+                weights = new double[] { DEFAULT_FIRST_COLUMN_WEIGHT };
+            }
+
+            snippetParams = new JSONArray();
+            snippetParams.put(options.optString("snippetStart", "<b>"));
+            snippetParams.put(options.optString("snippetEnd", "</b>"));
+            snippetParams.put(options.optString("snippetEllipsis", "..."));
+            snippetParams.put(options.optInt("snippetTokens", DEFAULT_SNIPPET_TOKENS));
+            snippetParams.put(match);
+        }
+
+        public void run(SQLiteAndroidDatabase mydb, CallbackContext cbc) {
+            try {
+                cbc.success(search(mydb));
+            } catch (Exception ex) {
+                Log.v("search", "SQLiteSearchIndex.Search: Error=" + ex.getMessage());
+                cbc.error("search failed: " + ex.getMessage());
+            }
+        }
+
+        private JSONObject search(SQLiteAndroidDatabase mydb) throws Exception {
+            JSONObject result = new JSONObject();
+            JSONArray results = new JSONArray();
+
+            if (match == null) {
+                result.put("total", 0);
+                result.put("results", results);
+                return result;
+            }
+
+            String qindex = quoteName(indexName(table));
+
+            JSONArray rows = mydb.queryRows("SELECT docid, offsets(" + qindex + ") FROM " + qindex +
+                " WHERE " + qindex + " MATCH ?", new JSONArray().put(match));
+
+            final int total = rows.length();
+            final long[] ids = new long[total];
+            final double[] ranks = new double[total];
+            Integer[] order = new Integer[total];
+
+            for (int i = 0; i < total; ++i) {
+                JSONArray row = rows.getJSONArray(i);
+                ids[i] = row.getLong(0);
+                ranks[i] = rank(row.getString(1));
+                order[i] = i;
+            }
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    if (ranks[a] != ranks[b]) return ranks[a] > ranks[b] ? -1 : 1;
+                    return ids[a] < ids[b] ? -1 : (ids[a] == ids[b] ? 0 : 1);
+                }
+            });
+
+            int end = Math.min(total, offset + limit);
+
+            if (offset < end) {
+                StringBuilder idList = new StringBuilder();
+                for (int i = offset; i < end; ++i)
+                    idList.append(i == offset ? "" : ",").append(ids[order[i]]);
+
+                JSONArray snippetRows = mydb.queryRows("SELECT docid, snippet(" + qindex + ", ?, ?, ?, -1, ?) FROM " +
+                    qindex + " WHERE " + qindex + " MATCH ? AND docid IN (" + idList + ")", snippetParams);
+
+                HashMap<Long, String> snippets = new HashMap<Long, String>();
+                for (int i = 0; i < snippetRows.length(); ++i) {
+                    JSONArray row = snippetRows.getJSONArray(i);
+                    snippets.put(row.getLong(0), row.optString(1));
+                }
+
+                for (int i = offset; i < end; ++i) {
+                    JSONObject r = new JSONObject();
+                    r.put("id", ids[order[i]]);
+                    r.put("rank", ranks[order[i]]);
+                    r.put("snippet", snippets.get(ids[order[i]]));
+                    results.put(r);
+                }
+            }
+
+            result.put("total", total);
+            result.put("results", results);
+            return result;
+        }
+
+        /**
+         * @param offsets  Result of the FTS offsets() function:
+         *                 "column term byteOffset size" for each hit
+         */
+        private double rank(String offsets) {
+            double rank = 0;
+            String[] parts = offsets.split(" ");
+
+            for (int i = 0; i + 3 < parts.length; i += 4) {
+                int column = Integer.parseInt(parts[i]);
+                rank += column < weights.length ? weights[column] : 1.0;
+            }
+
+            return rank;
+        }
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Bounded ring buffer of slow statements (slower than a threshold).
+ *
+ * Each entry:
+ *   { time: epoch ms, sql: "...", params: ["integer", "text(12)", ...], execMs: t, queueWaitMs: t,
+ *     rows: n, rowsAffected: n, error: "..." (if any), plan: ["SCAN TABLE ...", ...], fullScan: true/false }
+ *
+ * The query plan is added later by explainPending(), in the same db (or reader)
+ * thread but after the batch result has been sent.
+ *
+ * NOTE: shared by the db thread, the reader threads and the plugin execute thread.
+ */
+class SQLiteSlowQueryLog
+{
+    static final int DEFAULT_SIZE = 50;
+
+    /**
+     * An entry still waiting for its query plan.
+     */
+    static class Pending {
+        final JSONObject entry;
+        final String query;
+        final JSONArray params;
+
+        Pending(JSONObject entry, String query, JSONArray params) {
+            this.entry = entry;
+            this.query = query;
+            this.params = params;
+        }
+    }
+
+    final long thresholdNanos;
+
+    private final JSONObject[] entries;
+    private int next = 0;
+    private int count = 0;
+    private long total = 0;
+
+    /**
+     * @param thresholdMs   Log statements slower than this
+     * @param size          Maximum number of entries (the oldest are dropped)
+     */
+    SQLiteSlowQueryLog(long thresholdMs, int size) {
+        this.thresholdNanos = thresholdMs * 1000000L;
+        this.entries = new JSONObject[Math.max(1, size)];
+    }
+
+    /**
+     * Add a slow statement (without its query plan).
+     *
+     * @param pending   Receives the entry, to be given to explainPending() after the result is sent
+     */
+    void add(String query, JSONArray params, long execNanos, long queueWaitNanos,
+             long rowCount, long rowsAffected, String errorMessage,
+             ArrayList<Pending> pending) {
+        try {
+            JSONObject e = new JSONObject();
+            e.put("time", System.currentTimeMillis());
+            e.put("sql", query);
+            e.put("params", getParamShapes(params));
+            e.put("execMs", execNanos / 1e6);
+            e.put("queueWaitMs", queueWaitNanos / 1e6);
+
+            if (errorMessage != null) {
+                e.put("error", errorMessage);
+            } else {
+                e.put("rows", rowCount);
+                e.put("rowsAffected", rowsAffected);
+            }
+
+            synchronized (this) {
+                entries[next] = e;
+                next = (next + 1) % entries.length;
+                if (count < entries.length) ++count;
+                ++total;
+            }
+
+            pending.add(new Pending(e, query, params));
+        } catch (JSONException ex) {
+            Log.v("slowQuery", "SQLiteSlowQueryLog.add(): Error=" + ex.getMessage());
+        }
+    }
+
+    /**
+     * Add the query plans of the pending entries (in the thread of the db connection).
+     */
+    void explainPending(SQLiteAndroidDatabase mydb, ArrayList<Pending> pending) {
+        for (Pending p : pending) {
+            JSONArray plan = new JSONArray();
+            boolean fullScan = false;
+
+            try {
+                JSONArray rows = mydb.queryRows("EXPLAIN QUERY PLAN " + p.query,
+                    p.params != null ? p.params : new JSONArray());
+                for (int i = 0; i < rows.length(); ++i) {
+                    JSONArray row = rows.getJSONArray(i);
+                    // (detail is the last column in all SQLite versions)
+                    String detail = row.optString(row.length() - 1);
+                    plan.put(detail);
+                    if (detail.startsWith("SCAN") && !detail.contains(" USING "))
+                        fullScan = true;
+                }
+            } catch (Exception ex) {
+                plan.put("(no plan: " + ex.getMessage() + ")");
+            }
+
+            synchronized (this) {
+                try {
+                    p.entry.put("plan", plan);
+                    p.entry.put("fullScan", fullScan);
+                } catch (JSONException ignored) { }
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * @return the type of each parameter (and the length of a string), without the values
+     */
+    static JSONArray getParamShapes(JSONArray params) {
+        JSONArray shapes = new JSONArray();
+        if (params == null) return shapes;
+
+        for (int i = 0; i < params.length(); ++i) {
+            Object p = params.opt(i);
+            if (p == null || p == JSONObject.NULL)
+                shapes.put("null");
+            else if (p instanceof Float || p instanceof Double)
+                shapes.put("real");
+            else if (p instanceof Number)
+                shapes.put("integer");
+            else if (p instanceof Boolean)
+                shapes.put("boolean");
+            else if (p instanceof JSONObject && ((JSONObject)p).has("blob"))
+                shapes.put("blob(" + ((JSONObject)p).optString("blob").length() * 3 / 4 + ")");
+            else
+                shapes.put("text(" + p.toString().length() + ")");
+        }
+        return shapes;
+    }
+
+    /**
+     * Result: { thresholdMs: t, total: n (logged since open), entries: [...] (oldest first) }
+     *
+     * @param clear   Remove the entries
+     */
+    synchronized JSONObject toJSON(boolean clear) throws JSONException {
+        JSONArray list = new JSONArray();
+        for (int i = 0; i < count; ++i)
+            list.put(new JSONObject(entries[(next - count + i + entries.length) % entries.length].toString()));
+
+        JSONObject result = new JSONObject();
+        result.put("thresholdMs", thresholdNanos / 1000000L);
+        result.put("total", total);
+        result.put("entries", list);
+
+        if (clear) {
+            for (int i = 0; i < entries.length; ++i)
+                entries[i] = null;
+            next = 0;
+            count = 0;
+        }
+
+        return result;
+    }
+} /* vim: set expandtab : */
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Bounded LRU cache of prepared sqlite4java statements, keyed by SQL text.
+ *
+ * NOTE: one cache per connection, only to be used from the db (runner) thread.
+ * A statement is removed from the cache while it is in use and put back
+ * (after reset & clearing its bindings) when released.
+ *
+ * getStats() may be called from any thread: it only reads atomic counters
+ * (including the size, updated by the db thread), never the map itself.
+ */
+class SQLiteStatementCache
+{
+    static final int DEFAULT_SIZE = 32;
+
+    private final SQLiteConnection mydb;
+    private final int maxSize;
+
+    private final LinkedHashMap<String, SQLiteStatement> statements;
+
+    // NOTE: atomic since the stats may be read from another thread:
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * @param mydb     The connection used to prepare statements
+     * @param maxSize  Maximum number of idle statements to keep (0 to disable)
+     */
+    SQLiteStatementCache(SQLiteConnection mydb, int maxSize) {
+        this.mydb = mydb;
+        this.maxSize = maxSize;
+        // access-order for LRU:
+        this.statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Get a prepared statement for the query, from the cache if possible.
+     * The statement must be given back with release().
+     */
+    SQLiteStatement acquire(String query) throws SQLiteException {
+        SQLiteStatement myStatement = statements.remove(query);
+        size.set(statements.size());
+
+        if (myStatement != null && !myStatement.isDisposed()) {
+            hits.incrementAndGet();
+            return myStatement;
+        }
+
+        misses.incrementAndGet();
+        // NOTE: bypass the (unbounded) sqlite4java statement cache:
+        return mydb.prepare(query, false);
+    }
+
+    /**
+     * Reset a statement and keep it for reuse, evicting the least recently used
+     * statement if the cache is full.
+     */
+    void release(String query, SQLiteStatement myStatement) {
+        if (myStatement == null || myStatement.isDisposed()) return;
+
+        if (maxSize <= 0) {
+            myStatement.dispose();
+            return;
+        }
+
+        try {
+            myStatement.reset(true); /* also clears the bindings */
+        } catch (SQLiteException ex) {
+            Log.v(SQLiteStatementCache.class.getSimpleName(), "could not reset statement, disposing: " + ex.getMessage());
+            myStatement.dispose();
+            return;
+        }
+
+        SQLiteStatement old = statements.put(query, myStatement);
+        if (old != null && old != myStatement) old.dispose();
+
+        while (statements.size() > maxSize) {
+            Iterator<Map.Entry<String, SQLiteStatement>> it = statements.entrySet().iterator();
+            SQLiteStatement eldest = it.next().getValue();
+            it.remove();
+            eldest.dispose();
+            evictions.incrementAndGet();
+        }
+        size.set(statements.size());
+    }
+
+    /**
+     * Dispose all cached statements (on close or schema change).
+     */
+    void clear() {
+        for (SQLiteStatement myStatement : statements.values())
+            myStatement.dispose();
+        statements.clear();
+        size.set(0);
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("size", size.get());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+} /* vim: set expandtab : */
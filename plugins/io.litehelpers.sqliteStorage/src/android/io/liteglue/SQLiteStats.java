@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Runtime statistics of one database: queue depth, latency histograms, and
+ * statement counts by QueryType.
+ *
+ * NOTE: recording is lock-free (atomic counters in fixed arrays) with no
+ * allocation, from the plugin execute thread, the db thread and the reader threads.
+ */
+class SQLiteStats
+{
+    /**
+     * Fixed-bucket latency histogram. The bucket upper bounds are in microseconds,
+     * the last bucket has no upper bound.
+     */
+    static class Histogram {
+        static final long[] BOUNDS_US = {
+            100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+            100000, 250000, 500000, 1000000, 2500000, 5000000
+        };
+
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_US.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long us = nanos / 1000;
+            int i = 0;
+            while (i < BOUNDS_US.length && us > BOUNDS_US[i]) ++i;
+
+            counts.incrementAndGet(i);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+                max = maxNanos.get();
+        }
+
+        /**
+         * Result: { count: n, totalMs: t, maxMs: t, boundsUs: [...], counts: [...] }
+         */
+        JSONObject toJSON() throws JSONException {
+            JSONObject h = new JSONObject();
+            h.put("count", count.get());
+            h.put("totalMs", totalNanos.get() / 1e6);
+            h.put("maxMs", maxNanos.get() / 1e6);
+
+            JSONArray bounds = new JSONArray();
+            for (long b : BOUNDS_US)
+                bounds.put(b);
+            h.put("boundsUs", bounds);
+
+            JSONArray c = new JSONArray();
+            for (int i = 0; i < counts.length(); ++i)
+                c.put(counts.get(i));
+            h.put("counts", c);
+            return h;
+        }
+    }
+
+    private static final SQLiteAndroidDatabase.QueryType[] QUERY_TYPES = SQLiteAndroidDatabase.QueryType.values();
+
+    final Histogram queueWait = new Histogram();
+    final Histogram execTime = new Histogram();
+    final Histogram serializationTime = new Histogram();
+
+    // time of each group commit, and the number of items committed in groups:
+    final Histogram groupCommit = new Histogram();
+    final AtomicLong groupCommitItems = new AtomicLong();
+
+    // queue wait by priority lane (see SQLiteLaneQueue):
+    final Histogram[] laneWait = new Histogram[SQLiteLaneQueue.LANE_NAMES.length];
+
+    SQLiteStats() {
+        for (int i = 0; i < laneWait.length; ++i)
+            laneWait[i] = new Histogram();
+    }
+
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    // by QueryType ordinal:
+    private final AtomicLongArray statements = new AtomicLongArray(QUERY_TYPES.length);
+    private final AtomicLongArray rows = new AtomicLongArray(QUERY_TYPES.length);
+    private final AtomicLongArray rowsAffected = new AtomicLongArray(QUERY_TYPES.length);
+    private final AtomicLongArray bytes = new AtomicLongArray(QUERY_TYPES.length);
+    private final AtomicLongArray errors = new AtomicLongArray(QUERY_TYPES.length);
+
+    /**
+     * Update the peak queue depth (after queueing).
+     */
+    void queued(int depth) {
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth))
+            peak = peakQueueDepth.get();
+    }
+
+    /**
+     * Record one executed statement.
+     *
+     * @param error      True if it failed (the counts are then ignored)
+     * @param rowCount   Number of result rows
+     * @param affected   Number of rows affected
+     */
+    void recordStatement(SQLiteAndroidDatabase.QueryType queryType, long nanos, boolean error, long rowCount, long affected) {
+        int t = queryType.ordinal();
+
+        execTime.record(nanos);
+        statements.incrementAndGet(t);
+
+        if (error) {
+            errors.incrementAndGet(t);
+        } else {
+            rows.addAndGet(t, rowCount);
+            rowsAffected.addAndGet(t, affected);
+        }
+    }
+
+    /**
+     * Record the serialization of a batch result.
+     *
+     * @param queryType    Counted for this statement type (such as the one with the most rows)
+     */
+    void recordSerialization(SQLiteAndroidDatabase.QueryType queryType, long nanos, long size) {
+        serializationTime.record(nanos);
+        bytes.addAndGet(queryType.ordinal(), size);
+    }
+
+    /**
+     * @param queueDepth   The current queue depth
+     */
+    JSONObject toJSON(int queueDepth) throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("queueDepth", queueDepth);
+        stats.put("peakQueueDepth", peakQueueDepth.get());
+        stats.put("queueWait", queueWait.toJSON());
+        stats.put("execTime", execTime.toJSON());
+        stats.put("serializationTime", serializationTime.toJSON());
+        stats.put("groupCommit", groupCommit.toJSON());
+        stats.put("groupCommitItems", groupCommitItems.get());
+
+        JSONObject byType = new JSONObject();
+        for (SQLiteAndroidDatabase.QueryType queryType : QUERY_TYPES) {
+            int t = queryType.ordinal();
+            if (statements.get(t) == 0) continue;
+
+            JSONObject s = new JSONObject();
+            s.put("statements", statements.get(t));
+            s.put("rows", rows.get(t));
+            s.put("rowsAffected", rowsAffected.get(t));
+            s.put("bytes", bytes.get(t));
+            s.put("errors", errors.get(t));
+            byType.put(queryType.name(), s);
+        }
+        stats.put("byType", byType);
+
+        return stats;
+    }
+} /* vim: set expandtab : */
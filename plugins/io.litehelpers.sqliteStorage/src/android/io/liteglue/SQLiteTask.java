@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2012-2015, Chris Brody
+ */
+
+package io.liteglue;
+
+import org.apache.cordova.CallbackContext;
+
+/**
+ * A native operation (such as a file import or a search) queued like a batch
+ * and run in the db (or a reader) thread.
+ */
+interface SQLiteTask
+{
+    /**
+     * Run the task and send the result(s) via cbc.
+     *
+     * @param mydb   The database, only to be used in the current thread
+     * @param cbc    Callback context from Cordova API
+     */
+    void run(SQLiteAndroidDatabase mydb, CallbackContext cbc);
+
+    /**
+     * A task run in steps (such as a backup): after each step, it is queued again
+     * (at the end of its lane) until it is done, so other queued work can run in between.
+     * Only run in the db thread.
+     */
+    interface Incremental extends SQLiteTask
+    {
+        /**
+         * @return true if the task is done (or failed)
+         */
+        boolean isDone();
+    }
+}
+
+/* vim: set expandtab : */
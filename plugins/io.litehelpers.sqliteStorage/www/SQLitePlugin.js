@@ -1,16 +1,40 @@
 (function() {
-  var DB_STATE_INIT, DB_STATE_OPEN, READ_ONLY_REGEX, SQLiteFactory, SQLitePlugin, SQLitePluginTransaction, argsArray, dblocations, newSQLError, nextTick, root, txLocks;
+  var BACKGROUND_ACTIONS, DB_STATE_INIT, DB_STATE_OPEN, DEFAULT_MAX_LANE_WAIT_MS, GROUPABLE_REGEX, GROUP_COMMIT_MAX, LANES, LANE_BACKGROUND, LANE_INTERACTIVE, LANE_NORMAL, READ_ONLY_REGEX, SQLiteFactory, SQLitePlugin, SQLitePluginTransaction, argsArray, backupCall, blobParam, columnarRow, dblocations, decodeBinaryBatch, laneOf, nativeCall, nativeFeatures, newSQLError, nextInQueue, nextTick, pagedQueryCount, queuedCall, readTxCount, root, sqlParam, textDecoder, txLocks, utf8Decode;
 
   root = this;
 
   READ_ONLY_REGEX = /^\s*(?:drop|delete|insert|update|create)\s/i;
 
+  GROUPABLE_REGEX = /^\s*(?:insert|update|delete)\s/i;
+
+  GROUP_COMMIT_MAX = 64;
+
   DB_STATE_INIT = "INIT";
 
   DB_STATE_OPEN = "OPEN";
 
+  LANES = ["interactive", "normal", "background"];
+
+  LANE_INTERACTIVE = 0;
+
+  LANE_NORMAL = 1;
+
+  LANE_BACKGROUND = 2;
+
+  BACKGROUND_ACTIONS = ["executeBulk", "importFile", "createSearchIndex"];
+
+  DEFAULT_MAX_LANE_WAIT_MS = 2000;
+
+  textDecoder = null;
+
   txLocks = {};
 
+  nativeFeatures = {};
+
+  pagedQueryCount = 0;
+
+  readTxCount = Date.now();
+
   newSQLError = function(error, code) {
     var sqlError;
     sqlError = error;
@@ -35,6 +59,313 @@
     return sqlError;
   };
 
+  blobParam = function(v) {
+    var bytes, i, s, _i, _ref;
+    bytes = v instanceof ArrayBuffer ? new Uint8Array(v) : new Uint8Array(v.buffer, v.byteOffset, v.byteLength);
+    s = '';
+    for (i = _i = 0, _ref = bytes.length; _i < _ref; i = _i += 0x8000) {
+      s += String.fromCharCode.apply(null, bytes.subarray(i, i + 0x8000));
+    }
+    return {
+      blob: btoa(s)
+    };
+  };
+
+  sqlParam = function(v) {
+    var t;
+    t = typeof v;
+    if (v === null || v === void 0 || t === 'number' || t === 'string') {
+      return v;
+    } else if (v instanceof ArrayBuffer || (!!v.buffer && v.buffer instanceof ArrayBuffer)) {
+      return blobParam(v);
+    } else if (typeof v.blob === 'string') {
+      return {
+        blob: v.blob
+      };
+    } else if (v instanceof Blob) {
+      return v.valueOf();
+    } else {
+      return v.toString();
+    }
+  };
+
+  nativeCall = function(db, action, args, success, error) {
+    var myerror, mysuccess;
+    if (!db.openDBs[db.dbname]) {
+      if (!!error) {
+        error(newSQLError('database not open'));
+      }
+      return;
+    }
+    args.dbargs = {
+      dbname: db.dbname
+    };
+    mysuccess = function(result) {
+      if (!!success) {
+        success(result);
+      }
+    };
+    myerror = function(e) {
+      if (!!error) {
+        error(newSQLError(e));
+      }
+    };
+    cordova.exec(mysuccess, myerror, "SQLitePlugin", action, [args]);
+  };
+
+  queuedCall = function(db, action, args, isFinal, success, error) {
+    if (!db.openDBs[db.dbname]) {
+      if (!!error) {
+        error(newSQLError('database not open'));
+      }
+      return;
+    }
+    args.dbargs = {
+      dbname: db.dbname
+    };
+    db.addTransaction({
+      lane: laneOf(args.priority, BACKGROUND_ACTIONS.indexOf(action) >= 0 ? LANE_BACKGROUND : laneOf(db.openargs.priority, LANE_NORMAL)),
+      start: function() {
+        var done;
+        done = function() {
+          txLocks[db.dbname].inProgress = false;
+          db.startNextTransaction();
+        };
+        cordova.exec(function(result) {
+          if (isFinal(result)) {
+            done();
+          }
+          if (!!success) {
+            success(result);
+          }
+        }, function(e) {
+          done();
+          if (!!error) {
+            error(newSQLError(e));
+          }
+        }, "SQLitePlugin", action, [args]);
+      },
+      abortFromQ: function(sqlerror) {
+        if (!!error) {
+          error(sqlerror);
+        }
+      }
+    });
+  };
+
+  backupCall = function(db, action, options, progressCallback, success, error) {
+    var mycb;
+    mycb = function(result) {
+      if (result.type === 'progress') {
+        if (!!progressCallback) {
+          progressCallback({
+            pageCount: result.pageCount,
+            remaining: result.remaining
+          });
+        }
+      } else {
+        if (!!success) {
+          success({
+            pageCount: result.pageCount,
+            steps: result.steps,
+            ms: result.ms,
+            file: result.file
+          });
+        }
+      }
+    };
+    nativeCall(db, action, {
+      file: options.file,
+      pagesPerStep: options.pagesPerStep,
+      priority: options.priority
+    }, mycb, error);
+  };
+
+  columnarRow = function(response, i) {
+    var dict, j, name, row, v, _i, _len, _ref;
+    row = {};
+    _ref = response.columns;
+    for (j = _i = 0, _len = _ref.length; _i < _len; j = ++_i) {
+      name = _ref[j];
+      v = response.values[j][i];
+      dict = response.dicts[j];
+      row[name] = !!dict && v !== null ? dict[v] : v;
+    }
+    return row;
+  };
+
+  decodeBinaryBatch = function(buffer) {
+    var bytes, colCount, columns, count, kind, name, pos, qid, r, readBlob, readFloat64, readInt64, readString, readUint32, readUint8, results, row, rows, view, _i, _len;
+    view = new DataView(buffer);
+    bytes = new Uint8Array(buffer);
+    pos = 0;
+    readUint8 = function() {
+      var v;
+      v = view.getUint8(pos);
+      pos += 1;
+      return v;
+    };
+    readUint32 = function() {
+      var v;
+      v = view.getUint32(pos);
+      pos += 4;
+      return v;
+    };
+    readInt64 = function() {
+      var hi, lo;
+      hi = view.getInt32(pos);
+      lo = view.getUint32(pos + 4);
+      pos += 8;
+      return hi * 4294967296 + lo;
+    };
+    readFloat64 = function() {
+      var v;
+      v = view.getFloat64(pos);
+      pos += 8;
+      return v;
+    };
+    readString = function() {
+      var len, s;
+      len = readUint32();
+      s = utf8Decode(bytes, pos, len);
+      pos += len;
+      return s;
+    };
+    readBlob = function() {
+      var len, v;
+      len = readUint32();
+      v = buffer.slice(pos, pos + len);
+      pos += len;
+      return v;
+    };
+    results = [];
+    count = readUint32();
+    while (count-- > 0) {
+      qid = readString();
+      kind = readUint8();
+      if (kind === 1) {
+        results.push({
+          qid: qid,
+          type: 'error',
+          result: {
+            message: readString()
+          }
+        });
+      } else if (kind === 2) {
+        results.push({
+          qid: qid,
+          type: 'error',
+          result: {
+            message: readString(),
+            code: 7,
+            interrupted: true
+          }
+        });
+      } else {
+        columns = [];
+        colCount = readUint32();
+        while (colCount-- > 0) {
+          columns.push(readString());
+        }
+        rows = [];
+        while (readUint8() === 1) {
+          row = {};
+          for (_i = 0, _len = columns.length; _i < _len; _i++) {
+            name = columns[_i];
+            row[name] = (function() {
+              switch (readUint8()) {
+                case 1:
+                  return readInt64();
+                case 2:
+                  return readFloat64();
+                case 3:
+                  return readString();
+                case 4:
+                  return readBlob();
+                default:
+                  return null;
+              }
+            })();
+          }
+          rows.push(row);
+        }
+        r = {
+          rows: rows,
+          rowsAffected: readFloat64()
+        };
+        if (readUint8() === 1) {
+          r.insertId = readFloat64();
+        }
+        results.push({
+          qid: qid,
+          type: 'success',
+          result: r
+        });
+      }
+    }
+    return results;
+  };
+
+  utf8Decode = function(bytes, start, len) {
+    var c, codes, end, i, s;
+    if (!!window.TextDecoder) {
+      if (!textDecoder) {
+        textDecoder = new window.TextDecoder('utf-8');
+      }
+      return textDecoder.decode(bytes.subarray(start, start + len));
+    }
+    s = '';
+    codes = [];
+    i = start;
+    end = start + len;
+    while (i < end) {
+      c = bytes[i++];
+      if (c >= 0xf0) {
+        c = ((c & 0x07) << 18) | ((bytes[i++] & 0x3f) << 12) | ((bytes[i++] & 0x3f) << 6) | (bytes[i++] & 0x3f);
+        c -= 0x10000;
+        codes.push(0xd800 + (c >> 10), 0xdc00 + (c & 0x3ff));
+      } else if (c >= 0xe0) {
+        codes.push(((c & 0x0f) << 12) | ((bytes[i++] & 0x3f) << 6) | (bytes[i++] & 0x3f));
+      } else if (c >= 0xc0) {
+        codes.push(((c & 0x1f) << 6) | (bytes[i++] & 0x3f));
+      } else {
+        codes.push(c);
+      }
+      if (codes.length >= 4096) {
+        s += String.fromCharCode.apply(null, codes);
+        codes = [];
+      }
+    }
+    return s + String.fromCharCode.apply(null, codes);
+  };
+
+  laneOf = function(priority, defaultLane) {
+    var lane;
+    lane = LANES.indexOf(priority);
+    if (lane >= 0) {
+      return lane;
+    } else {
+      return defaultLane;
+    }
+  };
+
+  nextInQueue = function(queue, maxWaitMs) {
+    var i, next, t, _i, _len;
+    if (Date.now() - queue[0].queuedAt > maxWaitMs) {
+      return 0;
+    }
+    next = 0;
+    for (i = _i = 0, _len = queue.length; _i < _len; i = ++_i) {
+      t = queue[i];
+      if (t.lane < queue[next].lane) {
+        if (!(t.readOnly && queue[next].lane === LANE_NORMAL)) {
+          next = i;
+        }
+      }
+    }
+    return next;
+  };
+
   nextTick = window.setImmediate || function(fun) {
     window.setTimeout(fun, 0);
   };
@@ -94,6 +425,10 @@
         inProgress: false
       };
     }
+    if (t.lane === void 0) {
+      t.lane = laneOf(this.openargs.priority, LANE_NORMAL);
+    }
+    t.queuedAt = Date.now();
     txLocks[this.dbname].queue.push(t);
     if (this.dbname in this.openDBs && this.openDBs[this.dbname] !== DB_STATE_INIT) {
       this.startNextTransaction();
@@ -106,6 +441,10 @@
     }
   };
 
+  SQLitePlugin.prototype.hasNativeFeature = function(name) {
+    return !!nativeFeatures[this.dbname] && !!nativeFeatures[this.dbname][name];
+  };
+
   SQLitePlugin.prototype.transaction = function(fn, error, success) {
     if (!this.openDBs[this.dbname]) {
       error(newSQLError('database not open'));
@@ -115,11 +454,18 @@
   };
 
   SQLitePlugin.prototype.readTransaction = function(fn, error, success) {
+    var tx;
     if (!this.openDBs[this.dbname]) {
       error(newSQLError('database not open'));
       return;
     }
-    this.addTransaction(new SQLitePluginTransaction(this, fn, error, success, true, true));
+    tx = new SQLitePluginTransaction(this, fn, error, success, true, true);
+    tx.lane = LANE_INTERACTIVE;
+    if (this.hasNativeFeature('readerPool')) {
+      tx.reader = true;
+      tx.readTxId = this.dbname + ':' + (++readTxCount);
+    }
+    this.addTransaction(tx);
   };
 
   SQLitePlugin.prototype.startNextTransaction = function() {
@@ -127,7 +473,7 @@
     self = this;
     nextTick((function(_this) {
       return function() {
-        var txLock;
+        var count, group, next, started, t, txLock, _i, _j, _len, _len1;
         if (!(_this.dbname in _this.openDBs) || _this.openDBs[_this.dbname] !== DB_STATE_OPEN) {
           console.log('cannot start next transaction: database not open');
           return;
@@ -138,7 +484,27 @@
           return;
         } else if (txLock.queue.length > 0 && !txLock.inProgress) {
           txLock.inProgress = true;
-          txLock.queue.shift().start();
+          next = nextInQueue(txLock.queue, _this.openargs.maxLaneWaitMs || DEFAULT_MAX_LANE_WAIT_MS);
+          count = 1;
+          if (txLock.queue[next].groupable) {
+            while (count < GROUP_COMMIT_MAX && next + count < txLock.queue.length && txLock.queue[next + count].groupable) {
+              ++count;
+            }
+          }
+          started = txLock.queue.splice(next, count);
+          if (count > 1) {
+            group = {
+              left: count
+            };
+            for (_i = 0, _len = started.length; _i < _len; _i++) {
+              t = started[_i];
+              t.group = group;
+            }
+          }
+          for (_j = 0, _len1 = started.length; _j < _len1; _j++) {
+            t = started[_j];
+            t.start();
+          }
         }
       };
     })(this));
@@ -170,8 +536,20 @@
     } else {
       console.log('OPEN database: ' + this.dbname);
       opensuccesscb = (function(_this) {
-        return function() {
+        return function(result) {
           var txLock;
+          if (!!result && result.type === 'progress') {
+            if (!!_this.openargs.assetProgress) {
+              _this.openargs.assetProgress(result);
+            }
+            return;
+          }
+          if (!!result && typeof result === 'object') {
+            _this.openResult = result;
+            if (!!result.features) {
+              nativeFeatures[_this.dbname] = result.features;
+            }
+          }
           if (!_this.openDBs[_this.dbname]) {
             console.log('database was closed during open operation');
           }
@@ -231,8 +609,8 @@
     }
   };
 
-  SQLitePlugin.prototype.executeSql = function(statement, params, success, error) {
-    var myerror, myfn, mysuccess;
+  SQLitePlugin.prototype.executeSql = function(statement, params, success, error, options) {
+    var myerror, myfn, mysuccess, tx;
     mysuccess = function(t, r) {
       if (!!success) {
         return success(r);
@@ -244,9 +622,295 @@
       }
     };
     myfn = function(tx) {
+      if (!!options) {
+        tx.timeoutMs = options.timeoutMs;
+        tx.queryId = options.queryId;
+      }
       tx.addStatement(statement, params, mysuccess, myerror);
     };
-    this.addTransaction(new SQLitePluginTransaction(this, myfn, null, null, false, false));
+    tx = new SQLitePluginTransaction(this, myfn, null, null, false, false);
+    if (!!this.openargs.groupCommit && cordova.platformId === 'android' && !options && GROUPABLE_REGEX.test(statement)) {
+      tx.groupable = true;
+    }
+    this.addTransaction(tx);
+  };
+
+  SQLitePlugin.prototype.sqlBatch = function(statements, success, error) {
+    var db, executes, i, st, _i, _len;
+    if (!this.openDBs[this.dbname]) {
+      if (!!error) {
+        error(newSQLError('database not open'));
+      }
+      return;
+    }
+    if (cordova.platformId !== 'android') {
+      this.transaction(function(tx) {
+        var _i, _len;
+        for (_i = 0, _len = statements.length; _i < _len; _i++) {
+          st = statements[_i];
+          if (st.constructor === Array) {
+            tx.executeSql(st[0], st[1]);
+          } else {
+            tx.executeSql(st);
+          }
+        }
+      }, error, success);
+      return;
+    }
+    executes = [];
+    for (i = _i = 0, _len = statements.length; _i < _len; i = ++_i) {
+      st = statements[i];
+      executes.push(st.constructor === Array ? {
+        qid: i,
+        sql: st[0],
+        params: (st[1] || []).map(sqlParam)
+      } : {
+        qid: i,
+        sql: st,
+        params: []
+      });
+    }
+    db = this;
+    this.addTransaction({
+      start: function() {
+        var done;
+        done = function() {
+          txLocks[db.dbname].inProgress = false;
+          db.startNextTransaction();
+        };
+        cordova.exec(function() {
+          done();
+          if (!!success) {
+            success();
+          }
+        }, function(e) {
+          done();
+          if (!!error) {
+            error(newSQLError(e));
+          }
+        }, "SQLitePlugin", "backgroundExecuteSqlBatch", [
+          {
+            dbargs: {
+              dbname: db.dbname
+            },
+            executes: executes,
+            atomic: true
+          }
+        ]);
+      },
+      abortFromQ: function(sqlerror) {
+        if (!!error) {
+          error(sqlerror);
+        }
+      }
+    });
+  };
+
+  SQLitePlugin.prototype.executeSqlPaged = function(statement, params, pageSize, pageCallback, doneCallback, errorCallback) {
+    var args, mycb, pagedId, stop, stopped;
+    if (!this.openDBs[this.dbname]) {
+      if (!!errorCallback) {
+        errorCallback(newSQLError('database not open'));
+      }
+      return null;
+    }
+    pagedId = this.dbname + ':' + (++pagedQueryCount);
+    stopped = false;
+    args = {
+      pagedId: pagedId,
+      sql: statement,
+      params: (params || []).map(sqlParam),
+      pageSize: pageSize
+    };
+    stop = function() {
+      if (!stopped) {
+        stopped = true;
+        args.stopped = true;
+        cordova.exec(null, null, "SQLitePlugin", "stopPaged", [
+          {
+            pagedId: pagedId
+          }
+        ]);
+      }
+    };
+    mycb = function(result) {
+      if (result.type === 'page') {
+        if (!stopped && !!pageCallback && pageCallback(result.rows, result.page) === false) {
+          stop();
+        }
+      } else {
+        if (!!doneCallback) {
+          doneCallback({
+            pages: result.pages,
+            rowCount: result.rowCount,
+            stopped: result.stopped
+          });
+        }
+      }
+    };
+    queuedCall(this, "executeSqlPaged", args, (function(result) {
+      return result.type !== 'page';
+    }), mycb, errorCallback);
+    return {
+      stop: stop
+    };
+  };
+
+  SQLitePlugin.prototype.executeBulk = function(statement, rows, success, error) {
+    queuedCall(this, "executeBulk", {
+      sql: statement,
+      rows: (rows || []).map(function(row) {
+        return row.map(sqlParam);
+      })
+    }, (function() {
+      return true;
+    }), success, error);
+  };
+
+  SQLitePlugin.prototype.importFile = function(options, progressCallback, success, error) {
+    var mycb;
+    mycb = function(result) {
+      if (result.type === 'progress') {
+        if (!!progressCallback) {
+          progressCallback({
+            rows: result.rows,
+            bytesRead: result.bytesRead,
+            totalBytes: result.totalBytes
+          });
+        }
+      } else {
+        if (!!success) {
+          success({
+            rows: result.rows,
+            rowsAffected: result.rowsAffected,
+            errors: result.errors
+          });
+        }
+      }
+    };
+    queuedCall(this, "importFile", {
+      path: options.path,
+      table: options.table,
+      columns: options.columns,
+      chunkSize: options.chunkSize,
+      replace: !!options.replace,
+      priority: options.priority
+    }, (function(result) {
+      return result.type !== 'progress';
+    }), mycb, error);
+  };
+
+  SQLitePlugin.prototype.backup = function(options, progressCallback, success, error) {
+    backupCall(this, "backup", options, progressCallback, success, error);
+  };
+
+  SQLitePlugin.prototype.restore = function(options, progressCallback, success, error) {
+    backupCall(this, "restore", options, progressCallback, success, error);
+  };
+
+  SQLitePlugin.prototype.blobOpen = function(options, success, error) {
+    nativeCall(this, "blobOpen", {
+      database: options.database,
+      table: options.table,
+      column: options.column,
+      rowid: options.rowid,
+      writable: !!options.writable
+    }, success, error);
+  };
+
+  SQLitePlugin.prototype.blobRead = function(handle, offset, length, success, error) {
+    nativeCall(this, "blobRead", {
+      handle: handle,
+      offset: offset,
+      length: length
+    }, success, error);
+  };
+
+  SQLitePlugin.prototype.blobWrite = function(handle, offset, data, success, error) {
+    queuedCall(this, "blobWrite", {
+      handle: handle,
+      offset: offset,
+      data: typeof data === 'string' ? data : blobParam(data).blob
+    }, (function() {
+      return true;
+    }), success, error);
+  };
+
+  SQLitePlugin.prototype.blobUrl = function(table, column, rowid, options) {
+    var query, url;
+    url = 'file:///sqlite-blob/' + [this.dbname, table, column, rowid].map(encodeURIComponent).join('/');
+    query = [];
+    if (!!options && !!options.type) {
+      query.push('type=' + encodeURIComponent(options.type));
+    }
+    if (!!options && options.version !== void 0) {
+      query.push('v=' + encodeURIComponent(options.version));
+    }
+    if (query.length > 0) {
+      url += '?' + query.join('&');
+    }
+    return url;
+  };
+
+  SQLitePlugin.prototype.blobClose = function(handle, success, error) {
+    nativeCall(this, "blobClose", {
+      handle: handle
+    }, success, error);
+  };
+
+  SQLitePlugin.prototype.createSearchIndex = function(table, columns, options, success, error) {
+    queuedCall(this, "createSearchIndex", {
+      table: table,
+      columns: columns,
+      rebuild: !!options && !!options.rebuild,
+      priority: !!options ? options.priority : void 0
+    }, (function() {
+      return true;
+    }), success, error);
+  };
+
+  SQLitePlugin.prototype.search = function(table, text, options, success, error) {
+    var args, k, v;
+    args = {
+      table: table,
+      text: text
+    };
+    if (!!options) {
+      for (k in options) {
+        v = options[k];
+        args[k] = v;
+      }
+    }
+    nativeCall(this, "search", args, success, error);
+  };
+
+  SQLitePlugin.prototype.getStats = function(success, error) {
+    var dbname;
+    dbname = this.dbname;
+    nativeCall(this, "getStats", {
+      dbname: dbname
+    }, (function(result) {
+      if (!!success) {
+        success(result[dbname]);
+      }
+    }), error);
+  };
+
+  SQLitePlugin.prototype.getSlowQueries = function(options, success, error) {
+    var args;
+    args = {
+      clear: !!options && !!options.clear
+    };
+    if (!!options && !!options.file) {
+      args.file = options.file;
+    }
+    nativeCall(this, "getSlowQueries", args, success, error);
+  };
+
+  SQLitePlugin.prototype.cancel = function(queryId, success, error) {
+    nativeCall(this, "cancel", {
+      queryId: queryId
+    }, success, error);
   };
 
   SQLitePluginTransaction = function(db, fn, error, success, txlock, readOnly) {
@@ -276,19 +940,32 @@
 
   SQLitePluginTransaction.prototype.start = function() {
     var err;
+    if (this.reader) {
+      txLocks[this.db.dbname].inProgress = false;
+      this.db.startNextTransaction();
+    }
     try {
       this.fn(this);
       this.run();
     } catch (_error) {
       err = _error;
-      txLocks[this.db.dbname].inProgress = false;
-      this.db.startNextTransaction();
+      this.unlock();
       if (this.error) {
         this.error(newSQLError(err));
       }
     }
   };
 
+  SQLitePluginTransaction.prototype.unlock = function() {
+    if (!!this.group && --this.group.left > 0) {
+      return;
+    }
+    if (!this.reader) {
+      txLocks[this.db.dbname].inProgress = false;
+      this.db.startNextTransaction();
+    }
+  };
+
   SQLitePluginTransaction.prototype.executeSql = function(sql, values, success, error) {
     if (this.finalized) {
       throw {
@@ -307,14 +984,13 @@
   };
 
   SQLitePluginTransaction.prototype.addStatement = function(sql, values, success, error) {
-    var params, qid, t, v, _i, _len;
+    var params, qid, v, _i, _len;
     qid = this.executes.length;
     params = [];
     if (!!values && values.constructor === Array) {
       for (_i = 0, _len = values.length; _i < _len; _i++) {
         v = values[_i];
-        t = typeof v;
-        params.push((v === null || v === void 0 || t === 'number' || t === 'string' ? v : v instanceof Blob ? v.valueOf() : v.toString()));
+        params.push(sqlParam(v));
       }
     }
     this.executes.push({
@@ -327,17 +1003,31 @@
   };
 
   SQLitePluginTransaction.prototype.handleStatementSuccess = function(handler, response) {
-    var payload, rows;
+    var item, payload, rowCount, rows;
     if (!handler) {
       return;
     }
-    rows = response.rows || [];
+    if (!!response.columns) {
+      rows = [];
+      rowCount = response.rowCount;
+      item = function(i) {
+        if (i < rowCount) {
+          return rows[i] || (rows[i] = columnarRow(response, i));
+        } else {
+          return void 0;
+        }
+      };
+    } else {
+      rows = response.rows || [];
+      rowCount = rows.length;
+      item = function(i) {
+        return rows[i];
+      };
+    }
     payload = {
       rows: {
-        item: function(i) {
-          return rows[i];
-        },
-        length: rows.length
+        item: item,
+        length: rowCount
       },
       rowsAffected: response.rowsAffected || 0,
       insertId: response.insertId || void 0
@@ -355,7 +1045,7 @@
   };
 
   SQLitePluginTransaction.prototype.run = function() {
-    var batchExecutes, handlerFor, i, mycb, mycbmap, qid, request, tropts, tx, txFailure, waiting;
+    var batchArgs, batchExecutes, handlerFor, i, mycb, mycbmap, qid, request, tropts, tx, txFailure, waiting;
     txFailure = null;
     tropts = [];
     batchExecutes = this.executes;
@@ -406,6 +1096,9 @@
     }
     mycb = function(result) {
       var q, r, res, type, _i, _len;
+      if (result instanceof ArrayBuffer) {
+        result = decodeBinaryBatch(result);
+      }
       for (_i = 0, _len = result.length; _i < _len; _i++) {
         r = result[_i];
         type = r.type;
@@ -419,14 +1112,25 @@
         }
       }
     };
-    cordova.exec(mycb, null, "SQLitePlugin", "backgroundExecuteSqlBatch", [
-      {
-        dbargs: {
-          dbname: this.db.dbname
-        },
-        executes: tropts
-      }
-    ]);
+    batchArgs = {
+      dbargs: {
+        dbname: this.db.dbname
+      },
+      executes: tropts
+    };
+    if (this.readOnly) {
+      batchArgs.priority = "interactive";
+    }
+    if (this.reader) {
+      batchArgs.readTxId = this.readTxId;
+    }
+    if (!!this.timeoutMs) {
+      batchArgs.timeoutMs = this.timeoutMs;
+    }
+    if (!!this.queryId) {
+      batchArgs.queryId = this.queryId;
+    }
+    cordova.exec(mycb, null, "SQLitePlugin", "backgroundExecuteSqlBatch", [batchArgs]);
   };
 
   SQLitePluginTransaction.prototype.abort = function(txFailure) {
@@ -436,15 +1140,13 @@
     }
     tx = this;
     succeeded = function(tx) {
-      txLocks[tx.db.dbname].inProgress = false;
-      tx.db.startNextTransaction();
+      tx.unlock();
       if (tx.error) {
         tx.error(txFailure);
       }
     };
     failed = function(tx, err) {
-      txLocks[tx.db.dbname].inProgress = false;
-      tx.db.startNextTransaction();
+      tx.unlock();
       if (tx.error) {
         tx.error(newSQLError("error while trying to roll back: " + err.message, err.code));
       }
@@ -465,15 +1167,13 @@
     }
     tx = this;
     succeeded = function(tx) {
-      txLocks[tx.db.dbname].inProgress = false;
-      tx.db.startNextTransaction();
+      tx.unlock();
       if (tx.success) {
         tx.success();
       }
     };
     failed = function(tx, err) {
-      txLocks[tx.db.dbname].inProgress = false;
-      tx.db.startNextTransaction();
+      tx.unlock();
       if (tx.error) {
         tx.error(newSQLError("error while trying to commit: " + err.message, err.code));
       }
@@ -1,7 +1,7 @@
 
 angular.module('starter', ['ionic', 'starter.controllers', 'starter.services','ngCordova'])
 
-.run(function($ionicPlatform, $cordovaSQLite) {
+.run(function($ionicPlatform) {
         $ionicPlatform.ready(function() {
             if(window.cordova && window.cordova.plugins.Keyboard) {
                 cordova.plugins.Keyboard.hideKeyboardAccessoryBar(true);
@@ -9,12 +9,37 @@ angular.module('starter', ['ionic', 'starter.controllers', 'starter.services','n
             if(window.StatusBar) {
                 StatusBar.styleDefault();
             }
-            var db = $cordovaSQLite.openDB("chefAirfyer");
-
-            $cordovaSQLite.execute(db, 
-              "CREATE TABLE IF NOT EXISTS receita (id integer primary key, nome text,imagem text, receita text, ingredientes text, quantidades text, tempo text, temperatura text, serve text, categoria integer, like integer)"
-            );
-            $cordovaSQLite.execute(db, "CREATE TABLE IF NOT EXISTS ingredientes (id integer primary key, nome text)");
+            // first open of the db: native options (the other openDB calls reuse the open db)
+            var schema = [
+              "CREATE TABLE IF NOT EXISTS receita (id integer primary key, nome text,imagem text, receita text, ingredientes text, quantidades text, tempo text, temperatura text, serve text, categoria integer, like integer)",
+              "CREATE TABLE IF NOT EXISTS ingredientes (id integer primary key, nome text)"
+            ];
+            // (the schema is created by the migrations when opened, checked with a single PRAGMA user_version read)
+            // (queryTimeoutMs: a runaway search, such as a long Geladeira LIKE chain, fails instead of blocking the db)
+            var db = window.sqlitePlugin.openDatabase({name: "chefAirfyer", resultCacheSize: 2 * 1024 * 1024,
+              queryTimeoutMs: 5000, migrations: [{version: 1, sql: schema}]}, function(db) {
+              if (!db.openResult || !db.openResult.migrations) {
+                // (migrations not supported on this platform)
+                db.sqlBatch(schema, createSearchIndex, function(err) {
+                  console.error(err);
+                });
+              } else {
+                createSearchIndex();
+              }
+            }, function(err) {
+              console.error(err);
+            });
+
+            function createSearchIndex() {
+              // full-text index for Pesquisa (kept in sync by triggers):
+              if (db.hasNativeFeature && db.hasNativeFeature("createSearchIndex")) {
+                db.createSearchIndex("receita", ["nome", "ingredientes", "receita"], {}, function(res) {
+                  console.log("search index", res);
+                }, function(err) {
+                  console.error(err);
+                });
+              }
+            }
 
         });
     })
@@ -570,21 +570,62 @@ angular.module('starter.controllers', ['ionic', 'starter.controllers', 'starter.
 			$scope.visao.receitas = "hide";
 			$scope.geladeira = [];
 			var db = $cordovaSQLite.openDB("chefAirfyer");
-			var query = "SELECT * FROM receita";
-			$cordovaSQLite.execute(db, query, []).then(function(res) {
-				console.log('res.rows', res.rows);
-				if (res.rows.length > 0) {
-					for (var i = 0; i < res.rows.length; i++) {
-						console.log('rows(' + i + ')', res.rows.item(i));
-						res.rows.item(i).filter = "";
-						$scope.geladeira.push(res.rows.item(i));
+			// native full-text search (if the platform reports it): only the matching recipes are loaded
+			var nativeSearch = !!db.hasNativeFeature && db.hasNativeFeature("search");
+			var searchCount = 0;
+			if (!nativeSearch) {
+				var query = "SELECT * FROM receita";
+				$cordovaSQLite.execute(db, query, []).then(function(res) {
+					console.log('res.rows', res.rows);
+					if (res.rows.length > 0) {
+						for (var i = 0; i < res.rows.length; i++) {
+							console.log('rows(' + i + ')', res.rows.item(i));
+							res.rows.item(i).filter = "";
+							$scope.geladeira.push(res.rows.item(i));
+						}
+					} else {
+						console.log("No results found");
 					}
-				} else {
-					console.log("No results found");
-				}
-			}, function(err) {
-				console.error(err);
-			});
+				}, function(err) {
+					console.error(err);
+				});
+			}
+			var search = function(termo) {
+				var current = ++searchCount;
+				db.search("receita", termo, {limit: 50}, function(res) {
+					if (current != searchCount) return;
+					if (res.results.length == 0) {
+						$scope.$apply(function() {
+							$scope.geladeira = [];
+						});
+						return;
+					}
+					var ids = res.results.map(function(r) {
+						return r.id;
+					});
+					var query = "SELECT id, nome, imagem, tempo, like FROM receita WHERE id IN (" + ids.map(function() {
+						return "?";
+					}).join(",") + ")";
+					$cordovaSQLite.execute(db, query, ids).then(function(rows) {
+						if (current != searchCount) return;
+						var byId = {};
+						for (var i = 0; i < rows.rows.length; i++) {
+							byId[rows.rows.item(i).id] = rows.rows.item(i);
+						}
+						$scope.geladeira = [];
+						for (var j = 0; j < ids.length; j++) {
+							if (byId[ids[j]]) {
+								byId[ids[j]].filter = "";
+								$scope.geladeira.push(byId[ids[j]]);
+							}
+						}
+					}, function(err) {
+						console.error(err);
+					});
+				}, function(err) {
+					console.error(err);
+				});
+			};
 			$scope.filter = function() {
 				if ($scope.pesquisa.termo.length > 2) {
 					$scope.visao.cega = "hide";
@@ -595,6 +636,11 @@ angular.module('starter.controllers', ['ionic', 'starter.controllers', 'starter.
 				}
 				$analytcs.event("Pesquisa", "Procurou por", $scope.pesquisa.termo, 1);
 				console.log("pesquisa ", $scope.pesquisa.termo);
+				if (nativeSearch) {
+					if ($scope.pesquisa.termo.length > 2)
+						search($scope.pesquisa.termo);
+					return;
+				}
 				for (i = 0;
 					(i < $scope.geladeira.length); i++) {
 					if ($scope.geladeira[i].nome.toLowerCase().indexOf($scope.pesquisa.termo.toLowerCase()) > -1 || $scope.pesquisa.termo == "")
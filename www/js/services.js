@@ -1,5 +1,24 @@
 angular.module('starter.services', ['ionic','ngCordova'])
   .factory('Update', function($ionicPlatform,$cordovaSQLite,$cordovaNetwork,$http) {
+      // one native call (and transaction) for all the rows if the platform supports it:
+      var insertAll = function(db, query, rows, label) {
+        if (db.hasNativeFeature && db.hasNativeFeature("executeBulk")) {
+          db.executeBulk(query, rows, function(res) {
+            console.log("INSERTed " + label + " -> " + res.rowsAffected + " of " + res.rowCount, res.errors);
+          }, function(err) {
+            console.error(err);
+          });
+          return;
+        }
+        for (var i = 0; i < rows.length; i++) {
+          $cordovaSQLite.execute(db, query, rows[i])
+            .then(function(res) {
+              console.log("INSERTed " + label + " -> " + res.insertId, res);
+            }, function(err) {
+              console.error(err);
+            });
+        };
+      };
       return {
         all: function() {
           $ionicPlatform.ready(function() {
@@ -16,22 +35,18 @@ angular.module('starter.services', ['ionic','ngCordova'])
                         $http.get('http://bastidor.com.br/airfry/ajax/prato')
                   .success(function(data, status, headers, config) {
                     var db = $cordovaSQLite.openDB("chefAirfyer");
+                    var query = 'INSERT INTO receita (id , nome,imagem, receita, ingredientes, quantidades, tempo, temperatura, serve, categoria) VALUES (?,?,?,?,?,?,?,?,?,?)';
+                    var rows = [];
+                    for (var i = 0; i < data.length; i++) {
+                      rows.push([data[i].id, data[i].nome, data[i].imagem, data[i].receita, data[i].ingredientes, data[i].quantidades, data[i].tempo, data[i].temperatura, data[i].serve, data[i].categoria[0].categoria_id]);
+                    };
                     $cordovaSQLite.execute(db, 'Delete from receita;', [])
                       .then(function(res) {
                         console.log("Delete * ", res);
+                        insertAll(db, query, rows, "prato");
                       }, function(err) {
                         console.error(err);
                       });
-                    var query = 'INSERT INTO receita (id , nome,imagem, receita, ingredientes, quantidades, tempo, temperatura, serve, categoria) VALUES (?,?,?,?,?,?,?,?,?,?)';
-                    for (var i = 0; i < data.length; i++) {
-                      console.log(i + " - prato", data[i]);
-                      $cordovaSQLite.execute(db, query, [data[i].id, data[i].nome, data[i].imagem, data[i].receita, data[i].ingredientes, data[i].quantidades, data[i].tempo, data[i].temperatura, data[i].serve, data[i].categoria[0].categoria_id])
-                        .then(function(res) {
-                          console.log("INSERTed prato -> " + res.insertId, res);
-                        }, function(err) {
-                          console.error(err);
-                        });
-                    };
                   }).error(function(data, status, headers, config) {
                     console.log('Falhou ', data);
                     console.log('Status ', status);
@@ -40,22 +55,18 @@ angular.module('starter.services', ['ionic','ngCordova'])
                   .success(function(data, status, headers, config) {
                     //console.log('data~prato',data);
                     var db = $cordovaSQLite.openDB("chefAirfyer");
+                    var query = 'INSERT INTO ingredientes (id , nome) VALUES (?,?)';
+                    var rows = [];
+                    for (var i = 0; i < data.length; i++) {
+                      rows.push([i + 1, data[i].text]);
+                    };
                     $cordovaSQLite.execute(db, 'Delete from ingredientes;', [])
                       .then(function(res) {
                         console.log("Delete * ", res);
+                        insertAll(db, query, rows, "ingr");
                       }, function(err) {
                         console.error(err);
                       });
-                    var query = 'INSERT INTO ingredientes (id , nome) VALUES (?,?)';
-                    for (var i = 0; i < data.length; i++) {
-                      console.log(i + " - ingredientes", data[i]);
-                      $cordovaSQLite.execute(db, query, [i + 1, data[i].text])
-                        .then(function(res) {
-                          console.log("INSERTed ingr -> " + res.insertId, res);
-                        }, function(err) {
-                          console.error(err);
-                        });
-                    };
                   }).error(function(data, status, headers, config) {
                     console.log('Falhou ', data);
                     console.log('Status ', status);